@@ -0,0 +1,64 @@
+package hotel.bench;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.YearMonth;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import hotel.HotelAnalytics;
+import hotel.HotelAnalytics.BookingRow;
+import hotel.HotelAnalytics.PaymentRow;
+import hotel.HotelImpl;
+import hotel.RoomType;
+
+/**
+ * Grouped aggregates over all the bookings and payments of a loaded hotel,
+ * including starting each query: listing the records and building the joins.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AnalyticsBenchmark {
+
+    @Param({"100000", "1000000"})
+    int bookings;
+
+    private HotelImpl hotel;
+
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        Path data = DataGenerator.dataFor(bookings);
+        hotel = new HotelImpl(data.resolve("rooms.txt").toString(), data.resolve("guests.txt").toString(),
+            data.resolve("bookings.txt").toString(), data.resolve("payments.txt").toString());
+    }
+
+    @Benchmark
+    public Map<RoomType, Double> vipStayLengthByRoomType() {
+        return HotelAnalytics.bookings(hotel)
+            .where(BookingRow::isVIP)
+            .groupBy(BookingRow::getRoomType)
+            .average(BookingRow::getNights);
+    }
+
+    @Benchmark
+    public Map<YearMonth, Double> refundsByMonth() {
+        return HotelAnalytics.payments(hotel)
+            .where(row -> row.getPayReason().equals("refund"))
+            .groupBy(PaymentRow::getMonth)
+            .sum(PaymentRow::getAmount);
+    }
+}
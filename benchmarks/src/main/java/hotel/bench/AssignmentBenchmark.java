@@ -0,0 +1,165 @@
+package hotel.bench;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import hotel.HotelImpl;
+import hotel.RoomAssignment;
+import hotel.RoomType;
+
+/**
+ * Replays one season of booking requests, stays of 1 to 14 nights asking
+ * for about 10% more nights than the hotel has, into an empty hotel with
+ * each room assignment. The time is that of the whole replay; main prints
+ * the occupancy each assignment reaches on the same requests, since a
+ * request refused for lack of one whole free run is a night lost.
+ *
+ * Example:
+ *   java -cp benchmarks/target/benchmarks.jar hotel.bench.AssignmentBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class AssignmentBenchmark {
+    private static final int SEASON = 180;
+    private static final int MAX_NIGHTS = 14;
+    private static final double DEMAND = 1.1;
+    private static final int GUEST = DataGenerator.FIRST_GUEST;
+
+    @Param({"random", "bestFit"})
+    String strategy;
+
+    @Param({"40", "400"})
+    int rooms;
+
+    private Path data;
+    private Requests requests;
+    private HotelImpl hotel;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        data = writeEmptyHotel(rooms);
+        requests = new Requests(rooms, 5);
+    }
+
+    @Setup(Level.Iteration)
+    public void empty() {
+        hotel = newHotel(data, strategy);
+    }
+
+    @Benchmark
+    public long replay() {
+        return requests.replay(hotel);
+    }
+
+    /**
+     * A seeded stream of requests in the order they arrive
+     */
+    static class Requests {
+        final RoomType[] roomTypes;
+        final LocalDate[] checkins;
+        final LocalDate[] checkouts;
+        final long capacity;
+
+        Requests(int rooms, long seed) {
+            Random random = new Random(seed);
+            capacity = (long)rooms * SEASON;
+            // The stays average 7.5 nights
+            int count = (int)(capacity * DEMAND / ((1 + MAX_NIGHTS) / 2.0));
+            roomTypes = new RoomType[count];
+            checkins = new LocalDate[count];
+            checkouts = new LocalDate[count];
+            for (int i = 0; i < count; i++) {
+                int nights = 1 + random.nextInt(MAX_NIGHTS);
+                // Each type has a quarter of the rooms, so ask for each a quarter of the time
+                roomTypes[i] = RoomType.values()[random.nextInt(RoomType.values().length)];
+                checkins[i] = DataGenerator.START.plusDays(random.nextInt(SEASON - nights + 1));
+                checkouts[i] = checkins[i].plusDays(nights);
+            }
+        }
+
+        /**
+         * Book every request and return the nights booked
+         */
+        long replay(HotelImpl hotel) {
+            long nights = 0;
+            for (int i = 0; i < roomTypes.length; i++) {
+                if (hotel.bookOneRoom(GUEST, roomTypes[i], checkins[i], checkouts[i]) != -1) {
+                    nights += checkouts[i].toEpochDay() - checkins[i].toEpochDay();
+                }
+            }
+            return nights;
+        }
+    }
+
+    /**
+     * Write a hotel with rooms of every type in turn, one guest and no bookings
+     */
+    static Path writeEmptyHotel(int rooms) throws IOException {
+        Path directory = Files.createTempDirectory("hotel-assignment-");
+        directory.toFile().deleteOnExit();
+        try (BufferedWriter out = Files.newBufferedWriter(directory.resolve("rooms.txt"))) {
+            for (int i = 0; i < rooms; i++) {
+                int type = i % DataGenerator.ROOM_TYPES.length;
+                out.write((DataGenerator.FIRST_ROOM + i) + "," + DataGenerator.ROOM_TYPES[type] + ","
+                    + String.format(Locale.ROOT, "%.2f", DataGenerator.PRICES[type]) + ",2,none");
+                out.newLine();
+            }
+        }
+        Files.write(directory.resolve("guests.txt"), (GUEST + ",John,Smith," + DataGenerator.START + "\n").getBytes());
+        Files.write(directory.resolve("bookings.txt"), new byte[0]);
+        Files.write(directory.resolve("payments.txt"), new byte[0]);
+        for (String file : new String[] {"rooms.txt", "guests.txt", "bookings.txt", "payments.txt"}) {
+            directory.resolve(file).toFile().deleteOnExit();
+        }
+        return directory;
+    }
+
+    static HotelImpl newHotel(Path data, String strategy) {
+        HotelImpl hotel = new HotelImpl(data.resolve("rooms.txt").toString(), data.resolve("guests.txt").toString(),
+            data.resolve("bookings.txt").toString(), data.resolve("payments.txt").toString());
+        hotel.setRoomAssignment(strategy.equals("random") ? RoomAssignment.RANDOM : RoomAssignment.BEST_FIT);
+        return hotel;
+    }
+
+    /**
+     * Print the occupancy of every assignment over a few seeds
+     *
+     * Usage: AssignmentBenchmark [rooms [seeds]]
+     */
+    public static void main(String[] args) throws IOException {
+        int rooms = args.length > 0 ? Integer.parseInt(args[0]) : 40;
+        int seeds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        Path data = writeEmptyHotel(rooms);
+        System.out.printf("%d rooms, %d nights, demand %.0f%% of capacity%n", rooms, SEASON, DEMAND * 100);
+        for (String strategy : new String[] {"random", "bestFit"}) {
+            long booked = 0;
+            long capacity = 0;
+            for (int seed = 1; seed <= seeds; seed++) {
+                Requests requests = new Requests(rooms, seed);
+                booked += requests.replay(newHotel(data, strategy));
+                capacity += requests.capacity;
+            }
+            System.out.printf("%-8s occupancy %.1f%%%n", strategy, 100.0 * booked / capacity);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package hotel.bench;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the usual JMH command line, always adding the
+ * GC profiler so every result comes with its allocation rate.
+ *
+ * Examples:
+ *   java -jar benchmarks/target/benchmarks.jar
+ *   java -jar benchmarks/target/benchmarks.jar QueryBenchmark -p bookings=10000000
+ */
+public class BenchmarkMain {
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        new Runner(new OptionsBuilder().parent(commandLine).addProfiler(GCProfiler.class).build()).run();
+    }
+}
@@ -0,0 +1,101 @@
+package hotel.bench;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import hotel.HotelImpl;
+import hotel.RoomType;
+
+/**
+ * bookOneRoom on a loaded hotel, timed over batches of calls. After every
+ * batch the bookings it made are cancelled again, outside the measurement,
+ * so the hotel does not fill up over a long run and every batch finds the
+ * same rooms free. The score is the time of one batch of 1024 calls.
+ *
+ * Cancelling does not take back the payment of a booking; the stays of the
+ * generated data are in the past, so it adds no refund either. The
+ * payments grow by one row per booking, which bookOneRoom never reads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 50, batchSize = BookingBenchmark.ARGUMENTS)
+@Measurement(iterations = 100, batchSize = BookingBenchmark.ARGUMENTS)
+@Fork(1)
+public class BookingBenchmark {
+    static final int ARGUMENTS = 1024;
+
+    @Param({"1000", "100000"})
+    int bookings;
+
+    private HotelImpl hotel;
+    private int[] guestIDs = new int[ARGUMENTS];
+    private RoomType[] roomTypes = new RoomType[ARGUMENTS];
+    private LocalDate[] checkins = new LocalDate[ARGUMENTS];
+    private LocalDate[] checkouts = new LocalDate[ARGUMENTS];
+    private int[] bookedRooms = new int[ARGUMENTS];
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        Path data = DataGenerator.dataFor(bookings);
+        hotel = new HotelImpl(data.resolve("rooms.txt").toString(), data.resolve("guests.txt").toString(),
+            data.resolve("bookings.txt").toString(), data.resolve("payments.txt").toString());
+        Random random = new Random(11);
+        int guests = DataGenerator.guestsFor(bookings);
+        for (int i = 0; i < ARGUMENTS; i++) {
+            guestIDs[i] = DataGenerator.FIRST_GUEST + random.nextInt(guests);
+            roomTypes[i] = RoomType.values()[random.nextInt(RoomType.values().length)];
+            checkins[i] = DataGenerator.START.plusDays(random.nextInt(365));
+            checkouts[i] = checkins[i].plusDays(1 + random.nextInt(7));
+        }
+    }
+
+    @Benchmark
+    public int bookOneRoom() {
+        int roomNumber = hotel.bookOneRoom(guestIDs[next], roomTypes[next], checkins[next], checkouts[next]);
+        bookedRooms[next++] = roomNumber;
+        return roomNumber;
+    }
+
+    @TearDown(Level.Iteration)
+    public void cancelBatch() {
+        for (int i = 0; i < next; i++) {
+            if (bookedRooms[i] != -1) {
+                hotel.cancelBooking(bookingID(i));
+            }
+        }
+        next = 0;
+    }
+
+    /**
+     * Returns the ID of the booking call i made: no other booking of its
+     * guest can hold the same room from the same night
+     */
+    private int bookingID(int i) {
+        int[] id = {-1};
+        hotel.forEachGuestBooking(guestIDs[i], booking -> {
+            if (booking.getRoomNumber() == bookedRooms[i] && booking.getCheckinDate().equals(checkins[i])) {
+                id[0] = booking.getId();
+            }
+        });
+        if (id[0] == -1) {
+            throw new IllegalStateException("Booking of call " + i + " not found");
+        }
+        return id[0];
+    }
+}
@@ -0,0 +1,102 @@
+package hotel.bench;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import hotel.HotelChain;
+import hotel.RoomType;
+
+/**
+ * A chain of hotels in two cities, called from several threads at once.
+ * Compare the shard counts to see how throughput grows with the cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class ChainBenchmark {
+    private static final int ARGUMENTS = 1024;
+    private static final int HOTELS = 16;
+    private static final String[] CITIES = {"Leeds", "York"};
+
+    @Param({"1", "4", "8"})
+    int shards;
+
+    private HotelChain chain;
+    private String[] hotelNames = new String[ARGUMENTS];
+    private String[] cities = new String[ARGUMENTS];
+    private int[] roomNumbers = new int[ARGUMENTS];
+    private RoomType[] roomTypes = new RoomType[ARGUMENTS];
+    private LocalDate[] checkins = new LocalDate[ARGUMENTS];
+    private LocalDate[] checkouts = new LocalDate[ARGUMENTS];
+
+    /**
+     * The argument each benchmark thread takes next
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        int nextArgument() {
+            next = (next + 1) & (ARGUMENTS - 1);
+            return next;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        Path data = DataGenerator.dataFor(10000);
+        chain = new HotelChain(shards);
+        for (int i = 0; i < HOTELS; i++) {
+            chain.addHotel("hotel-" + i, CITIES[i % CITIES.length], data.resolve("rooms.txt").toString(),
+                data.resolve("guests.txt").toString(), data.resolve("bookings.txt").toString(),
+                data.resolve("payments.txt").toString());
+        }
+        Random random = new Random(13);
+        int rooms = DataGenerator.roomsFor(10000);
+        for (int i = 0; i < ARGUMENTS; i++) {
+            hotelNames[i] = "hotel-" + random.nextInt(HOTELS);
+            cities[i] = CITIES[random.nextInt(CITIES.length)];
+            roomNumbers[i] = DataGenerator.FIRST_ROOM + random.nextInt(rooms);
+            roomTypes[i] = RoomType.values()[random.nextInt(RoomType.values().length)];
+            checkins[i] = DataGenerator.START.plusDays(random.nextInt(365));
+            checkouts[i] = checkins[i].plusDays(1 + random.nextInt(7));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void close() {
+        chain.close();
+    }
+
+    @Benchmark
+    public boolean isAvailable(Cursor cursor) {
+        int i = cursor.nextArgument();
+        return chain.call(hotelNames[i], hotel -> hotel.isAvailable(roomNumbers[i], checkins[i], checkouts[i]));
+    }
+
+    @Benchmark
+    public Map<String, int[]> availableRoomsInCity(Cursor cursor) {
+        int i = cursor.nextArgument();
+        return chain.availableRooms(cities[i], roomTypes[i], checkins[i], checkouts[i]);
+    }
+}
@@ -0,0 +1,148 @@
+package hotel.bench;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Writes synthetic rooms, guests, bookings and payments files in the
+ * format HotelImpl imports. The stays of one room never overlap, about
+ * one guest in ten is a VIP, and every booking has its payment, with a
+ * few refunds mixed in. The same size and seed always give the same files.
+ */
+public class DataGenerator {
+    static final String[] ROOM_TYPES = {"single", "double", "twin", "family"};
+    static final double[] PRICES = {50.00, 80.00, 75.00, 120.00};
+    static final String[] FACILITIES = {"tv", "wifi", "tv;wifi", "tv;wifi;kitchen", "none"};
+    static final String[] FIRST_NAMES = {"John", "Jane", "Alice", "Bob", "Carol", "David", "Erin", "Frank",
+        "Grace", "Heidi", "Ivan", "Judy", "Mallory", "Niaj", "Olivia", "Peggy", "Rupert", "Sybil", "Trent", "Walter"};
+    static final String[] LAST_NAMES = {"Smith", "Doe", "Smithers", "Brown", "Jones", "Miller", "Davis", "Garcia",
+        "Wilson", "Moore", "Taylor", "Anderson", "Thomas", "Jackson", "White", "Harris", "Martin", "Thompson",
+        "Young", "King", "Wright", "Lopez", "Hill", "Scott", "Green", "Adams", "Baker", "Nelson", "Carter", "Mitchell"};
+    static final LocalDate START = LocalDate.of(2019, 1, 1);
+    static final int FIRST_ROOM = 101;
+    static final int FIRST_GUEST = 10001;
+
+    /**
+     * Returns the number of rooms generated for a number of bookings,
+     * about 50 stays per room
+     */
+    static int roomsFor(int bookings) {
+        return Math.max(20, bookings / 50);
+    }
+
+    /**
+     * Returns the number of guests generated for a number of bookings
+     */
+    static int guestsFor(int bookings) {
+        return Math.max(100, bookings / 4);
+    }
+
+    /**
+     * Write the four files into a directory
+     *
+     * @param directory the directory, created if needed
+     * @param bookings  the number of bookings
+     * @param seed      the random seed
+     */
+    public static void generate(Path directory, int bookings, long seed) throws IOException {
+        Files.createDirectories(directory);
+        Random random = new Random(seed);
+        int rooms = roomsFor(bookings);
+        int guests = guestsFor(bookings);
+
+        double[] prices = new double[rooms];
+        try (BufferedWriter out = Files.newBufferedWriter(directory.resolve("rooms.txt"))) {
+            for (int i = 0; i < rooms; i++) {
+                int type = i % ROOM_TYPES.length;
+                prices[i] = PRICES[type] + 5 * random.nextInt(4);
+                out.write((FIRST_ROOM + i) + "," + ROOM_TYPES[type] + "," + String.format(Locale.ROOT, "%.2f", prices[i]) + ","
+                    + (type == 3 ? 4 : type == 0 ? 1 : 2) + "," + FACILITIES[random.nextInt(FACILITIES.length)]);
+                out.newLine();
+            }
+        }
+
+        boolean[] vip = new boolean[guests];
+        try (BufferedWriter guestsOut = Files.newBufferedWriter(directory.resolve("guests.txt"));
+             BufferedWriter paymentsOut = Files.newBufferedWriter(directory.resolve("payments.txt"))) {
+            for (int i = 0; i < guests; i++) {
+                LocalDate joined = START.minusDays(random.nextInt(1000));
+                String guest = (FIRST_GUEST + i) + "," + FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + ","
+                    + LAST_NAMES[random.nextInt(LAST_NAMES.length)] + "," + joined;
+                vip[i] = random.nextInt(10) == 0;
+                if (vip[i]) {
+                    LocalDate start = START.plusDays(random.nextInt(365));
+                    guest += "," + start + "," + start.plusYears(1);
+                    paymentsOut.write(start + "," + (FIRST_GUEST + i) + ",50.0,VIPmembership");
+                    paymentsOut.newLine();
+                }
+                guestsOut.write(guest);
+                guestsOut.newLine();
+            }
+
+            try (BufferedWriter bookingsOut = Files.newBufferedWriter(directory.resolve("bookings.txt"))) {
+                // Walk every room forward in time, so the stays of a room never overlap
+                long[] nextFree = new long[rooms];
+                for (int i = 0; i < rooms; i++) {
+                    nextFree[i] = START.toEpochDay() + random.nextInt(7);
+                }
+                for (int id = 1; id <= bookings; id++) {
+                    int room = (id - 1) % rooms;
+                    int guest = random.nextInt(guests);
+                    long checkin = nextFree[room] + random.nextInt(3);
+                    int nights = 1 + random.nextInt(7);
+                    nextFree[room] = checkin + nights;
+                    LocalDate checkinDate = LocalDate.ofEpochDay(checkin);
+                    LocalDate bookingDate = checkinDate.minusDays(1 + random.nextInt(60));
+                    double amount = prices[room] * nights * (vip[guest] ? 0.9 : 1);
+                    bookingsOut.write(id + "," + (FIRST_GUEST + guest) + "," + (FIRST_ROOM + room) + ","
+                        + bookingDate + "," + checkinDate + "," + checkinDate.plusDays(nights) + ","
+                        + String.format(Locale.ROOT, "%.2f", amount));
+                    bookingsOut.newLine();
+                    paymentsOut.write(bookingDate + "," + (FIRST_GUEST + guest) + "," + amount + ",booking");
+                    paymentsOut.newLine();
+                    if (random.nextInt(50) == 0) {
+                        paymentsOut.write(bookingDate.plusDays(1) + "," + (FIRST_GUEST + guest) + "," + -amount + ",refund");
+                        paymentsOut.newLine();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a directory holding generated files of a size, generating them
+     * the first time, so that repeated benchmark runs share the files
+     *
+     * @param bookings  the number of bookings
+     * @return          the directory with the four files
+     */
+    static Path dataFor(int bookings) throws IOException {
+        Path directory = Paths.get(System.getProperty("java.io.tmpdir"), "hotel-bench-" + bookings);
+        if (!Files.exists(directory)) {
+            // Generate aside, so an interrupted run never leaves half the files behind
+            Path partial = Files.createTempDirectory(directory.getParent(), "hotel-bench-");
+            generate(partial, bookings, 42);
+            Files.move(partial, directory, StandardCopyOption.ATOMIC_MOVE);
+        }
+        return directory;
+    }
+
+    /**
+     * Usage: DataGenerator directory [bookings [seed]]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: DataGenerator directory [bookings [seed]]");
+            return;
+        }
+        int bookings = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 42;
+        generate(Paths.get(args[0]), bookings, seed);
+    }
+}
@@ -0,0 +1,91 @@
+package hotel.bench;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import hotel.HotelImpl;
+
+/**
+ * The four import and four save methods. Each import replaces the table
+ * with the same generated file; each save rewrites the same output file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImportSaveBenchmark {
+    @Param({"1000", "100000"})
+    int bookings;
+
+    private HotelImpl hotel;
+    private String rooms;
+    private String guests;
+    private String bookingsFile;
+    private String payments;
+    private Path output;
+
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        Path data = DataGenerator.dataFor(bookings);
+        rooms = data.resolve("rooms.txt").toString();
+        guests = data.resolve("guests.txt").toString();
+        bookingsFile = data.resolve("bookings.txt").toString();
+        payments = data.resolve("payments.txt").toString();
+        hotel = new HotelImpl(rooms, guests, bookingsFile, payments);
+        output = Files.createTempDirectory("hotel-bench-save-");
+    }
+
+    @Benchmark
+    public boolean importRoomsData() {
+        return hotel.importRoomsData(rooms);
+    }
+
+    @Benchmark
+    public boolean importGuestsData() {
+        return hotel.importGuestsData(guests);
+    }
+
+    @Benchmark
+    public boolean importBookingsData() {
+        return hotel.importBookingsData(bookingsFile);
+    }
+
+    @Benchmark
+    public boolean importPaymentsData() {
+        return hotel.importPaymentsData(payments);
+    }
+
+    @Benchmark
+    public boolean saveRoomsData() {
+        return hotel.saveRoomsData(output.resolve("rooms.txt").toString());
+    }
+
+    @Benchmark
+    public boolean saveGuestsData() {
+        return hotel.saveGuestsData(output.resolve("guests.txt").toString());
+    }
+
+    @Benchmark
+    public boolean saveBookingsData() {
+        return hotel.saveBookingsData(output.resolve("bookings.txt").toString());
+    }
+
+    @Benchmark
+    public boolean savePaymentsData() {
+        return hotel.savePaymentsData(output.resolve("payments.txt").toString());
+    }
+}
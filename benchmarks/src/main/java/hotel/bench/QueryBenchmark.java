@@ -0,0 +1,110 @@
+package hotel.bench;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import hotel.HotelImpl;
+import hotel.RoomType;
+
+/**
+ * The read-only queries of a loaded hotel. Every call takes the next of
+ * a fixed set of random arguments, so calls do not repeat one lookup.
+ * With a cache of one entry availableRooms and isAvailable are worked out
+ * on every call; with a larger one the repeated arguments are cache hits.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryBenchmark {
+    private static final int ARGUMENTS = 1024;
+
+    @Param({"1000", "100000"})
+    int bookings;
+
+    @Param({"1", "4096"})
+    int cacheSize;
+
+    private HotelImpl hotel;
+    private int[] roomNumbers = new int[ARGUMENTS];
+    private RoomType[] roomTypes = new RoomType[ARGUMENTS];
+    private LocalDate[] checkins = new LocalDate[ARGUMENTS];
+    private LocalDate[] checkouts = new LocalDate[ARGUMENTS];
+    private String[] firstNames = new String[ARGUMENTS];
+    private String[] lastNames = new String[ARGUMENTS];
+    private int next = 0;
+    private PrintStream console;
+
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        Path data = DataGenerator.dataFor(bookings);
+        hotel = new HotelImpl(data.resolve("rooms.txt").toString(), data.resolve("guests.txt").toString(),
+            data.resolve("bookings.txt").toString(), data.resolve("payments.txt").toString());
+        hotel.setAvailabilityCacheSize(cacheSize);
+        Random random = new Random(7);
+        int rooms = DataGenerator.roomsFor(bookings);
+        // The generated stays cover roughly the first year
+        for (int i = 0; i < ARGUMENTS; i++) {
+            roomNumbers[i] = DataGenerator.FIRST_ROOM + random.nextInt(rooms);
+            roomTypes[i] = RoomType.values()[random.nextInt(RoomType.values().length)];
+            checkins[i] = DataGenerator.START.plusDays(random.nextInt(365));
+            checkouts[i] = checkins[i].plusDays(1 + random.nextInt(7));
+            firstNames[i] = DataGenerator.FIRST_NAMES[random.nextInt(DataGenerator.FIRST_NAMES.length)];
+            lastNames[i] = DataGenerator.LAST_NAMES[random.nextInt(DataGenerator.LAST_NAMES.length)];
+        }
+        // displayBookingsOn prints every booking; measure the work, not the terminal
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown(Level.Trial)
+    public void restoreConsole() {
+        System.setOut(console);
+    }
+
+    private int nextArgument() {
+        next = (next + 1) & (ARGUMENTS - 1);
+        return next;
+    }
+
+    @Benchmark
+    public boolean isAvailable() {
+        int i = nextArgument();
+        return hotel.isAvailable(roomNumbers[i], checkins[i], checkouts[i]);
+    }
+
+    @Benchmark
+    public int[] availableRooms() {
+        int i = nextArgument();
+        return hotel.availableRooms(roomTypes[i], checkins[i], checkouts[i]);
+    }
+
+    @Benchmark
+    public int[] searchGuest() {
+        int i = nextArgument();
+        return hotel.searchGuest(firstNames[i], lastNames[i]);
+    }
+
+    @Benchmark
+    public void displayBookingsOn() {
+        hotel.displayBookingsOn(checkins[nextArgument()]);
+    }
+}
@@ -0,0 +1,247 @@
+package hotel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The answers of recent availableRooms and isAvailable calls, so that a
+ * search repeated before anything changes is one hash lookup.
+ *
+ * The cache holds a fixed number of answers and drops the least recently
+ * used one to make room. A booking that is made, cancelled or checked out
+ * only drops the answers about its room type or room whose nights overlap
+ * its stay; adding or removing a room drops the answers about its type and
+ * the room itself. Every other answer stays valid and is kept.
+ *
+ * Lookups, stores and invalidations lock the cache, so that readers of a
+ * hotel sharing a read lock, as HotelServer's do, may use it at once:
+ * even a lookup reorders the entries by use.
+ */
+public class AvailabilityCache {
+    private static final int ROOMS_OF_TYPE = 0;
+    private static final int ONE_ROOM = 1;
+
+    private final int capacity;
+    private final LinkedHashMap<Query, Object> answers;
+    // the cached queries of one room type or room, ordered by check-in day
+    private final HashMap<Long, TreeSet<Query>> bySubject = new HashMap<>();
+    private long longestStay = 0;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * One cached question: the free rooms of a type, or whether one room is
+     * free, for the nights [checkin, checkout)
+     */
+    private static class Query implements Comparable<Query> {
+        private final int kind;
+        private final int subject;
+        private final long checkin;
+        private final long checkout;
+
+        Query(int kind, int subject, long checkin, long checkout) {
+            this.kind = kind;
+            this.subject = subject;
+            this.checkin = checkin;
+            this.checkout = checkout;
+        }
+
+        long subjectKey() {return AvailabilityCache.subjectKey(kind, subject);}
+
+        public boolean equals(Object other) {
+            if (!(other instanceof Query)) {
+                return false;
+            }
+            Query query = (Query)other;
+            return kind == query.kind && subject == query.subject
+                && checkin == query.checkin && checkout == query.checkout;
+        }
+
+        public int hashCode() {
+            long hash = subjectKey() * 31 + checkin;
+            hash = hash * 31 + checkout;
+            return (int)(hash ^ (hash >>> 32));
+        }
+
+        // Only queries of the same subject are compared
+        public int compareTo(Query other) {
+            int order = Long.compare(checkin, other.checkin);
+            return order != 0 ? order : Long.compare(checkout, other.checkout);
+        }
+    }
+
+    /**
+     * Create an empty cache
+     *
+     * @param capacity  the most answers kept, at least 1
+     */
+    AvailabilityCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Cache capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.answers = new LinkedHashMap<Query, Object>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<Query, Object> eldest) {
+                if (size() <= AvailabilityCache.this.capacity) {
+                    return false;
+                }
+                unindex(eldest.getKey());
+                evictions.increment();
+                return true;
+            }
+        };
+    }
+
+    public int getCapacity() {return capacity;}
+    public synchronized int size() {return answers.size();}
+    public long getHits() {return hits.sum();}
+    public long getMisses() {return misses.sum();}
+    public long getEvictions() {return evictions.sum();}
+
+    /**
+     * Returns the number of answers dropped because the hotel changed
+     */
+    public long getInvalidations() {return invalidations.sum();}
+
+    /**
+     * Returns the share of lookups answered from the cache, 0 before the first lookup
+     */
+    public double getHitRate() {
+        long hits = getHits();
+        long lookups = hits + getMisses();
+        return lookups == 0 ? 0 : (double)hits / lookups;
+    }
+
+    public String toString() {
+        return "AvailabilityCache: " + size() + "/" + capacity + " entries, " + getHits() + " hits, " + getMisses()
+            + " misses, " + getEvictions() + " evictions, " + getInvalidations() + " invalidations";
+    }
+
+    /**
+     * Returns the cached free rooms of a type, or null if they are not cached.
+     * The array is shared with the cache and must not be changed.
+     */
+    int[] getFreeRooms(RoomType roomType, long checkin, long checkout) {
+        return (int[])lookup(new Query(ROOMS_OF_TYPE, roomType.ordinal(), checkin, checkout));
+    }
+
+    void putFreeRooms(RoomType roomType, long checkin, long checkout, int[] free) {
+        store(new Query(ROOMS_OF_TYPE, roomType.ordinal(), checkin, checkout), free);
+    }
+
+    /**
+     * Returns whether a room is free as cached, or null if it is not cached
+     */
+    Boolean getIsFree(int roomNumber, long checkin, long checkout) {
+        return (Boolean)lookup(new Query(ONE_ROOM, roomNumber, checkin, checkout));
+    }
+
+    void putIsFree(int roomNumber, long checkin, long checkout, boolean free) {
+        store(new Query(ONE_ROOM, roomNumber, checkin, checkout), free);
+    }
+
+    /**
+     * Drop the answers a booking of a room for the nights [checkin, checkout) changes
+     *
+     * @param roomNumber    the booked room
+     * @param roomType      the type of the room, or null if it has none
+     * @param checkin       the check-in epoch day
+     * @param checkout      the check-out epoch day
+     */
+    synchronized void invalidateStay(int roomNumber, RoomType roomType, long checkin, long checkout) {
+        if (answers.isEmpty()) {
+            return;
+        }
+        long from = Math.min(checkin, checkout);
+        long to = Math.max(checkin, checkout);
+        invalidate(subjectKey(ONE_ROOM, roomNumber), from, to);
+        if (roomType != null) {
+            invalidate(subjectKey(ROOMS_OF_TYPE, roomType.ordinal()), from, to);
+        }
+    }
+
+    /**
+     * Drop every answer about a room and its room type, for a room added or removed
+     */
+    synchronized void invalidateRoom(int roomNumber, RoomType roomType) {
+        invalidate(subjectKey(ONE_ROOM, roomNumber), Long.MIN_VALUE, Long.MAX_VALUE);
+        if (roomType != null) {
+            invalidate(subjectKey(ROOMS_OF_TYPE, roomType.ordinal()), Long.MIN_VALUE, Long.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Drop every answer, e.g. after a table is imported again
+     */
+    synchronized void clear() {
+        invalidations.add(answers.size());
+        answers.clear();
+        bySubject.clear();
+        longestStay = 0;
+    }
+
+    private Object lookup(Query query) {
+        Object answer;
+        synchronized (this) {
+            answer = answers.get(query);
+        }
+        if (answer == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return answer;
+    }
+
+    private synchronized void store(Query query, Object answer) {
+        if (answers.put(query, answer) == null) {
+            bySubject.computeIfAbsent(query.subjectKey(), key -> new TreeSet<>()).add(query);
+            longestStay = Math.max(longestStay, query.checkout - query.checkin);
+        }
+    }
+
+    /**
+     * Drop the answers of one subject whose nights overlap [from, to)
+     */
+    private void invalidate(long subjectKey, long from, long to) {
+        TreeSet<Query> queries = bySubject.get(subjectKey);
+        if (queries == null) {
+            return;
+        }
+        // A query overlapping the range checks in before it ends, and at most longestStay before it starts
+        Query first = new Query(0, 0, from == Long.MIN_VALUE ? from : from - longestStay, Long.MIN_VALUE);
+        Query end = new Query(0, 0, to, Long.MIN_VALUE);
+        Iterator<Query> it = queries.subSet(first, true, end, false).iterator();
+        while (it.hasNext()) {
+            Query query = it.next();
+            if (query.checkout > from) {
+                it.remove();
+                answers.remove(query);
+                invalidations.increment();
+            }
+        }
+        if (queries.isEmpty()) {
+            bySubject.remove(subjectKey);
+        }
+    }
+
+    private void unindex(Query query) {
+        TreeSet<Query> queries = bySubject.get(query.subjectKey());
+        if (queries != null) {
+            queries.remove(query);
+            if (queries.isEmpty()) {
+                bySubject.remove(query.subjectKey());
+            }
+        }
+    }
+
+    private static long subjectKey(int kind, int subject) {
+        return ((long)kind << 32) | (subject & 0xffffffffL);
+    }
+}
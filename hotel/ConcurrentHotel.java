@@ -0,0 +1,1107 @@
+package hotel;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.function.LongPredicate;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import hotel.HotelImpl.Booking;
+import hotel.HotelImpl.Guest;
+import hotel.HotelImpl.Payment;
+import hotel.HotelImpl.Room;
+import hotel.HotelImpl.VIPGuest;
+import hotel.HotelMetrics.Operation;
+import hotel.ParallelLoader.Loaded;
+import hotel.VersionedLog.Version;
+
+/**
+ * A Hotel that many threads can book at once.
+ *
+ * Every room has its own lock, and a room is only reserved while holding
+ * its lock after checking again that it is still free, so two bookings can
+ * never share a night of the same room. Bookings of different rooms do not
+ * wait for each other. Queries such as availableRooms read concurrent maps
+ * without taking any lock.
+ *
+ * Bookings and payments are kept as versioned records, and every report on
+ * them reads one consistent version of the hotel: a report never shows half
+ * of a change, however long it runs, and never holds up the bookings made
+ * meanwhile. openSnapshot keeps one version for several reports.
+ *
+ * Rooms and guests are listed by room number and guest ID, bookings and
+ * payments in the order they were made.
+ * The import methods replace whole tables and are meant to run before the
+ * hotel is shared between threads.
+ */
+public class ConcurrentHotel implements Hotel, RecordSource {
+
+    private ConcurrentSkipListMap<Integer, Room> rooms = new ConcurrentSkipListMap<>();
+    private ConcurrentSkipListMap<Integer, Guest> guests = new ConcurrentSkipListMap<>();
+    private ConcurrentSkipListMap<Integer, Version<Booking>> bookings = new ConcurrentSkipListMap<>();
+    private VersionedLog<Booking> bookingLog = new VersionedLog<>();
+    private VersionedLog<Payment> payments = new VersionedLog<>();
+    private ConcurrentHashMap<Integer, RoomState> schedules = new ConcurrentHashMap<>();
+    private EnumMap<RoomType, CopyOnWriteArrayList<RoomState>> roomsByType = new EnumMap<>(RoomType.class);
+    private ConcurrentHashMap<Integer, VersionedLog<Booking>> guestBookings = new ConcurrentHashMap<>();
+    private ConcurrentHashMap<String, int[]> guestNames = new ConcurrentHashMap<>();
+    private ConcurrentHashMap<Integer, VersionedLog<Booking>> bookingsByDay = new ConcurrentHashMap<>();
+    private ConcurrentHashMap<Integer, VersionedLog<Payment>> paymentsByDay = new ConcurrentHashMap<>();
+    // Lists keeping removed bookings an open snapshot can still see, pruned again as the horizon moves
+    private final ConcurrentLinkedQueue<LongPredicate> waitingPrunes = new ConcurrentLinkedQueue<>();
+    private volatile long prunesRetriedAt = Long.MIN_VALUE;
+    private VersionClock clock = new VersionClock();
+    private IdAllocator guestIDs;
+    private IdAllocator bookingIDs;
+    private volatile HistoryArchive archive;
+    private volatile HotelMetrics metrics = HotelMetrics.DISABLED;
+
+    /**
+     * Create an empty hotel
+     */
+    public ConcurrentHotel() {
+        this(1);
+    }
+
+    /**
+     * Create an empty hotel whose threads reserve guest and booking IDs in blocks.
+     * New IDs are then unique but not in the order the guests and bookings were added.
+     *
+     * @param idBlockSize   the number of IDs a thread reserves at once, 1 to hand them out in order
+     */
+    public ConcurrentHotel(int idBlockSize) {
+        guestIDs = new IdAllocator(HotelImpl.FIRST_GUEST_ID - 1, idBlockSize);
+        bookingIDs = new IdAllocator(0, idBlockSize);
+        for (RoomType roomType : RoomType.values()) {
+            roomsByType.put(roomType, new CopyOnWriteArrayList<>());
+        }
+    }
+
+    /**
+     * Load all the data from the four files.
+     *
+     * @param roomsTxtFileName      the rooms txt file
+     * @param guestsTxtFileName     the guests txt file
+     * @param bookingsTxtFileName   the bookings txt file
+     * @param paymentsTxtFileName   the payments txt file
+     */
+    public ConcurrentHotel(String roomsTxtFileName, String guestsTxtFileName,
+        String bookingsTxtFileName, String paymentsTxtFileName) {
+            this();
+            this.importRoomsData(roomsTxtFileName);
+            this.importGuestsData(guestsTxtFileName);
+            this.importBookingsData(bookingsTxtFileName);
+            this.importPaymentsData(paymentsTxtFileName);
+    }
+
+    public synchronized boolean importRoomsData(String roomsTxtFileName) {
+        long start = metrics.start();
+        try {
+            Loaded<Room> loaded = ParallelLoader.load(roomsTxtFileName, HotelImpl::parseRoom);
+            for (Room room : rooms.values()) {
+                unlistRoom(room, schedules.get(room.getRoomNumber()));
+            }
+            rooms.clear();
+            for (Room room : loaded.getRecords()) {
+                Room replaced = rooms.put(room.getRoomNumber(), room);
+                if (replaced != null) {
+                    unlistRoom(replaced, schedules.get(room.getRoomNumber()));
+                }
+                listRoom(room, scheduleOf(room.getRoomNumber()));
+            }
+            return metrics.record(Operation.IMPORT_ROOMS, start, loaded.getRecords().size(), true);
+        } catch (FileNotFoundException e) {
+            System.out.println(e.getMessage());
+            return metrics.record(Operation.IMPORT_ROOMS, start, 0, false);
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+            return metrics.record(Operation.IMPORT_ROOMS, start, 0, false);
+        }
+    }
+
+    public synchronized boolean importGuestsData(String guestsTxtFileName) {
+        long start = metrics.start();
+        try {
+            Loaded<Guest> loaded = ParallelLoader.load(guestsTxtFileName, HotelImpl::parseGuest);
+            guests.clear();
+            guestNames.clear();
+            guestIDs.reset(HotelImpl.FIRST_GUEST_ID - 1);
+            for (Guest guest : loaded.getRecords()) {
+                guests.put(guest.getGuestID(), guest);
+                addGuestName(guest);
+                guestIDs.seen(guest.getGuestID());
+            }
+            return metrics.record(Operation.IMPORT_GUESTS, start, loaded.getRecords().size(), true);
+        } catch (FileNotFoundException e) {
+            System.out.println(e.getMessage());
+            return metrics.record(Operation.IMPORT_GUESTS, start, 0, false);
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+            return metrics.record(Operation.IMPORT_GUESTS, start, 0, false);
+        }
+    }
+
+    public synchronized boolean importBookingsData(String bookingsTxtFileName) {
+        long start = metrics.start();
+        try {
+            Loaded<Booking> loaded = ParallelLoader.load(bookingsTxtFileName, HotelImpl::parseBooking);
+            long version = clock.beginWrite();
+            try {
+                for (Version<Booking> booking : bookings.values()) {
+                    releaseRoom(booking.getRecord());
+                }
+                bookings.clear();
+                bookingLog = new VersionedLog<>();
+                bookingsByDay = new ConcurrentHashMap<>();
+                guestBookings = new ConcurrentHashMap<>();
+                bookingIDs.reset(0);
+                for (Booking booking : loaded.getRecords()) {
+                    Version<Booking> added = new Version<>(booking, version);
+                    Version<Booking> replaced = bookings.put(booking.getId(), added);
+                    if (replaced != null) {
+                        releaseRoom(replaced.getRecord());
+                        unindexBooking(replaced, version);
+                    }
+                    RoomState state = scheduleOf(booking.getRoomNumber());
+                    synchronized (state) {
+                        state.add(booking);
+                    }
+                    indexBooking(added);
+                    bookingIDs.seen(booking.getId());
+                }
+            } finally {
+                clock.endWrite();
+            }
+            return metrics.record(Operation.IMPORT_BOOKINGS, start, loaded.getRecords().size(), true);
+        } catch (FileNotFoundException e) {
+            System.out.println(e.getMessage());
+            return metrics.record(Operation.IMPORT_BOOKINGS, start, 0, false);
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+            return metrics.record(Operation.IMPORT_BOOKINGS, start, 0, false);
+        }
+    }
+
+    public synchronized boolean importPaymentsData(String paymentsTxtFileName) {
+        long start = metrics.start();
+        try {
+            Loaded<Payment> loaded = ParallelLoader.load(paymentsTxtFileName, HotelImpl::parsePayment);
+            long version = clock.beginWrite();
+            try {
+                // Payments are never removed one by one, so a new list replaces the old one
+                payments = new VersionedLog<>();
+                paymentsByDay = new ConcurrentHashMap<>();
+                for (Payment payment : loaded.getRecords()) {
+                    addPayment(payment, version);
+                }
+            } finally {
+                clock.endWrite();
+            }
+            return metrics.record(Operation.IMPORT_PAYMENTS, start, loaded.getRecords().size(), true);
+        } catch (FileNotFoundException e) {
+            System.out.println(e.getMessage());
+            return metrics.record(Operation.IMPORT_PAYMENTS, start, 0, false);
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+            return metrics.record(Operation.IMPORT_PAYMENTS, start, 0, false);
+        }
+    }
+
+    public void displayAllRooms() {
+        RecordWriter.display(out -> forEachRoom(out));
+    }
+
+    public void displayAllGuests() {
+        RecordWriter.display(out -> forEachGuest(out));
+    }
+
+    public void displayAllBookings() {
+        RecordWriter.display(out -> forEachBooking(out));
+    }
+
+    public void displayAllPayments() {
+        RecordWriter.display(out -> forEachPayment(out));
+    }
+
+    public void forEachRoom(Consumer<? super Room> action) {
+        rooms.values().forEach(action);
+    }
+
+    public void forEachGuest(Consumer<? super Guest> action) {
+        guests.values().forEach(action);
+    }
+
+    /**
+     * Returns the rooms as a lazy stream, in room number order.
+     * The bookings and payments are streamed from a Snapshot.
+     */
+    public Stream<Room> rooms() {
+        return rooms.values().stream();
+    }
+
+    public Stream<Guest> guests() {
+        return guests.values().stream();
+    }
+
+    public void forEachBooking(Consumer<? super Booking> action) {
+        try (Snapshot snapshot = openSnapshot()) {
+            snapshot.forEachBooking(action);
+        }
+    }
+
+    public void forEachPayment(Consumer<? super Payment> action) {
+        try (Snapshot snapshot = openSnapshot()) {
+            snapshot.forEachPayment(action);
+        }
+    }
+
+    public boolean addRoom(int roomNumber, RoomType roomType, double price, int capacity, String facilities) {
+        Room room = new Room(roomNumber, HotelImpl.roomTypeToString(roomType), price, Integer.toString(capacity), facilities);
+        while (true) {
+            RoomState state = scheduleOf(roomNumber);
+            synchronized (state) {
+                if (state.removed) {
+                    // Lost a race with removeRoom; its successor state is in the map by now
+                    continue;
+                }
+                if (rooms.putIfAbsent(roomNumber, room) != null) {
+                    return false;
+                }
+                listRoom(room, state);
+                return true;
+            }
+        }
+    }
+
+    public boolean removeRoom(int roomNumber) {
+        RoomState state = schedules.get(roomNumber);
+        if (state == null) {
+            return false;
+        }
+        synchronized (state) {
+            Room room = rooms.get(roomNumber);
+            if (room == null || !state.isEmpty()) {
+                return false;
+            }
+            // Bookings that already picked this room see the flag once they hold the lock
+            state.removed = true;
+            schedules.remove(roomNumber, state);
+            unlistRoom(room, state);
+            rooms.remove(roomNumber);
+        }
+        return true;
+    }
+
+    public boolean addGuest(String fName, String lName, LocalDate dateJoin) {
+        return addNewGuest(fName, lName, dateJoin) >= 0;
+    }
+
+    public boolean addGuest(String fName, String lName, LocalDate dateJoin,
+        LocalDate VIPstartDate, LocalDate VIPexpiryDate) {
+        return addNewGuest(fName, lName, dateJoin, VIPstartDate, VIPexpiryDate) >= 0;
+    }
+
+    /**
+     * Add a guest like addGuest
+     *
+     * @return  the ID the guest was given
+     */
+    int addNewGuest(String fName, String lName, LocalDate dateJoin) {
+        Guest guest = new Guest(guestIDs.next(), fName, lName, dateJoin);
+        guests.put(guest.getGuestID(), guest);
+        addGuestName(guest);
+        return guest.getGuestID();
+    }
+
+    /**
+     * Add a VIP guest like addGuest
+     *
+     * @return  the ID the guest was given
+     */
+    int addNewGuest(String fName, String lName, LocalDate dateJoin,
+        LocalDate VIPstartDate, LocalDate VIPexpiryDate) {
+
+        // assert if VIPexpiryDate is one year after VIPstartdate
+        assert((VIPexpiryDate.getYear() - VIPstartDate.getYear() == 1) && (VIPexpiryDate.getMonth() == VIPstartDate.getMonth())
+         && (VIPexpiryDate.getDayOfMonth() == VIPstartDate.getDayOfMonth())) : "VIP membership must be 1 year.";
+
+        VIPGuest guest = new VIPGuest(guestIDs.next(), fName, lName, dateJoin, VIPstartDate, VIPexpiryDate);
+        guests.put(guest.getGuestID(), guest);
+        addGuestName(guest);
+        long version = clock.beginWrite();
+        try {
+            addPayment(Payment.of(VIPstartDate, guest.getGuestID(), 50.00, "VIPmembership"), version);
+        } finally {
+            clock.endWrite();
+        }
+        return guest.getGuestID();
+    }
+
+    public boolean removeGuest(int guestID) {
+        Guest guest = guests.get(guestID);
+        if (guest == null) {
+            return false;
+        }
+        // Holding the guest keeps new bookings for them out until the guest is gone
+        synchronized (guest) {
+            VersionedLog<Booking> ownBookings = guestBookings.get(guestID);
+            if (ownBookings != null && HotelImpl.hasFutureBooking(ownBookings.live(), LocalDate.now())) {
+                return false;
+            }
+            if (!guests.remove(guestID, guest)) {
+                return false;
+            }
+        }
+        removeGuestName(guest);
+        return true;
+    }
+
+    public boolean isAvailable(int roomNumber, LocalDate checkin, LocalDate checkout) {
+        if (!checkin.isBefore(checkout)) {
+            throw new IllegalArgumentException("Check-out date must be before check-in date");
+        }
+        long start = metrics.start();
+        RoomState state = schedules.get(roomNumber);
+        boolean free = state == null || state.isFree(checkin.toEpochDay(), checkout.toEpochDay());
+        metrics.record(Operation.IS_AVAILABLE, start, 1, true);
+        return free;
+    }
+
+    public int[] availableRooms(RoomType roomType, LocalDate checkin, LocalDate checkout) {
+        if (!checkin.isBefore(checkout)) {
+            throw new IllegalArgumentException("Check-out date must be before check-in date");
+        }
+        long start = metrics.start();
+        long from = checkin.toEpochDay();
+        long to = checkout.toEpochDay();
+        List<RoomState> candidates = roomsByType.get(roomType);
+        int[] free = new int[candidates.size()];
+        int count = 0;
+        for (RoomState state : candidates) {
+            if (count < free.length && state.isFree(from, to)) {
+                free[count++] = state.roomNumber;
+            }
+        }
+        metrics.record(Operation.AVAILABLE_ROOMS, start, free.length, true);
+        return Arrays.copyOf(free, count);
+    }
+
+    public int bookOneRoom(int guestID, RoomType roomType, LocalDate checkin, LocalDate checkout) {
+        long started = metrics.start();
+        if (!checkin.isBefore(checkout)) {
+            throw new IllegalArgumentException("Check-out date must be before check-in date");
+        }
+        Guest guest = guests.get(guestID);
+        if (guest == null) {
+            throw new IllegalArgumentException("Invalid guest ID");
+        }
+        LocalDate today = LocalDate.now();
+        boolean isVIP = HotelImpl.isActiveVIP(guest, today);
+        long from = checkin.toEpochDay();
+        long to = checkout.toEpochDay();
+        Object[] candidates = roomsByType.get(roomType).toArray();
+        if (candidates.length == 0) {
+            metrics.record(Operation.BOOK_ONE_ROOM, started, 0, false);
+            return -1;
+        }
+        synchronized (guest) {
+            if (guests.get(guestID) != guest) {
+                throw new IllegalArgumentException("Invalid guest ID");
+            }
+            // Start at a random room so that concurrent bookings spread over the rooms
+            int start = ThreadLocalRandom.current().nextInt(candidates.length);
+            for (int i = 0; i < candidates.length; i++) {
+                RoomState state = (RoomState)candidates[(start + i) % candidates.length];
+                if (!state.isFree(from, to)) {
+                    continue;
+                }
+                Booking booking;
+                synchronized (state) {
+                    Room room = rooms.get(state.roomNumber);
+                    if (state.removed || room == null || !state.isFree(from, to)) {
+                        continue;
+                    }
+                    double totalAmount = HotelImpl.bookingAmount(room, checkin, checkout, isVIP);
+                    booking = new Booking(bookingIDs.next(), guestID, state.roomNumber,
+                        today, checkin, checkout, totalAmount);
+                    state.add(booking);
+                }
+                long version = clock.beginWrite();
+                try {
+                    addBooking(booking, version);
+                } finally {
+                    clock.endWrite();
+                }
+                metrics.record(Operation.BOOK_ONE_ROOM, started, i + 1, true);
+                return booking.getRoomNumber();
+            }
+        }
+        metrics.record(Operation.BOOK_ONE_ROOM, started, candidates.length, false);
+        return -1;
+    }
+
+    /**
+     * Books several rooms for the same dates at once, e.g. for a group or a tour.
+     * Either every room is booked or none is.
+     *
+     * The rooms that look free are picked without locking, then only those
+     * rooms are locked, in room number order together with the guests, and
+     * checked again. If one of them was taken in the meantime the locks are
+     * let go and the rooms are picked again, so a booking never holds more
+     * locks than it has rooms and guests.
+     *
+     * @param guestIDs  the guest each room is booked for
+     * @param roomTypes the type of each room, in the same order as guestIDs
+     * @param checkin   the check-in date
+     * @param checkout  the check-out date
+     * @return          the booked room numbers in request order, or an empty array
+     *                  if there are not enough free rooms of some type
+     */
+    public int[] bookRooms(int[] guestIDs, RoomType[] roomTypes, LocalDate checkin, LocalDate checkout) {
+        long start = metrics.start();
+        if (guestIDs.length != roomTypes.length) {
+            throw new IllegalArgumentException("Every room needs a guest");
+        }
+        if (!checkin.isBefore(checkout)) {
+            throw new IllegalArgumentException("Check-out date must be before check-in date");
+        }
+        Guest[] bookers = new Guest[guestIDs.length];
+        for (int i = 0; i < guestIDs.length; i++) {
+            bookers[i] = guests.get(guestIDs[i]);
+            if (bookers[i] == null) {
+                throw new IllegalArgumentException("Invalid guest ID");
+            }
+        }
+        long from = checkin.toEpochDay();
+        long to = checkout.toEpochDay();
+        EnumMap<RoomType, List<RoomState>> candidates = new EnumMap<>(RoomType.class);
+        for (RoomType roomType : roomTypes) {
+            candidates.put(roomType, new ArrayList<>(roomsByType.get(roomType)));
+        }
+        long scanned = 0;
+        for (List<RoomState> ofType : candidates.values()) {
+            scanned += ofType.size();
+        }
+        for (long attempts = 1; ; attempts++) {
+            RoomState[] picked = pickRooms(roomTypes, candidates, from, to);
+            if (picked == null) {
+                metrics.record(Operation.BOOK_ROOMS, start, attempts * scanned, false);
+                return new int[0];
+            }
+            int[] roomNumbers = reserveRooms(bookers, picked, checkin, checkout);
+            if (roomNumbers != null) {
+                metrics.record(Operation.BOOK_ROOMS, start, attempts * scanned, true);
+                return roomNumbers;
+            }
+        }
+    }
+
+    /**
+     * Lock the guests and the picked rooms, check the rooms again and book them
+     *
+     * @return  the booked room numbers in request order, or null if a picked room was taken
+     */
+    private int[] reserveRooms(Guest[] bookers, RoomState[] picked, LocalDate checkin, LocalDate checkout) {
+        // Guests before rooms and both in ascending order, like bookOneRoom, so that no two callers deadlock
+        ArrayList<Object> locks = new ArrayList<>();
+        Arrays.stream(bookers).distinct().sorted(Comparator.comparingInt(Guest::getGuestID)).forEach(locks::add);
+        Arrays.stream(picked).sorted(Comparator.comparingInt((RoomState state) -> state.roomNumber)).forEach(locks::add);
+        return withLocks(locks, 0, () -> {
+            for (Guest guest : bookers) {
+                if (guests.get(guest.getGuestID()) != guest) {
+                    throw new IllegalArgumentException("Invalid guest ID");
+                }
+            }
+            for (RoomState state : picked) {
+                if (!isBookable(state, checkin.toEpochDay(), checkout.toEpochDay())) {
+                    return null;
+                }
+            }
+            LocalDate today = LocalDate.now();
+            int[] roomNumbers = new int[picked.length];
+            // One version for the whole group, so reports show all of it or none of it
+            long version = clock.beginWrite();
+            try {
+                for (int i = 0; i < picked.length; i++) {
+                    double totalAmount = HotelImpl.bookingAmount(rooms.get(picked[i].roomNumber), checkin, checkout,
+                        HotelImpl.isActiveVIP(bookers[i], today));
+                    Booking booking = new Booking(bookingIDs.next(), bookers[i].getGuestID(), picked[i].roomNumber,
+                        today, checkin, checkout, totalAmount);
+                    picked[i].add(booking);
+                    addBooking(booking, version);
+                    roomNumbers[i] = picked[i].roomNumber;
+                }
+            } finally {
+                clock.endWrite();
+            }
+            return roomNumbers;
+        });
+    }
+
+    /**
+     * Pick a free room of the requested type for every request, taking the
+     * candidates of each type in order
+     *
+     * @return  the room for every request, or null if some type has too few free rooms
+     */
+    private RoomState[] pickRooms(RoomType[] roomTypes, EnumMap<RoomType, List<RoomState>> candidates, long from, long to) {
+        RoomState[] picked = new RoomState[roomTypes.length];
+        EnumMap<RoomType, Integer> next = new EnumMap<>(RoomType.class);
+        for (int i = 0; i < roomTypes.length; i++) {
+            List<RoomState> ofType = candidates.get(roomTypes[i]);
+            int j = next.getOrDefault(roomTypes[i], 0);
+            while (j < ofType.size() && !isBookable(ofType.get(j), from, to)) {
+                j++;
+            }
+            if (j == ofType.size()) {
+                return null;
+            }
+            picked[i] = ofType.get(j);
+            next.put(roomTypes[i], j + 1);
+        }
+        return picked;
+    }
+
+    private boolean isBookable(RoomState state, long from, long to) {
+        return !state.removed && rooms.containsKey(state.roomNumber) && state.isFree(from, to);
+    }
+
+    /**
+     * Run an action while holding the monitors of all the given objects, taken
+     * in list order. Takes one stack frame per lock, so keep the list short.
+     */
+    private static <T> T withLocks(List<Object> locks, int from, Supplier<T> action) {
+        if (from == locks.size()) {
+            return action.get();
+        }
+        synchronized (locks.get(from)) {
+            return withLocks(locks, from + 1, action);
+        }
+    }
+
+    public boolean checkOut(int bookingID, LocalDate actualCheckoutDate) {
+        long start = metrics.start();
+        Version<Booking> found = bookings.get(bookingID);
+        if (found == null) {
+            System.out.println("Booking not found");
+            return metrics.record(Operation.CHECK_OUT, start, 0, false);
+        }
+        Booking booking = found.getRecord();
+        if (actualCheckoutDate.isAfter(booking.getCheckouDate())||(actualCheckoutDate.isBefore(booking.getCheckinDate()))) {
+            return metrics.record(Operation.CHECK_OUT, start, 1, false);
+        }
+        // Only one of several concurrent check-outs or cancellations gets the booking
+        if (!bookings.remove(bookingID, found)) {
+            return metrics.record(Operation.CHECK_OUT, start, 1, false);
+        }
+        HistoryArchive history = archive;
+        if (history != null) {
+            try {
+                history.addBooking(booking);
+            } catch (UncheckedIOException e) {
+                System.out.println(e.getMessage());
+                bookings.put(bookingID, found);
+                return metrics.record(Operation.CHECK_OUT, start, 1, false);
+            }
+        }
+        releaseRoom(booking);
+        long version = clock.beginWrite();
+        try {
+            unindexBooking(found, version);
+        } finally {
+            clock.endWrite();
+        }
+        return metrics.record(Operation.CHECK_OUT, start, 1, true);
+    }
+
+    public boolean cancelBooking(int bookingID) {
+        long start = metrics.start();
+        Version<Booking> found = bookings.get(bookingID);
+        if (found == null || !bookings.remove(bookingID, found)) {
+            return metrics.record(Operation.CANCEL_BOOKING, start, found == null ? 0 : 1, false);
+        }
+        Booking booking = found.getRecord();
+        releaseRoom(booking);
+        LocalDate refundDate = HotelImpl.refundDate(booking, LocalDate.now());
+        long version = clock.beginWrite();
+        try {
+            unindexBooking(found, version);
+            if (refundDate != null) {
+                addPayment(Payment.of(refundDate, booking.getGuestID(), -booking.getTotalAmount(), "refund"), version);
+            }
+        } finally {
+            clock.endWrite();
+        }
+        return metrics.record(Operation.CANCEL_BOOKING, start, 1, true);
+    }
+
+    public int[] searchGuest(String firstName, String lastName) {
+        long start = metrics.start();
+        int[] ids = guestNames.get(GuestNameIndex.key(firstName, lastName));
+        metrics.record(Operation.SEARCH_GUEST, start, ids == null ? 0 : ids.length, ids != null);
+        return ids == null ? new int[0] : ids.clone();
+    }
+
+    public void displayGuestBooking(int guestID) {
+        RecordWriter.display(out -> forEachGuestBooking(guestID, out));
+    }
+
+    public void displayBookingsOn(LocalDate thisDate) {
+        RecordWriter.display(out -> forEachBookingOn(thisDate, out));
+    }
+
+    public void displayPaymentsOn(LocalDate thisDate) {
+        RecordWriter.display(out -> forEachPaymentOn(thisDate, out));
+    }
+
+    public void forEachGuestBooking(int guestID, Consumer<? super Booking> action) {
+        try (Snapshot snapshot = openSnapshot()) {
+            snapshot.forEachGuestBooking(guestID, action);
+        }
+    }
+
+    public void forEachBookingOn(LocalDate thisDate, Consumer<? super Booking> action) {
+        try (Snapshot snapshot = openSnapshot()) {
+            snapshot.forEachBookingOn(thisDate, action);
+        }
+    }
+
+    public void forEachPaymentOn(LocalDate thisDate, Consumer<? super Payment> action) {
+        try (Snapshot snapshot = openSnapshot()) {
+            snapshot.forEachPaymentOn(thisDate, action);
+        }
+    }
+
+    /**
+     * Open an archive for the hotel history, creating it if needed. From
+     * then on checkOut moves the stay to the archive instead of dropping it.
+     * IDs of archived stays and guests are not handed out again.
+     *
+     * @param  directoryName  the archive directory
+     * @return true if the archive was opened, otherwise false
+     */
+    public synchronized boolean openArchive(String directoryName) {
+        try {
+            HistoryArchive opened = new HistoryArchive(directoryName);
+            guestIDs.seen(opened.getLastGuestID());
+            bookingIDs.seen(opened.getLastBookingID());
+            closeArchive();
+            archive = opened;
+            return true;
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Force the archive to disk and close it. Checked-out stays are dropped again afterwards.
+     */
+    public synchronized void closeArchive() {
+        HistoryArchive closing = archive;
+        if (closing == null) {
+            return;
+        }
+        archive = null;
+        try {
+            closing.close();
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Start counting calls and measuring latencies of the hotel operations.
+     * Until then the operations are not measured and pay next to nothing for it.
+     *
+     * @return  the metrics, the same ones on every call
+     */
+    public synchronized HotelMetrics enableMetrics() {
+        if (!metrics.isEnabled()) {
+            metrics = new HotelMetrics();
+        }
+        return metrics;
+    }
+
+    /**
+     * Returns the operation metrics, disabled unless enableMetrics was called
+     */
+    public HotelMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the archive of completed stays, or null if none is open
+     */
+    HistoryArchive getArchive() {
+        return archive;
+    }
+
+    /**
+     * Returns a view of the bookings and payments as they are now. The view
+     * does not change while the hotel goes on taking bookings, and reading
+     * it takes no locks. Removed bookings are kept in memory for as long as
+     * a snapshot that can see them is open, so close snapshots when done.
+     *
+     * @return  a snapshot of the bookings and payments
+     */
+    public Snapshot openSnapshot() {
+        return new Snapshot(clock.openSnapshot());
+    }
+
+    /**
+     * The bookings and payments of a hotel at one version
+     */
+    public class Snapshot implements AutoCloseable {
+        private final long version;
+        private boolean closed = false;
+
+        private Snapshot(long version) {
+            this.version = version;
+        }
+
+        public void displayAllBookings() {
+            RecordWriter.display(out -> forEachBooking(out));
+        }
+
+        public void displayAllPayments() {
+            RecordWriter.display(out -> forEachPayment(out));
+        }
+
+        public void displayGuestBooking(int guestID) {
+            RecordWriter.display(out -> forEachGuestBooking(guestID, out));
+        }
+
+        public void displayBookingsOn(LocalDate thisDate) {
+            RecordWriter.display(out -> forEachBookingOn(thisDate, out));
+        }
+
+        public void displayPaymentsOn(LocalDate thisDate) {
+            RecordWriter.display(out -> forEachPaymentOn(thisDate, out));
+        }
+
+        public boolean saveBookingsData(String bookingsTxtFileName) {
+            return HotelImpl.saveRecords(bookingsTxtFileName, bookingLog.at(version));
+        }
+
+        public boolean savePaymentsData(String paymentsTxtFileName) {
+            return HotelImpl.saveRecords(paymentsTxtFileName, payments.at(version));
+        }
+
+        /**
+         * Returns the bookings of this snapshot as a lazy stream, to be used up before the snapshot is closed
+         */
+        public Stream<Booking> bookings() {
+            return StreamSupport.stream(bookingLog.at(version).spliterator(), false);
+        }
+
+        public Stream<Payment> payments() {
+            return StreamSupport.stream(payments.at(version).spliterator(), false);
+        }
+
+        void forEachBooking(Consumer<? super Booking> action) {
+            bookingLog.at(version).forEach(action);
+        }
+
+        void forEachPayment(Consumer<? super Payment> action) {
+            payments.at(version).forEach(action);
+        }
+
+        void forEachGuestBooking(int guestID, Consumer<? super Booking> action) {
+            VersionedLog<Booking> ownBookings = guestBookings.get(guestID);
+            if (ownBookings != null) {
+                ownBookings.at(version).forEach(action);
+            }
+        }
+
+        void forEachBookingOn(LocalDate thisDate, Consumer<? super Booking> action) {
+            VersionedLog<Booking> bucket = bookingsByDay.get((int)thisDate.toEpochDay());
+            if (bucket != null) {
+                bucket.at(version).forEach(action);
+            }
+        }
+
+        void forEachPaymentOn(LocalDate thisDate, Consumer<? super Payment> action) {
+            VersionedLog<Payment> bucket = paymentsByDay.get((int)thisDate.toEpochDay());
+            if (bucket != null) {
+                bucket.at(version).forEach(action);
+            }
+        }
+
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                clock.closeSnapshot(version);
+                retryPrunes();
+            }
+        }
+    }
+
+    public boolean saveRoomsData(String roomsTxtFileName) {
+        long start = metrics.start();
+        return metrics.record(Operation.SAVE_ROOMS, start, rooms.size(), HotelImpl.saveRecords(roomsTxtFileName, rooms.values()));
+    }
+
+    public boolean saveGuestsData(String guestsTxtFileName) {
+        long start = metrics.start();
+        return metrics.record(Operation.SAVE_GUESTS, start, guests.size(), HotelImpl.saveRecords(guestsTxtFileName, guests.values()));
+    }
+
+    public boolean saveBookingsData(String bookingsTxtFileName) {
+        long start = metrics.start();
+        try (Snapshot snapshot = openSnapshot()) {
+            return metrics.record(Operation.SAVE_BOOKINGS, start, bookings.size(), snapshot.saveBookingsData(bookingsTxtFileName));
+        }
+    }
+
+    public boolean savePaymentsData(String paymentsTxtFileName) {
+        long start = metrics.start();
+        try (Snapshot snapshot = openSnapshot()) {
+            return metrics.record(Operation.SAVE_PAYMENTS, start, payments.size(), snapshot.savePaymentsData(paymentsTxtFileName));
+        }
+    }
+
+    /**
+     * Returns the state of a room, creating an empty one if needed
+     *
+     * @param roomNumber  the room number
+     * @return            the state holding all bookings of the room
+     */
+    private RoomState scheduleOf(int roomNumber) {
+        return schedules.computeIfAbsent(roomNumber, RoomState::new);
+    }
+
+    private void listRoom(Room room, RoomState state) {
+        RoomType roomType = HotelImpl.stringToRoomType(room.getRoomType());
+        if (roomType != null) {
+            roomsByType.get(roomType).add(state);
+        }
+    }
+
+    private void unlistRoom(Room room, RoomState state) {
+        RoomType roomType = HotelImpl.stringToRoomType(room.getRoomType());
+        if (roomType != null && state != null) {
+            roomsByType.get(roomType).remove(state);
+        }
+    }
+
+    private void releaseRoom(Booking booking) {
+        RoomState state = schedules.get(booking.getRoomNumber());
+        if (state != null) {
+            synchronized (state) {
+                state.remove(booking);
+            }
+        }
+    }
+
+    /**
+     * Add a new booking to the bookings table, its days and the guest's
+     * bookings, together with its payment. The caller is inside a write.
+     *
+     * @param booking   a booking just reserved in its room
+     * @param version   the version of the write
+     */
+    private void addBooking(Booking booking, long version) {
+        Version<Booking> added = new Version<>(booking, version);
+        bookings.put(booking.getId(), added);
+        indexBooking(added);
+        addPayment(Payment.of(booking.getBookingDate(), booking.getGuestID(), booking.getTotalAmount(), "booking"), version);
+    }
+
+    /**
+     * Add a booking to the list of all bookings, its days and the guest's bookings
+     *
+     * @param booking   a booking just added to the bookings table
+     */
+    private void indexBooking(Version<Booking> booking) {
+        bookingLog.add(booking);
+        // Added inside compute, so that a bucket being dropped as empty cannot take the booking with it
+        for (long day : HotelImpl.daysInRangeOf(booking.getRecord())) {
+            bookingsByDay.compute((int)day, (d, bucket) -> addTo(bucket, booking));
+        }
+        guestBookings.compute(booking.getRecord().getGuestID(), (g, bucket) -> addTo(bucket, booking));
+    }
+
+    private static <T> VersionedLog<T> addTo(VersionedLog<T> bucket, Version<T> version) {
+        if (bucket == null) {
+            bucket = new VersionedLog<>();
+        }
+        bucket.add(version);
+        return bucket;
+    }
+
+    /**
+     * Mark a booking removed as of a version, for every list it is in.
+     * The caller is inside a write.
+     *
+     * @param booking   a booking just removed from the bookings table
+     * @param version   the version of the write
+     */
+    private void unindexBooking(Version<Booking> booking, long version) {
+        booking.remove(version);
+        long horizon = clock.horizon();
+        retryPrunes(horizon);
+        VersionedLog<Booking> log = bookingLog;
+        if (log.removed(horizon)) {
+            waitingPrunes.add(log::prune);
+        }
+        for (long day : HotelImpl.daysInRangeOf(booking.getRecord())) {
+            removedFrom(bookingsByDay, (int)day, horizon);
+        }
+        removedFrom(guestBookings, booking.getRecord().getGuestID(), horizon);
+    }
+
+    /**
+     * Note a removed booking in one bucket of an index, and drop the bucket once it is empty
+     */
+    private void removedFrom(ConcurrentHashMap<Integer, VersionedLog<Booking>> index, int key, long horizon) {
+        VersionedLog<Booking> bucket = index.get(key);
+        if (bucket == null) {
+            return;
+        }
+        if (bucket.removed(horizon)) {
+            waitingPrunes.add(laterHorizon -> {
+                boolean waiting = bucket.prune(laterHorizon);
+                dropIfEmpty(index, key);
+                return waiting;
+            });
+        }
+        dropIfEmpty(index, key);
+    }
+
+    private static void dropIfEmpty(ConcurrentHashMap<Integer, VersionedLog<Booking>> index, int key) {
+        index.computeIfPresent(key, (k, bucket) -> bucket.size() == 0 ? null : bucket);
+    }
+
+    /**
+     * Prune the lists that waited for the horizon, if it has moved since they were last tried.
+     * The caller is inside a write.
+     */
+    private void retryPrunes(long horizon) {
+        if (waitingPrunes.isEmpty() || horizon <= prunesRetriedAt) {
+            return;
+        }
+        prunesRetriedAt = horizon;
+        for (int count = waitingPrunes.size(); count > 0; count--) {
+            LongPredicate prune = waitingPrunes.poll();
+            if (prune == null) {
+                break;
+            }
+            if (prune.test(horizon)) {
+                waitingPrunes.add(prune);
+            }
+        }
+    }
+
+    /**
+     * Prune the lists that waited for a snapshot that has just closed
+     */
+    private void retryPrunes() {
+        if (waitingPrunes.isEmpty()) {
+            return;
+        }
+        clock.beginWrite();
+        try {
+            retryPrunes(clock.horizon());
+        } finally {
+            clock.endWrite();
+        }
+    }
+
+    private void addPayment(Payment payment, long version) {
+        Version<Payment> added = new Version<>(payment, version);
+        payments.add(added);
+        paymentsByDay.computeIfAbsent((int)payment.getDate().toEpochDay(), d -> new VersionedLog<>()).add(added);
+    }
+
+    private void addGuestName(Guest guest) {
+        guestNames.merge(GuestNameIndex.key(guest.getFName(), guest.getLName()), new int[] {guest.getGuestID()},
+            (ids, added) -> {
+                int[] grown = Arrays.copyOf(ids, ids.length + 1);
+                grown[ids.length] = added[0];
+                return grown;
+            });
+    }
+
+    private void removeGuestName(Guest guest) {
+        guestNames.computeIfPresent(GuestNameIndex.key(guest.getFName(), guest.getLName()), (key, ids) -> {
+            int[] kept = Arrays.stream(ids).filter(id -> id != guest.getGuestID()).toArray();
+            return kept.length == 0 ? null : kept;
+        });
+    }
+
+    /**
+     * The bookings of one room, ordered by check-in day. Readers use the
+     * skip list without locking; writers lock the RoomState itself.
+     */
+    private static class RoomState {
+        private final int roomNumber;
+        // key = check-in epoch day in the high 32 bits, booking ID in the low 32 bits
+        private final ConcurrentSkipListMap<Long, Booking> bookings = new ConcurrentSkipListMap<>();
+        private volatile long longestStay = 0;
+        private boolean removed = false;
+
+        RoomState(int roomNumber) {
+            this.roomNumber = roomNumber;
+        }
+
+        /**
+         * Add a booking; the caller holds the lock of this room
+         */
+        void add(Booking booking) {
+            long checkin = booking.getCheckinDay();
+            long checkout = booking.getCheckoutDay();
+            // Raise the bound before the booking becomes visible, so readers never miss it
+            if (checkout - checkin > longestStay) {
+                longestStay = checkout - checkin;
+            }
+            bookings.put(key(checkin, booking.getId()), booking);
+        }
+
+        /**
+         * Remove a booking; the caller holds the lock of this room
+         */
+        void remove(Booking booking) {
+            bookings.remove(key(booking.getCheckinDay(), booking.getId()), booking);
+        }
+
+        boolean isEmpty() {return bookings.isEmpty();}
+
+        /**
+         * Checks whether no booking shares a night with [checkin, checkout)
+         *
+         * @param checkin   the check-in epoch day
+         * @param checkout  the check-out epoch day
+         * @return          true if the room is free for the whole period
+         */
+        boolean isFree(long checkin, long checkout) {
+            // Only bookings starting within longestStay days before checkin can reach into the period
+            Map<Long, Booking> candidates =
+                bookings.subMap(key(checkin - longestStay, 0), false, key(checkout, 0), false);
+            for (Booking booking : candidates.values()) {
+                if (booking.getCheckoutDay() > checkin
+                    && booking.getCheckinDay() < booking.getCheckoutDay()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static long key(long epochDay, int bookingID) {
+            return (epochDay << 32) | (bookingID & 0xffffffffL);
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package hotel;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Reads comma separated records straight from a byte buffer.
+ * Numbers and yyyy-MM-dd dates are parsed from the bytes in place, so
+ * only text fields allocate a String. The buffer is either refilled from
+ * a file channel or is a fixed chunk of a file, such as a mapped region.
+ *
+ * Usage: call nextLine() before each record, then read its fields in order.
+ */
+class CsvReader implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private ReadableByteChannel channel;
+    private ByteBuffer buffer;
+    private byte[] text = new byte[64];
+    private int pos;
+    private int lineEnd;
+    private int nextLineStart;
+    private long lineNumber = 0;
+
+    /**
+     * Read the records of a text file
+     *
+     * @param fileName  the text file
+     * @throws IOException if the file cannot be opened
+     */
+    CsvReader(String fileName) throws IOException {
+        this.channel = new FileInputStream(fileName).getChannel();
+        this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        buffer.flip();
+    }
+
+    /**
+     * Read the records held in a buffer, from its position to its limit
+     *
+     * @param chunk a buffer holding whole lines
+     */
+    CsvReader(ByteBuffer chunk) {
+        this.buffer = chunk;
+        this.pos = chunk.position();
+        this.nextLineStart = pos;
+    }
+
+    /**
+     * Move to the next non-blank record
+     *
+     * @return  true if there is a record to read, false at the end of the input
+     * @throws IOException if reading the file fails
+     */
+    boolean nextLine() throws IOException {
+        while (true) {
+            pos = nextLineStart;
+            int newline = indexOfNewline(pos);
+            while (newline < 0 && channel != null) {
+                if (!fill()) {
+                    break;
+                }
+                newline = indexOfNewline(pos);
+            }
+            if (newline < 0) {
+                if (pos >= buffer.limit()) {
+                    return false;
+                }
+                newline = buffer.limit();
+                nextLineStart = newline;
+            } else {
+                nextLineStart = newline + 1;
+            }
+            lineEnd = newline;
+            if (lineEnd > pos && buffer.get(lineEnd - 1) == '\r') {
+                lineEnd--;
+            }
+            lineNumber++;
+            if (lineEnd > pos) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Checks whether the current record has another field
+     *
+     * @return  true if another field follows
+     */
+    boolean hasField() {
+        return pos < lineEnd;
+    }
+
+    /**
+     * Read an integer field
+     *
+     * @return  the value of the field
+     */
+    int nextInt() {
+        int end = fieldEnd();
+        int i = pos;
+        boolean negative = i < end && buffer.get(i) == '-';
+        if (negative || (i < end && buffer.get(i) == '+')) {
+            i++;
+        }
+        if (i == end || end - i > 9) {
+            return Integer.parseInt(nextString().trim());
+        }
+        int value = 0;
+        for (; i < end; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return Integer.parseInt(nextString().trim());
+            }
+            value = value * 10 + digit;
+        }
+        skipField(end);
+        return negative ? -value : value;
+    }
+
+    /**
+     * Read a decimal field. Plain decimals of up to 15 digits are converted
+     * exactly; anything else is handed to Double.parseDouble.
+     *
+     * @return  the value of the field
+     */
+    double nextDouble() {
+        int end = fieldEnd();
+        int i = pos;
+        boolean negative = i < end && buffer.get(i) == '-';
+        if (negative || (i < end && buffer.get(i) == '+')) {
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int decimals = -1;
+        for (; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b == '.' && decimals < 0) {
+                decimals = 0;
+            } else if (b >= '0' && b <= '9' && digits < 15) {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (decimals >= 0) {
+                    decimals++;
+                }
+            } else {
+                return Double.parseDouble(nextString());
+            }
+        }
+        if (digits == 0) {
+            return Double.parseDouble(nextString());
+        }
+        skipField(end);
+        // Both operands are exact doubles, so the division rounds correctly
+        double value = decimals > 0 ? mantissa / POWERS_OF_TEN[decimals] : mantissa;
+        return negative ? -value : value;
+    }
+
+    /**
+     * Read a date field in yyyy-MM-dd form
+     *
+     * @return  the date
+     */
+    LocalDate nextDate() {
+        int end = fieldEnd();
+        if (end - pos != 10 || buffer.get(pos + 4) != '-' || buffer.get(pos + 7) != '-') {
+            return LocalDate.parse(nextString());
+        }
+        int year = digits(pos, 4);
+        int month = digits(pos + 5, 2);
+        int day = digits(pos + 8, 2);
+        if (year < 0 || month < 0 || day < 0) {
+            return LocalDate.parse(nextString());
+        }
+        skipField(end);
+        return LocalDate.of(year, month, day);
+    }
+
+    /**
+     * Read a text field
+     *
+     * @return  the field, decoded with the platform charset like FileReader does
+     */
+    String nextString() {
+        int end = fieldEnd();
+        int length = end - pos;
+        if (text.length < length) {
+            text = Arrays.copyOf(text, Math.max(length, text.length * 2));
+        }
+        for (int i = 0; i < length; i++) {
+            text[i] = buffer.get(pos + i);
+        }
+        skipField(end);
+        return new String(text, 0, length, Charset.defaultCharset());
+    }
+
+    /**
+     * Skip a field without reading it
+     */
+    void skip() {
+        skipField(fieldEnd());
+    }
+
+    /**
+     * Returns the number of the current line, counting from 1
+     */
+    long getLineNumber() {return lineNumber;}
+
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private int fieldEnd() {
+        if (pos > lineEnd) {
+            throw new IllegalArgumentException("Missing field on line " + lineNumber);
+        }
+        for (int i = pos; i < lineEnd; i++) {
+            if (buffer.get(i) == ',') {
+                return i;
+            }
+        }
+        return lineEnd;
+    }
+
+    private void skipField(int end) {
+        // Step over the comma; past the last field pos ends up beyond lineEnd
+        pos = end + 1;
+    }
+
+    private int digits(int from, int count) {
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private int indexOfNewline(int from) {
+        for (int i = from; i < buffer.limit(); i++) {
+            if (buffer.get(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Move the unread bytes to the front of the buffer and read more after them,
+     * growing the buffer when a single line does not fit
+     *
+     * @return  false at the end of the file
+     */
+    private boolean fill() throws IOException {
+        if (nextLineStart == 0 && buffer.limit() == buffer.capacity()) {
+            ByteBuffer grown = ByteBuffer.allocate(buffer.capacity() * 2);
+            grown.put(buffer);
+            buffer = grown;
+        } else {
+            buffer.position(nextLineStart);
+            buffer.compact();
+        }
+        int read = channel.read(buffer);
+        buffer.flip();
+        pos = pos - nextLineStart;
+        nextLineStart = 0;
+        return read >= 0;
+    }
+}
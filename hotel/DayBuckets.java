@@ -0,0 +1,56 @@
+package hotel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Records grouped into one list per epoch day, so that a question
+ * about one day only touches the records of that day.
+ *
+ * @param <T> the type of the records
+ */
+class DayBuckets<T> {
+    private IntHashMap<ArrayList<T>> buckets = new IntHashMap<>();
+
+    /**
+     * Add a record to the bucket of a day
+     *
+     * @param epochDay  the day
+     * @param record    the record
+     */
+    void add(long epochDay, T record) {
+        ArrayList<T> bucket = buckets.get((int)epochDay);
+        if (bucket == null) {
+            bucket = new ArrayList<>();
+            buckets.put((int)epochDay, bucket);
+        }
+        bucket.add(record);
+    }
+
+    /**
+     * Remove a record from the bucket of a day
+     *
+     * @param epochDay  the day
+     * @param record    the record
+     */
+    void remove(long epochDay, T record) {
+        ArrayList<T> bucket = buckets.get((int)epochDay);
+        if (bucket != null) {
+            bucket.remove(record);
+            if (bucket.isEmpty()) {
+                buckets.remove((int)epochDay);
+            }
+        }
+    }
+
+    /**
+     * Returns the records of a day
+     *
+     * @param epochDay  the day
+     * @return          the records in the order they were added, possibly empty
+     */
+    List<T> get(long epochDay) {
+        ArrayList<T> bucket = buckets.get((int)epochDay);
+        return bucket == null ? Collections.<T>emptyList() : bucket;
+    }
+}
@@ -0,0 +1,152 @@
+package hotel;
+
+/**
+ * Running totals by epoch day that answer the sum over any range of days
+ * in O(log days). An amount can be added to one day or spread evenly over
+ * a range of days, e.g. one per night of a stay, also in O(log days).
+ *
+ * Two Fenwick trees hold the differences between neighbouring days, the
+ * usual way to support range updates together with range sums. The days
+ * covered grow in both directions as amounts are added outside them.
+ */
+class DayTotals {
+    private int firstDay;
+    private double[] diffs;     // tree of d[i], the change from day i - 1 to day i
+    private double[] weighted;  // tree of d[i] * i
+
+    DayTotals() {
+        firstDay = 0;
+        diffs = new double[1];
+        weighted = new double[1];
+    }
+
+    /**
+     * Add an amount to one day
+     */
+    void add(long epochDay, double amount) {
+        addRange(epochDay, epochDay + 1, amount);
+    }
+
+    /**
+     * Add an amount to every day of a range
+     *
+     * @param fromDay   the first day
+     * @param toDay     the day after the last day
+     * @param amount    the amount added to each day
+     */
+    void addRange(long fromDay, long toDay, double amount) {
+        if (fromDay >= toDay) {
+            return;
+        }
+        cover(fromDay, toDay);
+        update((int)(fromDay - firstDay), amount);
+        update((int)(toDay - firstDay), -amount);
+    }
+
+    /**
+     * Returns the sum of the amounts of a range of days
+     *
+     * @param fromDay   the first day
+     * @param toDay     the last day, inclusive
+     * @return          the sum over the range, 0 if it is empty
+     */
+    double sum(long fromDay, long toDay) {
+        if (fromDay > toDay) {
+            return 0;
+        }
+        return prefix(toDay) - prefix(fromDay - 1);
+    }
+
+    /**
+     * Returns the first day toDays starts at
+     */
+    int getFirstDay() {return firstDay;}
+
+    /**
+     * Returns the amount of every covered day, from the first day on, e.g. to save the totals
+     */
+    double[] toDays() {
+        double[] days = new double[size()];
+        for (int i = 0; i < days.length; i++) {
+            days[i] = query(diffs, i);
+        }
+        return days;
+    }
+
+    /**
+     * Create totals holding the amounts of consecutive days, as toDays returned them
+     */
+    static DayTotals ofDays(long firstDay, double[] days) {
+        DayTotals totals = new DayTotals();
+        if (days.length > 0) {
+            totals.cover(firstDay, firstDay + days.length - 1);
+            for (int i = 0; i < days.length; i++) {
+                if (days[i] != 0) {
+                    totals.add(firstDay + i, days[i]);
+                }
+            }
+        }
+        return totals;
+    }
+
+    /**
+     * Returns the sum of the amounts up to and including a day
+     */
+    private double prefix(long day) {
+        long index = day - firstDay;
+        if (index < 0) {
+            return 0;
+        }
+        // Every range ends inside the covered days, so the days past the end add nothing new
+        int last = (int)Math.min(index, size() - 1);
+        return (index + 1) * query(diffs, last) - query(weighted, last);
+    }
+
+    private int size() {return diffs.length - 1;}
+
+    private void update(int index, double delta) {
+        for (int i = index + 1; i < diffs.length; i += i & -i) {
+            diffs[i] += delta;
+            weighted[i] += delta * index;
+        }
+    }
+
+    private static double query(double[] tree, int index) {
+        double sum = 0;
+        for (int i = index + 1; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Grow the covered days to include fromDay to toDay, both inclusive, keeping the totals
+     */
+    private void cover(long fromDay, long toDay) {
+        if (size() > 0 && fromDay >= firstDay && toDay < (long)firstDay + size()) {
+            return;
+        }
+        long newFirst = size() == 0 ? fromDay : Math.min(firstDay, fromDay);
+        long newEnd = size() == 0 ? toDay + 1 : Math.max((long)firstDay + size(), toDay + 1);
+        long newSize = Math.max(newEnd - newFirst, 2L * size());
+        if (fromDay < firstDay && size() > 0) {
+            newFirst = newEnd - newSize;
+        }
+        if (newSize > Integer.MAX_VALUE - 1) {
+            throw new IllegalArgumentException("Days out of range");
+        }
+        double[] changes = new double[size()];
+        for (int i = 0; i < changes.length; i++) {
+            changes[i] = query(diffs, i) - (i == 0 ? 0 : query(diffs, i - 1));
+        }
+        int oldFirst = firstDay;
+        firstDay = (int)newFirst;
+        diffs = new double[(int)newSize + 1];
+        weighted = new double[(int)newSize + 1];
+        for (int i = 0; i < changes.length; i++) {
+            if (changes[i] != 0) {
+                update(oldFirst + i - firstDay, changes[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package hotel;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Guest IDs indexed by case-folded name. Keys are the lower-case last
+ * name and first name separated by a NUL character, kept sorted so
+ * that all names starting with a last-name prefix form one key range.
+ * A second map keys the same IDs by first name, then last name, so that
+ * a search by first-name prefix alone is one key range too.
+ */
+class GuestNameIndex {
+    private static final char SEPARATOR = '\u0000';
+
+    private TreeMap<String, int[]> guestIDs = new TreeMap<>();
+    private TreeMap<String, int[]> byFirstName = new TreeMap<>();
+
+    /**
+     * Add a guest under their name
+     *
+     * @param guestID   the guest ID
+     * @param firstName the guest first name
+     * @param lastName  the guest last name
+     */
+    void add(int guestID, String firstName, String lastName) {
+        String key = key(firstName, lastName);
+        int[] ids = guestIDs.get(key);
+        if (ids == null) {
+            ids = new int[] {guestID};
+        } else {
+            ids = Arrays.copyOf(ids, ids.length + 1);
+            ids[ids.length - 1] = guestID;
+        }
+        guestIDs.put(key, ids);
+        byFirstName.put(firstNameKey(firstName, lastName), ids);
+    }
+
+    /**
+     * Remove a guest from under their name
+     *
+     * @param guestID   the guest ID
+     * @param firstName the guest first name
+     * @param lastName  the guest last name
+     */
+    void remove(int guestID, String firstName, String lastName) {
+        String key = key(firstName, lastName);
+        int[] ids = guestIDs.get(key);
+        if (ids == null) {
+            return;
+        }
+        int[] kept = new int[ids.length];
+        int count = 0;
+        for (int id : ids) {
+            if (id != guestID) {
+                kept[count++] = id;
+            }
+        }
+        if (count == 0) {
+            guestIDs.remove(key);
+            byFirstName.remove(firstNameKey(firstName, lastName));
+        } else {
+            kept = Arrays.copyOf(kept, count);
+            guestIDs.put(key, kept);
+            byFirstName.put(firstNameKey(firstName, lastName), kept);
+        }
+    }
+
+    /**
+     * Returns the guests whose name matches exactly, ignoring case
+     *
+     * @param firstName the guest first name
+     * @param lastName  the guest last name
+     * @return          the matching guest IDs in the order they were added
+     */
+    int[] find(String firstName, String lastName) {
+        int[] ids = guestIDs.get(key(firstName, lastName));
+        return ids == null ? new int[0] : ids.clone();
+    }
+
+    /**
+     * Returns the guests whose first and last names start with the given prefixes, ignoring case
+     *
+     * @param firstPrefix   the start of the first name, may be empty
+     * @param lastPrefix    the start of the last name, may be empty
+     * @return              the matching guest IDs ordered by last name, then first name
+     */
+    int[] findByPrefix(String firstPrefix, String lastPrefix) {
+        String first = normalize(firstPrefix);
+        String last = normalize(lastPrefix);
+        SortedMap<String, int[]> range;
+        if (!last.isEmpty()) {
+            range = guestIDs.subMap(last, last + Character.MAX_VALUE);
+        } else if (!first.isEmpty()) {
+            // The names with the first-name prefix, put back in last-name order
+            range = new TreeMap<>();
+            for (Map.Entry<String, int[]> entry : byFirstName.subMap(first, first + Character.MAX_VALUE).entrySet()) {
+                String key = entry.getKey();
+                int separator = key.indexOf(SEPARATOR);
+                range.put(key.substring(separator + 1) + SEPARATOR + key.substring(0, separator), entry.getValue());
+            }
+        } else {
+            range = guestIDs;
+        }
+        int[] found = new int[16];
+        int count = 0;
+        for (Map.Entry<String, int[]> entry : range.entrySet()) {
+            String key = entry.getKey();
+            if (!key.startsWith(first, key.indexOf(SEPARATOR) + 1)) {
+                continue;
+            }
+            for (int id : entry.getValue()) {
+                if (count == found.length) {
+                    found = Arrays.copyOf(found, count * 2);
+                }
+                found[count++] = id;
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    static String key(String firstName, String lastName) {
+        return normalize(lastName) + SEPARATOR + normalize(firstName);
+    }
+
+    private static String firstNameKey(String firstName, String lastName) {
+        return normalize(firstName) + SEPARATOR + normalize(lastName);
+    }
+
+    private static String normalize(String name) {
+        return name.toLowerCase();
+    }
+}
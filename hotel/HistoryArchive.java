@@ -0,0 +1,504 @@
+package hotel;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Completed stays and old payments, kept off the heap in memory-mapped
+ * append-only files in one directory:
+ *
+ *   bookings.bin   32-byte records: int id, guestID, roomNumber, bookingDay,
+ *                  checkinDay, checkoutDay | long amount in cents
+ *   payments.bin   24-byte records: int day, guestID | long amount in cents |
+ *                  int pay reason code | int unused
+ *   reasons.txt    the pay reasons, one per line, numbered from 0
+ *
+ * Each .bin file starts with one record-sized header holding a magic
+ * number and the record count. The payments header also holds the day
+ * before which every payment is archived, at offset 12 a flag and at
+ * offset 16 the day. Only small int indexes by guest and by
+ * room stay on the heap; they are rebuilt from the files on open. Date
+ * range queries scan the mapped records, which are read straight from
+ * the page cache, and so do the parallel streams over all the records.
+ */
+class HistoryArchive implements Closeable {
+    private static final int BOOKINGS_MAGIC = 0x48424131;  // "HBA1"
+    private static final int PAYMENTS_MAGIC = 0x48504131;  // "HPA1"
+    private static final int BOOKING_SIZE = 32;
+    private static final int PAYMENT_SIZE = 24;
+    private static final int ARCHIVED_BEFORE_SET = 12;
+    private static final int ARCHIVED_BEFORE_DAY = 16;
+
+    private MappedRecords bookings;
+    private MappedRecords payments;
+    private Path reasonsFile;
+    private ArrayList<String> reasonNames = new ArrayList<>();
+    private HashMap<String, Integer> reasonCodes = new HashMap<>();
+    private IntHashMap<IntList> bookingsByGuest = new IntHashMap<>();
+    private IntHashMap<IntList> bookingsByRoom = new IntHashMap<>();
+    private IntHashMap<IntList> paymentsByGuest = new IntHashMap<>();
+    private int lastBookingID = 0;
+    private int lastGuestID = 0;
+
+    /**
+     * Open the archive in a directory, creating it if it does not exist yet
+     *
+     * @param directoryName the archive directory
+     * @throws IOException  if the files cannot be opened or are not archive files
+     */
+    HistoryArchive(String directoryName) throws IOException {
+        Path directory = Paths.get(directoryName);
+        Files.createDirectories(directory);
+        reasonsFile = directory.resolve("reasons.txt");
+        if (Files.exists(reasonsFile)) {
+            for (String reason : Files.readAllLines(reasonsFile, StandardCharsets.UTF_8)) {
+                reasonCodes.put(reason, reasonNames.size());
+                reasonNames.add(reason);
+            }
+        }
+        bookings = new MappedRecords(directory.resolve("bookings.bin"), BOOKINGS_MAGIC, BOOKING_SIZE);
+        payments = new MappedRecords(directory.resolve("payments.bin"), PAYMENTS_MAGIC, PAYMENT_SIZE);
+        for (long row = 0; row < bookings.size(); row++) {
+            ByteBuffer buffer = bookings.buffer(row);
+            int offset = bookings.offset(row);
+            index(bookingsByGuest, buffer.getInt(offset + 4), row);
+            index(bookingsByRoom, buffer.getInt(offset + 8), row);
+            lastBookingID = Math.max(lastBookingID, buffer.getInt(offset));
+            lastGuestID = Math.max(lastGuestID, buffer.getInt(offset + 4));
+        }
+        for (long row = 0; row < payments.size(); row++) {
+            int guestID = payments.buffer(row).getInt(payments.offset(row) + 4);
+            index(paymentsByGuest, guestID, row);
+            lastGuestID = Math.max(lastGuestID, guestID);
+        }
+    }
+
+    /**
+     * Add a completed stay. A stay already in the archive, the same record
+     * in every field, is not added again, so a check-out replayed after a
+     * crash does not duplicate it. A stay that only shares the booking ID
+     * is a different stay and is added.
+     *
+     * @param booking   the checked-out booking
+     */
+    synchronized void addBooking(HotelImpl.Booking booking) {
+        long amountCents = HotelSnapshot.toCents(booking.getTotalAmount());
+        IntList rows = bookingsByGuest.get(booking.getGuestID());
+        for (int i = 0; rows != null && i < rows.size(); i++) {
+            ByteBuffer buffer = bookings.buffer(rows.get(i));
+            int offset = bookings.offset(rows.get(i));
+            if (buffer.getInt(offset) == booking.getId()
+                && buffer.getInt(offset + 8) == booking.getRoomNumber()
+                && buffer.getInt(offset + 12) == booking.getBookingDay()
+                && buffer.getInt(offset + 16) == booking.getCheckinDay()
+                && buffer.getInt(offset + 20) == booking.getCheckoutDay()
+                && buffer.getLong(offset + 24) == amountCents) {
+                return;
+            }
+        }
+        long row = bookings.size();
+        ByteBuffer buffer = bookings.buffer(row);
+        int offset = bookings.offset(row);
+        buffer.putInt(offset, booking.getId())
+            .putInt(offset + 4, booking.getGuestID())
+            .putInt(offset + 8, booking.getRoomNumber())
+            .putInt(offset + 12, booking.getBookingDay())
+            .putInt(offset + 16, booking.getCheckinDay())
+            .putInt(offset + 20, booking.getCheckoutDay())
+            .putLong(offset + 24, amountCents);
+        bookings.added();
+        index(bookingsByGuest, booking.getGuestID(), row);
+        index(bookingsByRoom, booking.getRoomNumber(), row);
+        lastBookingID = Math.max(lastBookingID, booking.getId());
+        lastGuestID = Math.max(lastGuestID, booking.getGuestID());
+    }
+
+    /**
+     * Add the payments of a hotel made before a day. Payments made before
+     * the day of an earlier call are archived already and skipped, so a
+     * call repeated after a failure or a crash adds nothing twice. The new
+     * rows are counted, and the day recorded, only once all are written:
+     * a call that fails leaves the archive as it was.
+     *
+     * @param cutoff    the first day whose payments are not archived
+     * @param columns   the payments of the hotel
+     * @return          the number of payments added
+     * @throws IOException if the payments cannot be written
+     */
+    synchronized int addPaymentsBefore(long cutoff, PaymentColumns columns) throws IOException {
+        // Payment days are ints, so e.g. LocalDate.MAX means every payment
+        cutoff = Math.min(Math.max(cutoff, Integer.MIN_VALUE), Integer.MAX_VALUE);
+        long archivedBefore = getPaymentsArchivedBefore();
+        long first = payments.size();
+        long row = first;
+        for (int i = 0; i < columns.size(); i++) {
+            int day = columns.getDay(i);
+            if (day < cutoff && day >= archivedBefore) {
+                int code = code(columns.getPayReason(i));
+                ByteBuffer buffer = payments.buffer(row);
+                int offset = payments.offset(row);
+                buffer.putInt(offset, day)
+                    .putInt(offset + 4, columns.getGuestID(i))
+                    .putLong(offset + 8, columns.getCents(i))
+                    .putInt(offset + 16, code);
+                row++;
+            }
+        }
+        ByteBuffer header = payments.buffer(-1);
+        if (cutoff > archivedBefore) {
+            header.putInt(ARCHIVED_BEFORE_SET, 1).putInt(ARCHIVED_BEFORE_DAY, (int)cutoff);
+        }
+        payments.added((int)(row - first));
+        for (long added = first; added < row; added++) {
+            int guestID = payments.buffer(added).getInt(payments.offset(added) + 4);
+            index(paymentsByGuest, guestID, added);
+            lastGuestID = Math.max(lastGuestID, guestID);
+        }
+        return (int)(row - first);
+    }
+
+    /**
+     * Returns the day before which every payment is archived, or Long.MIN_VALUE if none is
+     */
+    synchronized long getPaymentsArchivedBefore() {
+        ByteBuffer header = payments.buffer(-1);
+        return header.getInt(ARCHIVED_BEFORE_SET) == 0 ? Long.MIN_VALUE : header.getInt(ARCHIVED_BEFORE_DAY);
+    }
+
+    synchronized long bookingCount() {return bookings.size();}
+
+    /**
+     * Returns the highest booking ID archived, or 0 if there is none
+     */
+    synchronized int getLastBookingID() {return lastBookingID;}
+
+    /**
+     * Returns the highest guest ID of an archived stay or payment, or 0 if there is none
+     */
+    synchronized int getLastGuestID() {return lastGuestID;}
+
+    synchronized long paymentCount() {return payments.size();}
+
+    /**
+     * Visit the archived stays of a guest, in the order they were archived
+     */
+    synchronized void forEachBookingOfGuest(int guestID, Consumer<? super HotelImpl.Booking> action) {
+        IntList rows = bookingsByGuest.get(guestID);
+        for (int i = 0; rows != null && i < rows.size(); i++) {
+            action.accept(readBooking(rows.get(i)));
+        }
+    }
+
+    /**
+     * Visit the archived stays in a room, in the order they were archived
+     */
+    synchronized void forEachBookingOfRoom(int roomNumber, Consumer<? super HotelImpl.Booking> action) {
+        IntList rows = bookingsByRoom.get(roomNumber);
+        for (int i = 0; rows != null && i < rows.size(); i++) {
+            action.accept(readBooking(rows.get(i)));
+        }
+    }
+
+    /**
+     * Visit the archived stays that overlap a range of days
+     *
+     * @param from      the first day of the range
+     * @param to        the last day of the range, inclusive
+     * @param action    receives every stay from check-in to check-out touching the range
+     */
+    synchronized void forEachBookingBetween(LocalDate from, LocalDate to, Consumer<? super HotelImpl.Booking> action) {
+        long first = from.toEpochDay();
+        long last = to.toEpochDay();
+        for (long row = 0; row < bookings.size(); row++) {
+            ByteBuffer buffer = bookings.buffer(row);
+            int offset = bookings.offset(row);
+            if (buffer.getInt(offset + 16) <= last && buffer.getInt(offset + 20) >= first) {
+                action.accept(readBooking(row));
+            }
+        }
+    }
+
+    /**
+     * Visit the archived payments of a guest, in the order they were archived
+     */
+    synchronized void forEachPaymentOfGuest(int guestID, Consumer<? super HotelImpl.Payment> action) {
+        IntList rows = paymentsByGuest.get(guestID);
+        for (int i = 0; rows != null && i < rows.size(); i++) {
+            action.accept(readPayment(rows.get(i)));
+        }
+    }
+
+    /**
+     * Visit the archived payments made in a range of days
+     *
+     * @param from      the first day of the range
+     * @param to        the last day of the range, inclusive
+     * @param action    receives every payment made in the range
+     */
+    synchronized void forEachPaymentBetween(LocalDate from, LocalDate to, Consumer<? super HotelImpl.Payment> action) {
+        long first = from.toEpochDay();
+        long last = to.toEpochDay();
+        for (long row = 0; row < payments.size(); row++) {
+            int day = payments.buffer(row).getInt(payments.offset(row));
+            if (day >= first && day <= last) {
+                action.accept(readPayment(row));
+            }
+        }
+    }
+
+    /**
+     * Returns a parallel stream over the first stays archived, read from the
+     * mapped records as it goes. Records are only ever appended, so the
+     * stream can be used after more are archived; not after close.
+     *
+     * @param rows  the number of stays to stream, at most bookingCount()
+     */
+    synchronized Stream<HotelImpl.Booking> bookings(long rows) {
+        return StreamSupport.stream(bookings.spliterator(rows, HistoryArchive::readBooking), true);
+    }
+
+    /**
+     * Returns a parallel stream over the first payments archived, read from
+     * the mapped records as it goes, like bookings(long)
+     *
+     * @param rows  the number of payments to stream, at most paymentCount()
+     */
+    synchronized Stream<HotelImpl.Payment> payments(long rows) {
+        List<String> reasons = new ArrayList<>(reasonNames);
+        return StreamSupport.stream(payments.spliterator(rows, (buffer, offset) -> readPayment(buffer, offset, reasons)), true);
+    }
+
+    /**
+     * Force the archived records to disk
+     */
+    synchronized void force() {
+        bookings.force();
+        payments.force();
+    }
+
+    public synchronized void close() throws IOException {
+        bookings.close();
+        payments.close();
+    }
+
+    private HotelImpl.Booking readBooking(long row) {
+        return readBooking(bookings.buffer(row), bookings.offset(row));
+    }
+
+    private HotelImpl.Payment readPayment(long row) {
+        return readPayment(payments.buffer(row), payments.offset(row), reasonNames);
+    }
+
+    private static HotelImpl.Booking readBooking(ByteBuffer buffer, int offset) {
+        return new HotelImpl.Booking(buffer.getInt(offset), buffer.getInt(offset + 4), buffer.getInt(offset + 8),
+            (long)buffer.getInt(offset + 12), (long)buffer.getInt(offset + 16), (long)buffer.getInt(offset + 20),
+            buffer.getLong(offset + 24) / 100.0);
+    }
+
+    private static HotelImpl.Payment readPayment(ByteBuffer buffer, int offset, List<String> reasons) {
+        return HotelImpl.Payment.of(LocalDate.ofEpochDay(buffer.getInt(offset)), buffer.getInt(offset + 4),
+            buffer.getLong(offset + 8) / 100.0, reasons.get(buffer.getInt(offset + 16)));
+    }
+
+    private int code(String payReason) throws IOException {
+        Integer code = reasonCodes.get(payReason);
+        if (code == null) {
+            if (payReason.indexOf('\n') >= 0 || payReason.indexOf('\r') >= 0) {
+                throw new IllegalArgumentException("Pay reason cannot span lines");
+            }
+            try (BufferedWriter writer = Files.newBufferedWriter(reasonsFile, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                writer.write(payReason);
+                writer.newLine();
+            }
+            code = reasonNames.size();
+            reasonCodes.put(payReason, code);
+            reasonNames.add(payReason);
+        }
+        return code;
+    }
+
+    private static void index(IntHashMap<IntList> index, int key, long row) {
+        IntList rows = index.get(key);
+        if (rows == null) {
+            rows = new IntList();
+            index.put(key, rows);
+        }
+        rows.add((int)row);
+    }
+
+    /**
+     * Fixed-size records in a file mapped in segments as it grows. The
+     * header takes the place of record -1.
+     */
+    private static class MappedRecords implements Closeable {
+        private static final int SEGMENT_RECORDS = 1 << 16;
+
+        private FileChannel channel;
+        private int recordSize;
+        private ArrayList<MappedByteBuffer> segments = new ArrayList<>();
+        private long size;
+
+        MappedRecords(Path file, int magic, int recordSize) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.recordSize = recordSize;
+            boolean created = channel.size() == 0;
+            ByteBuffer header = segment(0);
+            if (created) {
+                header.putInt(0, magic).putLong(4, 0);
+            } else if (header.getInt(0) != magic) {
+                channel.close();
+                throw new IOException(file + " is not an archive file");
+            }
+            size = header.getLong(4);
+        }
+
+        long size() {return size;}
+
+        ByteBuffer buffer(long row) {
+            try {
+                return segment((int)((row + 1) / SEGMENT_RECORDS));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot map archive record " + row, e);
+            }
+        }
+
+        int offset(long row) {
+            return (int)((row + 1) % SEGMENT_RECORDS) * recordSize;
+        }
+
+        /**
+         * Count the record just written at index size()
+         */
+        void added() {
+            added(1);
+        }
+
+        /**
+         * Count the records just written from index size() on
+         */
+        void added(int count) {
+            size += count;
+            segments.get(0).putLong(4, size);
+        }
+
+        /**
+         * Returns a spliterator over the first records, holding the segments
+         * they are mapped in so it can be read without the archive's lock
+         */
+        <T> Spliterator<T> spliterator(long rows, RecordReader<T> reader) {
+            if (rows < 0 || rows > size) {
+                throw new IllegalArgumentException("Invalid record count");
+            }
+            if (rows > 0) {
+                // Map every segment the records are in
+                buffer(rows - 1);
+            }
+            return new RecordSpliterator<>(segments.toArray(new ByteBuffer[0]), recordSize, 0, rows, reader);
+        }
+
+        void force() {
+            for (MappedByteBuffer segment : segments) {
+                segment.force();
+            }
+        }
+
+        public void close() throws IOException {
+            force();
+            segments.clear();
+            channel.close();
+        }
+
+        private MappedByteBuffer segment(int index) throws IOException {
+            while (segments.size() <= index) {
+                long segmentBytes = (long)SEGMENT_RECORDS * recordSize;
+                segments.add(channel.map(FileChannel.MapMode.READ_WRITE, segments.size() * segmentBytes, segmentBytes));
+            }
+            return segments.get(index);
+        }
+    }
+
+    /**
+     * Makes a record from its bytes
+     */
+    private interface RecordReader<T> {
+        T read(ByteBuffer buffer, int offset);
+    }
+
+    /**
+     * Reads a range of records from mapped segments; splits in halves for a
+     * parallel stream. Reads with absolute gets only, so the same segments
+     * can be shared by every split.
+     */
+    private static class RecordSpliterator<T> implements Spliterator<T> {
+        private static final int MIN_SPLIT = 1024;
+
+        private final ByteBuffer[] segments;
+        private final int recordSize;
+        private final RecordReader<T> reader;
+        private long row;
+        private final long end;
+
+        RecordSpliterator(ByteBuffer[] segments, int recordSize, long row, long end, RecordReader<T> reader) {
+            this.segments = segments;
+            this.recordSize = recordSize;
+            this.row = row;
+            this.end = end;
+            this.reader = reader;
+        }
+
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (row >= end) {
+                return false;
+            }
+            action.accept(read(row++));
+            return true;
+        }
+
+        public void forEachRemaining(Consumer<? super T> action) {
+            for (; row < end; row++) {
+                action.accept(read(row));
+            }
+        }
+
+        public Spliterator<T> trySplit() {
+            long middle = (row + end) >>> 1;
+            if (middle - row < MIN_SPLIT) {
+                return null;
+            }
+            Spliterator<T> prefix = new RecordSpliterator<>(segments, recordSize, row, middle, reader);
+            row = middle;
+            return prefix;
+        }
+
+        public long estimateSize() {return end - row;}
+
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+        }
+
+        private T read(long index) {
+            long record = index + 1;
+            return reader.read(segments[(int)(record / MappedRecords.SEGMENT_RECORDS)],
+                (int)(record % MappedRecords.SEGMENT_RECORDS) * recordSize);
+        }
+    }
+}
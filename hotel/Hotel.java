@@ -132,7 +132,7 @@ public interface Hotel{
 
   /**
   * Make a booking for one room type.
-  * If more than one room avaible, choose one room randomly to book
+  * If more than one room avaible, the hotel's room assignment chooses one to book
   *
   * @param guestID    a unique guest ID
   * @param roomType   a room type
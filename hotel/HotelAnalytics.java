@@ -0,0 +1,313 @@
+package hotel;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.DoubleSummaryStatistics;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Stream;
+import hotel.HotelImpl.Booking;
+import hotel.HotelImpl.Guest;
+import hotel.HotelImpl.Payment;
+import hotel.HotelImpl.Room;
+
+/**
+ * Ad-hoc questions over the bookings and payments of a hotel, e.g. the
+ * average length of stay per room type for VIP guests in a quarter:
+ *
+ *   HotelAnalytics.bookings(hotel)
+ *       .where(BookingRow::isVIP)
+ *       .where(row -> row.getCheckinMonth().compareTo(YearMonth.of(2019, 7)) >= 0
+ *           && row.getCheckinMonth().compareTo(YearMonth.of(2019, 9)) <= 0)
+ *       .groupBy(BookingRow::getRoomType)
+ *       .average(BookingRow::getNights);
+ *
+ * or the refunds of every month:
+ *
+ *   HotelAnalytics.payments(hotel)
+ *       .where(row -> row.getPayReason().equals("refund"))
+ *       .groupBy(PaymentRow::getMonth)
+ *       .sum(PaymentRow::getAmount);
+ *
+ * Starting a query lists the current bookings or payments of the hotel,
+ * notes how many records its archive holds, if it has one, and builds hash
+ * tables of the guests by guest ID and the rooms by room number. The rows
+ * are then joined to their guest and room, filtered and aggregated on a
+ * parallel stream: every thread folds its share of the rows into its own
+ * partial groups, and the partial groups are merged at the end. Archived
+ * records are read from the mapped archive files as the stream goes, split
+ * into ranges of records, and are never copied onto the heap.
+ *
+ * The payments of a HotelImpl are views of its payment table, so a
+ * HotelImpl must not change while a query is started or run, and its
+ * archive must stay open. A ConcurrentHotel can go on taking bookings.
+ */
+public class HotelAnalytics {
+
+    private HotelAnalytics() {}
+
+    /**
+     * Start a query over the bookings of a hotel, current and archived
+     *
+     * @param hotel the hotel
+     * @return      a query over every booking joined to its guest and room
+     */
+    public static Query<BookingRow> bookings(RecordSource hotel) {
+        IntHashMap<Guest> guests = guestTable(hotel);
+        IntHashMap<Room> rooms = new IntHashMap<>();
+        hotel.forEachRoom(room -> rooms.put(room.getRoomNumber(), room));
+        ArrayList<Booking> bookings = new ArrayList<>();
+        hotel.forEachBooking(bookings::add);
+        HistoryArchive archive = archiveOf(hotel);
+        long archived = archive == null ? 0 : archive.bookingCount();
+        return new Query<>(() -> withArchived(bookings, archive == null ? null : () -> archive.bookings(archived)).map(
+            booking -> new BookingRow(booking, guests.get(booking.getGuestID()), rooms.get(booking.getRoomNumber()))));
+    }
+
+    /**
+     * Start a query over the payments of a hotel, current and archived
+     *
+     * @param hotel the hotel
+     * @return      a query over every payment joined to its guest
+     */
+    public static Query<PaymentRow> payments(RecordSource hotel) {
+        IntHashMap<Guest> guests = guestTable(hotel);
+        ArrayList<Payment> payments = new ArrayList<>();
+        hotel.forEachPayment(payments::add);
+        HistoryArchive archive = archiveOf(hotel);
+        long archived = archive == null ? 0 : archive.paymentCount();
+        return new Query<>(() -> withArchived(payments, archive == null ? null : () -> archive.payments(archived)).map(
+            payment -> new PaymentRow(payment, guests.get(payment.getGuestID()))));
+    }
+
+    /**
+     * A filtered set of rows, ready to be aggregated
+     *
+     * @param <R> the type of the rows
+     */
+    public static class Query<R> {
+        private final Supplier<Stream<R>> rows;
+        private final ForkJoinPool pool;
+
+        private Query(Supplier<Stream<R>> rows) {
+            this(rows, null);
+        }
+
+        private Query(Supplier<Stream<R>> rows, ForkJoinPool pool) {
+            this.rows = rows;
+            this.pool = pool;
+        }
+
+        /**
+         * Keep only the rows a condition holds for; several conditions must all hold
+         */
+        public Query<R> where(Predicate<? super R> condition) {
+            return new Query<>(() -> rows.get().filter(condition), pool);
+        }
+
+        /**
+         * Run the query on a pool of its own instead of the common pool
+         */
+        public Query<R> on(ForkJoinPool pool) {
+            return new Query<>(rows, pool);
+        }
+
+        public long count() {
+            return run(() -> rows.get().count());
+        }
+
+        /**
+         * Returns the count, sum, minimum, average and maximum of a value over the rows
+         */
+        public DoubleSummaryStatistics summarize(ToDoubleFunction<? super R> value) {
+            return run(() -> rows.get().collect(DoubleSummaryStatistics::new,
+                (summary, row) -> summary.accept(value.applyAsDouble(row)), DoubleSummaryStatistics::combine));
+        }
+
+        public double sum(ToDoubleFunction<? super R> value) {
+            return summarize(value).getSum();
+        }
+
+        public double average(ToDoubleFunction<? super R> value) {
+            return summarize(value).getAverage();
+        }
+
+        /**
+         * Split the rows into groups by a key. Rows whose key is null are left out.
+         */
+        public <K> Grouped<R, K> groupBy(Function<? super R, ? extends K> key) {
+            return new Grouped<>(this, key);
+        }
+
+        private <T> T run(Supplier<T> task) {
+            return pool == null ? task.get() : pool.submit(task::get).join();
+        }
+    }
+
+    /**
+     * The rows of a query split into groups. The results are in key order
+     * when the keys are Comparable, e.g. room types or months.
+     *
+     * @param <R> the type of the rows
+     * @param <K> the type of the group keys
+     */
+    public static class Grouped<R, K> {
+        private final Query<R> query;
+        private final Function<? super R, ? extends K> key;
+
+        private Grouped(Query<R> query, Function<? super R, ? extends K> key) {
+            this.query = query;
+            this.key = key;
+        }
+
+        public Map<K, Long> count() {
+            Map<K, Long> counts = new LinkedHashMap<>();
+            summarize(row -> 0).forEach((group, summary) -> counts.put(group, summary.getCount()));
+            return counts;
+        }
+
+        public Map<K, Double> sum(ToDoubleFunction<? super R> value) {
+            Map<K, Double> sums = new LinkedHashMap<>();
+            summarize(value).forEach((group, summary) -> sums.put(group, summary.getSum()));
+            return sums;
+        }
+
+        public Map<K, Double> average(ToDoubleFunction<? super R> value) {
+            Map<K, Double> averages = new LinkedHashMap<>();
+            summarize(value).forEach((group, summary) -> averages.put(group, summary.getAverage()));
+            return averages;
+        }
+
+        /**
+         * Returns the count, sum, minimum, average and maximum of a value in every group
+         */
+        public Map<K, DoubleSummaryStatistics> summarize(ToDoubleFunction<? super R> value) {
+            HashMap<K, DoubleSummaryStatistics> groups = query.run(() -> query.rows.get().collect(HashMap::new,
+                (partial, row) -> {
+                    K group = key.apply(row);
+                    if (group != null) {
+                        partial.computeIfAbsent(group, k -> new DoubleSummaryStatistics()).accept(value.applyAsDouble(row));
+                    }
+                },
+                (partial, other) -> other.forEach((group, summary) -> partial.merge(group, summary, (a, b) -> {
+                    a.combine(b);
+                    return a;
+                }))));
+            for (K group : groups.keySet()) {
+                if (!(group instanceof Comparable)) {
+                    return groups;
+                }
+            }
+            try {
+                return new TreeMap<>(groups);
+            } catch (ClassCastException e) {
+                // Comparable, but not with each other
+                return groups;
+            }
+        }
+    }
+
+    /**
+     * A booking joined to its guest and room
+     */
+    public static class BookingRow {
+        private final Booking booking;
+        private final Guest guest;
+        private final Room room;
+
+        BookingRow(Booking booking, Guest guest, Room room) {
+            this.booking = booking;
+            this.guest = guest;
+            this.room = room;
+        }
+
+        public Booking getBooking() {return booking;}
+
+        /**
+         * Returns the guest, or null if the guest has been removed
+         */
+        public Guest getGuest() {return guest;}
+
+        /**
+         * Returns the room, or null if the room has been removed
+         */
+        public Room getRoom() {return room;}
+
+        public RoomType getRoomType() {
+            return room == null ? null : HotelImpl.stringToRoomType(room.getRoomType());
+        }
+
+        public int getNights() {return booking.getCheckoutDay() - booking.getCheckinDay();}
+        public double getAmount() {return booking.getTotalAmount();}
+        public YearMonth getCheckinMonth() {return YearMonth.from(booking.getCheckinDate());}
+
+        /**
+         * Returns true if the guest was an active VIP on the booking date
+         */
+        public boolean isVIP() {
+            return guest != null && HotelImpl.isActiveVIP(guest, booking.getBookingDate());
+        }
+    }
+
+    /**
+     * A payment joined to its guest
+     */
+    public static class PaymentRow {
+        private final Payment payment;
+        private final Guest guest;
+
+        PaymentRow(Payment payment, Guest guest) {
+            this.payment = payment;
+            this.guest = guest;
+        }
+
+        public Payment getPayment() {return payment;}
+
+        /**
+         * Returns the guest, or null if the guest has been removed
+         */
+        public Guest getGuest() {return guest;}
+
+        public double getAmount() {return payment.getAmount();}
+        public String getPayReason() {return payment.getPayReason();}
+        public LocalDate getDate() {return payment.getDate();}
+        public YearMonth getMonth() {return YearMonth.from(payment.getDate());}
+
+        /**
+         * Returns true if the guest was an active VIP on the payment date
+         */
+        public boolean isVIP() {
+            return guest != null && HotelImpl.isActiveVIP(guest, payment.getDate());
+        }
+    }
+
+    /**
+     * Returns a parallel stream over the current records followed by the archived ones, if any
+     */
+    private static <T> Stream<T> withArchived(ArrayList<T> current, Supplier<Stream<T>> archived) {
+        return archived == null ? current.parallelStream() : Stream.concat(current.parallelStream(), archived.get());
+    }
+
+    private static IntHashMap<Guest> guestTable(RecordSource hotel) {
+        IntHashMap<Guest> guests = new IntHashMap<>();
+        hotel.forEachGuest(guest -> guests.put(guest.getGuestID(), guest));
+        return guests;
+    }
+
+    private static HistoryArchive archiveOf(RecordSource hotel) {
+        if (hotel instanceof HotelImpl) {
+            return ((HotelImpl)hotel).getArchive();
+        }
+        if (hotel instanceof ConcurrentHotel) {
+            return ((ConcurrentHotel)hotel).getArchive();
+        }
+        return null;
+    }
+}
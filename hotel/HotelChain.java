@@ -0,0 +1,285 @@
+package hotel;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Many hotels of a chain in one process.
+ *
+ * Every hotel is a plain HotelImpl that only ever runs on one thread: the
+ * hotels are spread over a fixed set of shards, each a single-threaded
+ * executor, and all calls to a hotel, reads and writes alike, are queued on
+ * its shard. Hotels share nothing, so no hotel takes a lock, and hotels on
+ * different shards are served in parallel. With one shard per core and
+ * more hotels than cores, throughput grows with the cores.
+ *
+ * Queries across the chain, such as the free rooms of a type in every
+ * hotel of a city, are sent to all the hotels at once and the answers
+ * merged when they are all in.
+ *
+ * An action given to submit or call runs on a shard thread, so it must not
+ * itself wait for another call to the chain.
+ */
+public class HotelChain implements AutoCloseable {
+
+    private final ExecutorService[] shards;
+    private final ConcurrentHashMap<String, Property> properties = new ConcurrentHashMap<>();
+    // the names of hotels still being made, taken but not yet in properties
+    private final HashSet<String> reserved = new HashSet<>();
+    private int nextShard = 0;
+
+    /**
+     * One hotel of the chain, pinned to its shard
+     */
+    private static class Property {
+        private final String name;
+        private final String city;
+        private final ExecutorService shard;
+        private final HotelImpl hotel;
+
+        Property(String name, String city, ExecutorService shard, HotelImpl hotel) {
+            this.name = name;
+            this.city = city;
+            this.shard = shard;
+            this.hotel = hotel;
+        }
+    }
+
+    /**
+     * Create an empty chain with one shard per available processor
+     */
+    public HotelChain() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create an empty chain
+     *
+     * @param shardCount    the number of threads the hotels are spread over
+     */
+    public HotelChain(int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("A chain needs at least one shard");
+        }
+        shards = new ExecutorService[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            String threadName = "hotel-shard-" + i;
+            shards[i] = Executors.newSingleThreadExecutor(task -> {
+                Thread thread = new Thread(task, threadName);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Add a hotel loaded from its four files. The files are loaded on the
+     * hotel's own shard.
+     *
+     * @param name                  the hotel name, unique in the chain
+     * @param city                  the city of the hotel
+     * @param roomsTxtFileName      the rooms txt file
+     * @param guestsTxtFileName     the guests txt file
+     * @param bookingsTxtFileName   the bookings txt file
+     * @param paymentsTxtFileName   the payments txt file
+     * @return                      true if adding the hotel successfully, otherwise false
+     */
+    public boolean addHotel(String name, String city, String roomsTxtFileName, String guestsTxtFileName,
+        String bookingsTxtFileName, String paymentsTxtFileName) {
+        return addHotel(name, city,
+            () -> new HotelImpl(roomsTxtFileName, guestsTxtFileName, bookingsTxtFileName, paymentsTxtFileName));
+    }
+
+    /**
+     * Add a hotel made on its own shard, e.g. one backed by a snapshot and journal.
+     * The hotel can be called once it is made; until then its name is taken
+     * but unknown to the other methods.
+     *
+     * @param name      the hotel name, unique in the chain
+     * @param city      the city of the hotel
+     * @param factory   makes the hotel
+     * @return          true if adding the hotel successfully, otherwise false
+     */
+    public boolean addHotel(String name, String city, Supplier<HotelImpl> factory) {
+        ExecutorService shard;
+        synchronized (this) {
+            if (properties.containsKey(name) || !reserved.add(name)) {
+                return false;
+            }
+            shard = shards[nextShard];
+            nextShard = (nextShard + 1) % shards.length;
+        }
+        HotelImpl hotel = null;
+        try {
+            hotel = await(CompletableFuture.supplyAsync(factory, shard));
+            return true;
+        } catch (RuntimeException e) {
+            System.out.println(e.getMessage());
+            return false;
+        } finally {
+            synchronized (this) {
+                reserved.remove(name);
+                if (hotel != null) {
+                    properties.put(name, new Property(name, city, shard, hotel));
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove a hotel from the chain once the calls queued for it are done
+     *
+     * @param name  the hotel name
+     * @return      the hotel, or null if there is no hotel by that name
+     */
+    public HotelImpl removeHotel(String name) {
+        Property property = properties.remove(name);
+        return property == null ? null : await(CompletableFuture.supplyAsync(() -> property.hotel, property.shard));
+    }
+
+    /**
+     * Returns the names of the hotels in a city, in name order
+     */
+    public List<String> getHotelNames(String city) {
+        List<String> names = new ArrayList<>();
+        for (Property property : inCity(city)) {
+            names.add(property.name);
+        }
+        return names;
+    }
+
+    /**
+     * Queue an action on one hotel
+     *
+     * @param hotelName the hotel name
+     * @param action    runs on the hotel's shard with the hotel
+     * @return          completes with the result of the action
+     */
+    public <T> CompletableFuture<T> submit(String hotelName, Function<? super HotelImpl, T> action) {
+        Property property = properties.get(hotelName);
+        if (property == null) {
+            throw new IllegalArgumentException("Invalid hotel name");
+        }
+        return CompletableFuture.supplyAsync(() -> action.apply(property.hotel), property.shard);
+    }
+
+    /**
+     * Run an action on one hotel and wait for its result
+     *
+     * @param hotelName the hotel name
+     * @param action    runs on the hotel's shard with the hotel
+     * @return          the result of the action
+     */
+    public <T> T call(String hotelName, Function<? super HotelImpl, T> action) {
+        return await(submit(hotelName, action));
+    }
+
+    /**
+     * Run a query on every hotel of a city at once
+     *
+     * @param city  the city
+     * @param query runs on each hotel's shard with the hotel
+     * @return      the answer of every hotel in the city by hotel name, in name order
+     */
+    public <T> Map<String, T> queryCity(String city, Function<? super HotelImpl, T> query) {
+        List<Property> hotels = inCity(city);
+        List<CompletableFuture<T>> answers = new ArrayList<>(hotels.size());
+        for (Property property : hotels) {
+            answers.add(CompletableFuture.supplyAsync(() -> query.apply(property.hotel), property.shard));
+        }
+        Map<String, T> merged = new LinkedHashMap<>();
+        for (int i = 0; i < hotels.size(); i++) {
+            merged.put(hotels.get(i).name, await(answers.get(i)));
+        }
+        return merged;
+    }
+
+    /**
+     * Search the hotels of a city for free rooms of one room type
+     *
+     * @param city      the city
+     * @param roomType  a room type
+     * @param checkin   the check-in date
+     * @param checkout  the check-out date
+     * @return          the free room numbers by hotel name, leaving out hotels with none
+     */
+    public Map<String, int[]> availableRooms(String city, RoomType roomType, LocalDate checkin, LocalDate checkout) {
+        if (!checkin.isBefore(checkout)) {
+            throw new IllegalArgumentException("Check-out date must be before check-in date");
+        }
+        Map<String, int[]> free = queryCity(city, hotel -> hotel.availableRooms(roomType, checkin, checkout));
+        free.values().removeIf(rooms -> rooms.length == 0);
+        return free;
+    }
+
+    /**
+     * Returns the income of the hotels of a city over a range of days, refunds taken off
+     *
+     * @param city  the city
+     * @param from  the first day
+     * @param to    the last day, inclusive
+     * @return      the sum of the payments made in the range
+     */
+    public double getRevenue(String city, LocalDate from, LocalDate to) {
+        double revenue = 0;
+        for (double hotelRevenue : queryCity(city, hotel -> hotel.getStats().getRevenue(from, to)).values()) {
+            revenue += hotelRevenue;
+        }
+        return Math.round(revenue * 100) / 100.0;
+    }
+
+    /**
+     * Finish the calls already queued and stop the shard threads
+     */
+    public void close() {
+        for (ExecutorService shard : shards) {
+            shard.shutdown();
+        }
+        try {
+            for (ExecutorService shard : shards) {
+                shard.awaitTermination(1, TimeUnit.MINUTES);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private List<Property> inCity(String city) {
+        TreeMap<String, Property> hotels = new TreeMap<>();
+        for (Property property : properties.values()) {
+            if (property.city.equals(city)) {
+                hotels.put(property.name, property);
+            }
+        }
+        return new ArrayList<>(hotels.values());
+    }
+
+    /**
+     * Wait for a call, passing on the exception it failed with
+     */
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error)e.getCause();
+            }
+            throw e;
+        }
+    }
+}
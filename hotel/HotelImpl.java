@@ -1,17 +1,55 @@
 package hotel;
 import java.time.LocalDate;
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.time.temporal.ChronoUnit;
-import java.util.Random;
-
-public class HotelImpl implements Hotel {
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import hotel.HotelMetrics.Operation;
+import hotel.ParallelLoader.Loaded;
+
+public class HotelImpl implements Hotel, RecordSource {
     
-    private ArrayList<Room> rooms;
-    private ArrayList<Guest> guests;
-    private ArrayList<Booking> bookings;
-    private ArrayList<Payment> payments;
+    // Rooms, guests and bookings are indexed by room number, guest ID and booking ID
+    private IntHashMap<Room> rooms;
+    private IntHashMap<Guest> guests;
+    private IntHashMap<Booking> bookings;
+    private PaymentColumns payments;
+    private IntHashMap<RoomSchedule> schedules = new IntHashMap<>();
+    private IntHashMap<ArrayList<Booking>> guestBookings = new IntHashMap<>();
+    private GuestNameIndex guestNames = new GuestNameIndex();
+    private DayBuckets<Booking> bookingsByDay = new DayBuckets<>();
+    private OccupancyCalendar calendar = new OccupancyCalendar();
+    private ArrayList<LoadStats> loadStats = new ArrayList<>();
+    private HotelStats stats = new HotelStats();
+    private HotelMetrics metrics = HotelMetrics.DISABLED;
+    private AvailabilityCache availability = new AvailabilityCache(DEFAULT_AVAILABILITY_CACHE_SIZE);
+    private RoomAssignment roomAssignment = RoomAssignment.BEST_FIT;
+    private RoomAssignment.Gaps gaps = new ScheduleGaps();
+    private IdAllocator guestIDs = new IdAllocator(FIRST_GUEST_ID - 1);
+    private IdAllocator bookingIDs = new IdAllocator(0);
+
+    static final int FIRST_GUEST_ID = 10001;
+    static final int DEFAULT_AVAILABILITY_CACHE_SIZE = 4096;
+
+    // Set when the hotel is backed by a snapshot file and a journal of later changes
+    private Journal journal;
+    private String snapshotFileName;
+    private long journalCompactionSize = 64L << 20;
+
+    // Set when completed stays and old payments are moved to an archive
+    private HistoryArchive archive;
 
     /**
      * Load all the data from the four files.
@@ -29,323 +67,690 @@ public class HotelImpl implements Hotel {
             this.importPaymentsData(paymentsTxtFileName);
     }
 
-    public boolean importRoomsData(String roomsTxtFileName) {
-        try{
-            BufferedReader bufferedReader = new BufferedReader(new FileReader(roomsTxtFileName));
-        
-            rooms = new ArrayList<>();
-            String line;
-
-            while ((line = bufferedReader.readLine()) != null) {
-                String[] room = line.split(",");
-                Room r = new Room(Integer.parseInt(room[0]), room[1], Double.parseDouble(room[2]), room[3], room[4]);
-                rooms.add(r);
+    /**
+     * Load all the data from the four files at the same time.
+     * The bookings and payments files are memory-mapped and parsed in
+     * chunks on the pool; the records are then added in file order, so
+     * the result is the same as with the other constructor.
+     *
+     * @param roomsTxtFileName      the rooms txt file
+     * @param guestsTxtFileName     the guests txt file
+     * @param bookingsTxtFileName   the bookings txt file
+     * @param paymentsTxtFileName   the payments txt file
+     * @param pool                  the pool that parses the files
+     */
+    public HotelImpl(String roomsTxtFileName, String guestsTxtFileName,
+        String bookingsTxtFileName, String paymentsTxtFileName, ForkJoinPool pool) {
+            ForkJoinTask<Loaded<Room>> roomsTask = pool.submit(
+                () -> ParallelLoader.load(roomsTxtFileName, HotelImpl::parseRoom));
+            ForkJoinTask<Loaded<Guest>> guestsTask = pool.submit(
+                () -> ParallelLoader.load(guestsTxtFileName, HotelImpl::parseGuest, pool));
+            ForkJoinTask<Loaded<Booking>> bookingsTask = pool.submit(
+                () -> ParallelLoader.load(bookingsTxtFileName, HotelImpl::parseBooking, pool));
+            ForkJoinTask<Loaded<Payment>> paymentsTask = pool.submit(
+                () -> ParallelLoader.load(paymentsTxtFileName, HotelImpl::parsePayment, pool));
+
+            Loaded<Room> loadedRooms = awaitLoad(roomsTask);
+            if (loadedRooms != null) {
+                setRooms(loadedRooms);
+            }
+            Loaded<Guest> loadedGuests = awaitLoad(guestsTask);
+            if (loadedGuests != null) {
+                setGuests(loadedGuests);
+            }
+            Loaded<Booking> loadedBookings = awaitLoad(bookingsTask);
+            if (loadedBookings != null) {
+                setBookings(loadedBookings);
+            }
+            Loaded<Payment> loadedPayments = awaitLoad(paymentsTask);
+            if (loadedPayments != null) {
+                setPayments(loadedPayments);
             }
+    }
 
-            bufferedReader.close();
-            return true;
+    /**
+     * Load the hotel from a snapshot file, replay the journal of changes made
+     * since that snapshot, and from then on append every change to the journal.
+     * Changes are forced to disk in groups: a change may wait up to
+     * syncIntervalMillis before it is durable. With an interval of 0 a change
+     * that cannot be forced to disk is not made, and the call fails as it
+     * does for a missing record. When the journal grows past the compaction
+     * size it is folded into a new snapshot and emptied.
+     *
+     * @param snapshotFileName   the snapshot file; the hotel starts empty if it does not exist yet
+     * @param journalFileName    the journal file; created if it does not exist yet
+     * @param syncIntervalMillis how long a change may wait to be forced to disk, 0 to force every change
+     */
+    public HotelImpl(String snapshotFileName, String journalFileName, long syncIntervalMillis) {
+        this.snapshotFileName = snapshotFileName;
+        try {
+            long snapshotSequence = 0;
+            if (Files.exists(Paths.get(snapshotFileName))) {
+                HotelSnapshot snapshot = HotelSnapshot.read(snapshotFileName);
+                setSnapshot(snapshot);
+                snapshotSequence = snapshot.getJournalSequence();
+            } else {
+                rooms = new IntHashMap<>();
+                guests = new IntHashMap<>();
+                bookings = new IntHashMap<>();
+                payments = new PaymentColumns();
+            }
+            Journal opened = new Journal(journalFileName, syncIntervalMillis);
+            opened.replay(snapshotSequence, new JournalReplayer());
+            journal = opened;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open " + snapshotFileName + " with journal " + journalFileName, e);
+        }
+    }
 
+    public boolean importRoomsData(String roomsTxtFileName) {
+        long start = metrics.start();
+        try {
+            setRooms(ParallelLoader.load(roomsTxtFileName, HotelImpl::parseRoom));
+            return metrics.record(Operation.IMPORT_ROOMS, start, loadStats.get(loadStats.size() - 1).getRecords(), true);
         } catch (FileNotFoundException e) {
             System.out.println(e.getMessage());
-            return false;
+            return metrics.record(Operation.IMPORT_ROOMS, start, 0, false);
         } catch (IOException e) {
             System.out.println(e.getMessage());
-            return false;
+            return metrics.record(Operation.IMPORT_ROOMS, start, 0, false);
         }
     }
 
     public boolean importBookingsData(String bookingsTxtFileName) {
-        try{
-            BufferedReader bufferedReader = new BufferedReader(new FileReader(bookingsTxtFileName));
-        
-            bookings = new ArrayList<>();
-            String line;
-
-            while ((line = bufferedReader.readLine()) != null) {
-                String[] booking = line.split(",");
-                Booking b = new Booking(Integer.parseInt(booking[0]), Integer.parseInt(booking[1]), Integer.parseInt(booking[2]),
-                                        LocalDate.parse(booking[3]), LocalDate.parse(booking[4]), LocalDate.parse(booking[5]),
-                                        Double.parseDouble(booking[6]));
-                bookings.add(b);
-            }
-
-            bufferedReader.close();
-            return true;
-
+        long start = metrics.start();
+        try {
+            setBookings(ParallelLoader.load(bookingsTxtFileName, HotelImpl::parseBooking));
+            return metrics.record(Operation.IMPORT_BOOKINGS, start, loadStats.get(loadStats.size() - 1).getRecords(), true);
         } catch (FileNotFoundException e) {
             System.out.println(e.getMessage());
-            return false;
+            return metrics.record(Operation.IMPORT_BOOKINGS, start, 0, false);
         } catch (IOException e) {
             System.out.println(e.getMessage());
-            return false;
+            return metrics.record(Operation.IMPORT_BOOKINGS, start, 0, false);
         }
     }
 
     public boolean importGuestsData(String guestsTxtFileName) {
-        try{
-            BufferedReader bufferedReader = new BufferedReader(new FileReader(guestsTxtFileName));
-            
-            guests = new ArrayList<>();
-            String line;
-
-            while ((line = bufferedReader.readLine()) != null) {
-                String[] guest = line.split(",");
-                if (guest.length == 4) {
-                    Guest g = new Guest(guest[1], guest[2], LocalDate.parse(guest[3]));
-                    guests.add(g);
-                } else {
-                    VIPGuest g = new VIPGuest(guest[1], guest[2],
-                                            LocalDate.parse(guest[3]), LocalDate.parse(guest[4]), LocalDate.parse(guest[5]));
-                    guests.add(g);
-                }
-            }
-
-            bufferedReader.close();
-            return true;
-            
+        long start = metrics.start();
+        try {
+            setGuests(ParallelLoader.load(guestsTxtFileName, HotelImpl::parseGuest));
+            return metrics.record(Operation.IMPORT_GUESTS, start, loadStats.get(loadStats.size() - 1).getRecords(), true);
         } catch (FileNotFoundException e) {
             System.out.println(e.getMessage());
-            return false;
+            return metrics.record(Operation.IMPORT_GUESTS, start, 0, false);
         } catch (IOException e) {
             System.out.println(e.getMessage());
-            return false;
+            return metrics.record(Operation.IMPORT_GUESTS, start, 0, false);
         }
     }
 
     public boolean importPaymentsData(String paymentsTxtFileName) {
-        try{
-            BufferedReader bufferedReader = new BufferedReader(new FileReader(paymentsTxtFileName));
-        
-            payments = new ArrayList<>();
-            String line;
-
-            while ((line = bufferedReader.readLine()) != null) {
-                String[] payment = line.split(",");
-                Payment p = new Payment(LocalDate.parse(payment[0]), Integer.parseInt(payment[1]), Double.parseDouble(payment[2]), payment[3]);
-                payments.add(p);
-            }
-
-            bufferedReader.close();
-            return true;
-
+        long start = metrics.start();
+        try {
+            setPayments(ParallelLoader.load(paymentsTxtFileName, HotelImpl::parsePayment));
+            return metrics.record(Operation.IMPORT_PAYMENTS, start, loadStats.get(loadStats.size() - 1).getRecords(), true);
         } catch (FileNotFoundException e) {
             System.out.println(e.getMessage());
-            return false;
+            return metrics.record(Operation.IMPORT_PAYMENTS, start, 0, false);
         } catch (IOException e) {
             System.out.println(e.getMessage());
-            return false;
+            return metrics.record(Operation.IMPORT_PAYMENTS, start, 0, false);
         }
     }
 
-    public void displayAllRooms() {
-        for (int i=0; i<rooms.size(); i++) {
-            System.out.println(rooms.get(i));
+    static Room parseRoom(CsvReader reader) {
+        return new Room(reader.nextInt(), reader.nextString(), reader.nextDouble(), reader.nextString(), reader.nextString());
+    }
+
+    static Guest parseGuest(CsvReader reader) {
+        int guestID = reader.nextInt();
+        String fName = reader.nextString();
+        String lName = reader.nextString();
+        LocalDate dateJoin = reader.nextDate();
+        if (!reader.hasField()) {
+            return new Guest(guestID, fName, lName, dateJoin);
         }
+        return new VIPGuest(guestID, fName, lName, dateJoin, reader.nextDate(), reader.nextDate());
     }
 
-    public void displayAllGuests() {
-        for (int i=0; i<guests.size(); i++) {
-            System.out.println(guests.get(i));
+    static Booking parseBooking(CsvReader reader) {
+        return new Booking(reader.nextInt(), reader.nextInt(), reader.nextInt(),
+                           reader.nextDate(), reader.nextDate(), reader.nextDate(),
+                           reader.nextDouble());
+    }
+
+    static Payment parsePayment(CsvReader reader) {
+        return Payment.of(reader.nextDate(), reader.nextInt(), reader.nextDouble(), reader.nextString());
+    }
+
+    private void setRooms(Loaded<Room> loaded) {
+        rooms = new IntHashMap<>(loaded.getRecords().size());
+        for (Room r : loaded.getRecords()) {
+            rooms.put(r.getRoomNumber(), r);
+        }
+        stats.clearRooms();
+        for (Room r : rooms) {
+            RoomType roomType = stringToRoomType(r.getRoomType());
+            if (roomType != null) {
+                stats.addRoom(roomType, 1);
+            }
         }
+        rebuildCalendar();
+        loadStats.add(loaded.getStats());
     }
 
-    public void displayAllBookings() {
-        for (int i=0; i<bookings.size(); i++) {
-            System.out.println(bookings.get(i));
+    private void setGuests(Loaded<Guest> loaded) {
+        guests = new IntHashMap<>(loaded.getRecords().size());
+        guestNames = new GuestNameIndex();
+        guestIDs.reset(FIRST_GUEST_ID - 1);
+        for (Guest g : loaded.getRecords()) {
+            guests.put(g.getGuestID(), g);
+            guestNames.add(g.getGuestID(), g.getFName(), g.getLName());
+            guestIDs.seen(g.getGuestID());
         }
+        loadStats.add(loaded.getStats());
     }
 
-    public void displayAllPayments() {
-        for (int i=0; i<payments.size(); i++) {
-            System.out.println(payments.get(i));
+    private void setBookings(Loaded<Booking> loaded) {
+        bookings = new IntHashMap<>(loaded.getRecords().size());
+        schedules = new IntHashMap<>();
+        guestBookings = new IntHashMap<>();
+        bookingsByDay = new DayBuckets<>();
+        bookingIDs.reset(0);
+        stats.clearStays();
+        for (Booking b : loaded.getRecords()) {
+            Booking replaced = bookings.put(b.getId(), b);
+            if (replaced != null) {
+                unindexBooking(replaced);
+                countStay(replaced, -1);
+            }
+            indexBooking(b);
+            countStay(b, 1);
+            bookingIDs.seen(b.getId());
         }
+        rebuildCalendar();
+        loadStats.add(loaded.getStats());
     }
 
-    public boolean addRoom(int roomNumber, RoomType roomType, double price, int capacity, String facilities) {
-        for(Room room : rooms) {
-            if (room.getRoomNumber() == roomNumber){
-                return false;
+    /**
+     * Replace all four tables with a snapshot's, keeping its totals of checked-out stays and archived payments
+     */
+    private void setSnapshot(HotelSnapshot snapshot) {
+        setRooms(snapshot.getRooms());
+        setGuests(snapshot.getGuests());
+        setBookings(snapshot.getBookings());
+        setPayments(snapshot.getPayments());
+        // Removed guests and checked-out bookings keep their IDs
+        guestIDs.seen(snapshot.getLastGuestID());
+        bookingIDs.seen(snapshot.getLastBookingID());
+        if (snapshot.getStats() != null) {
+            stats.setTotals(snapshot.getStats());
+        }
+    }
+
+    private void setPayments(Loaded<Payment> loaded) {
+        payments = new PaymentColumns(loaded.getRecords().size());
+        stats.clearRevenue();
+        for (Payment p : loaded.getRecords()) {
+            addPayment(p);
+        }
+        loadStats.add(loaded.getStats());
+    }
+
+    /**
+     * Wait for a file to be parsed on the pool. A file that cannot be read is
+     * left out, as by the import methods; any other failure, e.g. a bad
+     * record, is rethrown, so the constructor fails as the sequential one does.
+     * An interrupted wait fails the constructor with the interrupt kept set,
+     * rather than leaving the table out as if its file were missing.
+     *
+     * @param task  the task parsing the file
+     * @return      the parsed file, or null if it could not be read
+     */
+    private static <T> Loaded<T> awaitLoad(ForkJoinTask<Loaded<T>> task) {
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            // The pool wraps the IOException of a Callable in a RuntimeException, and may wrap that in a copy
+            for (Throwable wrapped = e.getCause(); wrapped != null; wrapped = wrapped.getCause()) {
+                if (wrapped instanceof IOException) {
+                    System.out.println(wrapped.getMessage());
+                    return null;
+                }
+            }
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error)cause;
             }
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while loading the data files", e);
+        }
+    }
+
+    /**
+     * Returns how long each data file took to import, in the order they were imported
+     *
+     * @return  the load time and rate of every import so far
+     */
+    public List<LoadStats> getLoadStats() {
+        return new ArrayList<>(loadStats);
+    }
+
+    /**
+     * Returns the revenue and occupancy totals, kept up to date as the hotel changes
+     *
+     * @return  the totals of this hotel
+     */
+    public HotelStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Start counting calls and measuring latencies of the hotel operations.
+     * Until then the operations are not measured and pay next to nothing for it.
+     *
+     * @return  the metrics, the same ones on every call
+     */
+    public HotelMetrics enableMetrics() {
+        if (!metrics.isEnabled()) {
+            metrics = new HotelMetrics();
+        }
+        return metrics;
+    }
+
+    /**
+     * Returns the operation metrics, disabled unless enableMetrics was called
+     */
+    public HotelMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Choose how bookOneRoom picks one of the free rooms; RoomAssignment.BEST_FIT by default
+     *
+     * @param roomAssignment    the strategy
+     */
+    public void setRoomAssignment(RoomAssignment roomAssignment) {
+        if (roomAssignment == null) {
+            throw new IllegalArgumentException("A room assignment is needed");
+        }
+        this.roomAssignment = roomAssignment;
+    }
+
+    public RoomAssignment getRoomAssignment() {
+        return roomAssignment;
+    }
+
+    /**
+     * Returns the cache of availableRooms and isAvailable answers, with its hit and miss counts
+     */
+    public AvailabilityCache getAvailabilityCache() {
+        return availability;
+    }
+
+    /**
+     * Replace the availability cache with an empty one of another size
+     *
+     * @param entries   the most answers kept, at least 1
+     */
+    public void setAvailabilityCacheSize(int entries) {
+        availability = new AvailabilityCache(entries);
+    }
+
+    public void displayAllRooms() {
+        RecordWriter.display(out -> forEachRoom(out));
+    }
+
+    public void displayAllGuests() {
+        RecordWriter.display(out -> forEachGuest(out));
+    }
+
+    public void displayAllBookings() {
+        RecordWriter.display(out -> forEachBooking(out));
+    }
+
+    public void displayAllPayments() {
+        RecordWriter.display(out -> forEachPayment(out));
+    }
+
+    public void forEachRoom(Consumer<? super Room> action) {
+        rooms.forEach(action);
+    }
+
+    public void forEachGuest(Consumer<? super Guest> action) {
+        guests.forEach(action);
+    }
+
+    public void forEachBooking(Consumer<? super Booking> action) {
+        bookings.forEach(action);
+    }
+
+    public void forEachPayment(Consumer<? super Payment> action) {
+        payments.forEach(action);
+    }
+
+    /**
+     * Returns the rooms as a lazy stream, in the order forEachRoom visits them.
+     * Do not change the hotel before the stream is used up.
+     */
+    public Stream<Room> rooms() {
+        return StreamSupport.stream(rooms.spliterator(), false);
+    }
+
+    public Stream<Guest> guests() {
+        return StreamSupport.stream(guests.spliterator(), false);
+    }
+
+    public Stream<Booking> bookings() {
+        return StreamSupport.stream(bookings.spliterator(), false);
+    }
+
+    public Stream<Payment> payments() {
+        return StreamSupport.stream(payments.spliterator(), false);
+    }
+
+    public boolean addRoom(int roomNumber, RoomType roomType, double price, int capacity, String facilities) {
+        if (rooms.containsKey(roomNumber)) {
+            return false;
         }
         Room room = new Room(roomNumber, roomTypeToString(roomType), price, Integer.toString(capacity), facilities);
-        rooms.add(room);
+        if (!log(journal -> journal.logAddRoom(room))) {
+            return false;
+        }
+        applyAddRoom(room);
+        compactJournalIfNeeded();
         return true;
     }
 
     public boolean removeRoom(int roomNumber) {
-        for (Room room : rooms) {
-            if (room.getRoomNumber() == roomNumber) {
-                for (Booking booking : bookings) {
-                    if (booking.getRoomNumber() == roomNumber) {
-                        return false;
-                    }
-                }
-                rooms.remove(room);
-                return true;
-            }
+        Room room = rooms.get(roomNumber);
+        if (room == null) {
+            return false;
         }
-        return false;
+        RoomSchedule schedule = schedules.get(roomNumber);
+        if (schedule != null && !schedule.isEmpty()) {
+            return false;
+        }
+        if (!log(journal -> journal.logRemoveRoom(roomNumber))) {
+            return false;
+        }
+        applyRemoveRoom(room);
+        compactJournalIfNeeded();
+        return true;
     }
 
     public boolean addGuest(String fName, String lName, LocalDate dateJoin) {
-        Guest guest = new Guest(fName, lName, dateJoin);
-        guests.add(guest);
-        return true;
+        return addNewGuest(fName, lName, dateJoin) >= 0;
     }
 
     public boolean addGuest(String fName, String lName, LocalDate dateJoin,
         LocalDate VIPstartDate, LocalDate VIPexpiryDate) {
+        return addNewGuest(fName, lName, dateJoin, VIPstartDate, VIPexpiryDate) >= 0;
+    }
+
+    /**
+     * Add a guest like addGuest
+     *
+     * @return  the ID the guest was given, -1 if the guest could not be added
+     */
+    int addNewGuest(String fName, String lName, LocalDate dateJoin) {
+        Guest guest = new Guest(guestIDs.next(), fName, lName, dateJoin);
+        if (!log(journal -> journal.logAddGuest(guest))) {
+            return -1;
+        }
+        applyAddGuest(guest);
+        compactJournalIfNeeded();
+        return guest.getGuestID();
+    }
+
+    /**
+     * Add a VIP guest like addGuest
+     *
+     * @return  the ID the guest was given, -1 if the guest could not be added
+     */
+    int addNewGuest(String fName, String lName, LocalDate dateJoin,
+        LocalDate VIPstartDate, LocalDate VIPexpiryDate) {
 
         // assert if VIPexpiryDate is one year after VIPstartdate
         assert((VIPexpiryDate.getYear() - VIPstartDate.getYear() == 1) && (VIPexpiryDate.getMonth() == VIPstartDate.getMonth())
          && (VIPexpiryDate.getDayOfMonth() == VIPstartDate.getDayOfMonth())) : "VIP membership must be 1 year.";
 
-        VIPGuest guest = new VIPGuest(fName, lName, dateJoin, VIPstartDate, VIPexpiryDate);
-        guests.add(guest);
-        Payment payment = new Payment(VIPstartDate, guest.getGuestID(), 50.00, "VIPmembership");
-        payments.add(payment);
-        return true;
+        VIPGuest guest = new VIPGuest(guestIDs.next(), fName, lName, dateJoin, VIPstartDate, VIPexpiryDate);
+        if (!log(journal -> journal.logAddGuest(guest))) {
+            return -1;
+        }
+        applyAddGuest(guest);
+        compactJournalIfNeeded();
+        return guest.getGuestID();
     }
 
     public boolean removeGuest(int guestID) {
-        for (Guest guest : guests) {
-            if (guest.getGuestID() == guestID) {
-                // Check to see if the guest still has booking on any future days
-                boolean noFutureBooking = true;
-                for (Booking booking : bookings) {
-                    if (booking.getGuestID() == guestID) {
-                        if (booking.getCheckinDate().isAfter(LocalDate.now())) {
-                            noFutureBooking = false;
-                            break;
-                        }
-                    }
-                }
-                if (noFutureBooking) {
-                    guests.remove(guest);
-                    return true;
-                }
-                break;
-            }
+        Guest guest = guests.get(guestID);
+        if (guest == null) {
+            return false;
         }
-        return false;
+        ArrayList<Booking> ownBookings = guestBookings.get(guestID);
+        if (ownBookings != null && hasFutureBooking(ownBookings, LocalDate.now())) {
+            return false;
+        }
+        if (!log(journal -> journal.logRemoveGuest(guestID))) {
+            return false;
+        }
+        applyRemoveGuest(guest);
+        compactJournalIfNeeded();
+        return true;
     }
 
     public boolean isAvailable(int roomNumber, LocalDate checkin, LocalDate checkout) {
         if (!checkin.isBefore(checkout)) {
             throw new IllegalArgumentException("Check-out date must be before check-in date");
         }
-        for (Booking booking : bookings) {
-            if (booking.getRoomNumber() == roomNumber){
-
-                //Checks to see if the room has already been booked
-                LocalDate max = (booking.getCheckouDate().isAfter(checkout)) ? booking.getCheckouDate() : checkout;
-                LocalDate min = (booking.getCheckinDate().isBefore(checkin)) ? booking.getCheckinDate() : checkin;
-                long min2max = ChronoUnit.DAYS.between(min, max);
-                long booked = ChronoUnit.DAYS.between(booking.getCheckinDate(), booking.getCheckouDate());
-                long stay = ChronoUnit.DAYS.between(checkin, checkout);
-                if (min2max - (booked + stay) < 0) {
-                    return false;
-                }
-            }
+        long start = metrics.start();
+        Boolean cached = availability.getIsFree(roomNumber, checkin.toEpochDay(), checkout.toEpochDay());
+        if (cached != null) {
+            metrics.record(Operation.IS_AVAILABLE, start, 0, true);
+            return cached;
         }
-        return true;
+        // Only this room's own bookings are looked at
+        RoomSchedule schedule = schedules.get(roomNumber);
+        boolean free = schedule == null || schedule.isFree(checkin.toEpochDay(), checkout.toEpochDay());
+        availability.putIsFree(roomNumber, checkin.toEpochDay(), checkout.toEpochDay(), free);
+        metrics.record(Operation.IS_AVAILABLE, start, 1, true);
+        return free;
     }
 
     public int[] availableRooms(RoomType roomType, LocalDate checkin, LocalDate checkout) {
-        ArrayList<Integer> roomNumbers = new ArrayList<>();
-        String roomTypeStr = roomTypeToString(roomType);
-        for (Room room : rooms) {
-            if (room.getRoomType().equals(roomTypeStr)) {
-                roomNumbers.add(room.getRoomNumber());
-            }
+        if (!checkin.isBefore(checkout)) {
+            throw new IllegalArgumentException("Check-out date must be before check-in date");
         }
-        roomNumbers.removeIf(x -> !(isAvailable(x, checkin, checkout)));
-        return roomNumbers.stream().mapToInt(i -> i).toArray();
+        long start = metrics.start();
+        int[] free = availability.getFreeRooms(roomType, checkin.toEpochDay(), checkout.toEpochDay());
+        if (free != null) {
+            metrics.record(Operation.AVAILABLE_ROOMS, start, 0, true);
+            return free.clone();
+        }
+        free = calendar.freeRooms(roomType, checkin.toEpochDay(), checkout.toEpochDay());
+        availability.putFreeRooms(roomType, checkin.toEpochDay(), checkout.toEpochDay(), free);
+        metrics.record(Operation.AVAILABLE_ROOMS, start, calendar.roomCount(roomType), true);
+        return free.clone();
     }
 
     public int bookOneRoom(int guestID, RoomType roomType, LocalDate checkin, LocalDate checkout) {
-        boolean guestExists = false;
-        boolean isVIP = false;
-        for (Guest guest : guests) {
-            if (guest.getGuestID() == guestID) {
-                guestExists = true;
-                if (guest instanceof VIPGuest) {
-                    VIPGuest vGuest = (VIPGuest)guest;
-                    if (isInRangeOf(LocalDate.now(), vGuest.getVIPstartDate(), vGuest.getVIPexpiryDate())) {
-                        isVIP = true;
-                    }
-                }
-                break;
-            }
-        }
-        if (!guestExists) {
+        long start = metrics.start();
+        Guest guest = guests.get(guestID);
+        if (guest == null) {
             throw new IllegalArgumentException("Invalid guest ID");
         }
-        int[] roomsAvailable = availableRooms(roomType, checkin, checkout);
+        if (!checkin.isBefore(checkout)) {
+            throw new IllegalArgumentException("Check-out date must be before check-in date");
+        }
+        boolean isVIP = isActiveVIP(guest, LocalDate.now());
+        int[] roomsAvailable = availability.getFreeRooms(roomType, checkin.toEpochDay(), checkout.toEpochDay());
+        long scanned = 0;
+        if (roomsAvailable == null) {
+            roomsAvailable = calendar.freeRooms(roomType, checkin.toEpochDay(), checkout.toEpochDay());
+            scanned = calendar.roomCount(roomType);
+        }
         if (roomsAvailable.length == 0) {
+            availability.putFreeRooms(roomType, checkin.toEpochDay(), checkout.toEpochDay(), roomsAvailable);
+            metrics.record(Operation.BOOK_ONE_ROOM, start, scanned, false);
             return -1;
         }
-        int roomNo = roomsAvailable[new Random().nextInt(roomsAvailable.length)];
-        for (Room room : rooms) {
-            if (room.getRoomNumber() == roomNo) {
-                int bookingID = bookings.get(bookings.size()-1).getId() + 1;
-
-                // Calculate the price of the room for the guest
-                double totalAmount = room.getPrice() * ChronoUnit.DAYS.between(checkin, checkout);
-                if (isVIP) {totalAmount = 0.9 * totalAmount;}
-
-                Booking booking = new Booking(bookingID, guestID, roomNo, LocalDate.now(), checkin, checkout, totalAmount);
-                bookings.add(booking);
-                Payment payment = new Payment(LocalDate.now(), guestID, totalAmount, "booking");
-                payments.add(payment);
-                break;
-            }
+        int chosen = roomAssignment.choose(roomsAvailable, checkin.toEpochDay(), checkout.toEpochDay(), gaps);
+        if (chosen < 0 || chosen >= roomsAvailable.length) {
+            throw new IllegalStateException("The room assignment chose no free room");
         }
+        int roomNo = roomsAvailable[chosen];
+        Room room = rooms.get(roomNo);
+        int bookingID = bookingIDs.next();
+
+        double totalAmount = bookingAmount(room, checkin, checkout, isVIP);
+
+        Booking booking = new Booking(bookingID, guestID, roomNo, LocalDate.now(), checkin, checkout, totalAmount);
+        if (!log(journal -> journal.logBooking(booking))) {
+            metrics.record(Operation.BOOK_ONE_ROOM, start, scanned, false);
+            return -1;
+        }
+        applyBooking(booking);
+        compactJournalIfNeeded();
+        metrics.record(Operation.BOOK_ONE_ROOM, start, scanned, true);
         return roomNo;
     }
 
-    public boolean checkOut(int bookingID, LocalDate actualCheckoutDate) {
-        for (Booking booking : bookings) {
-            if (booking.getId() == bookingID){
-                if (actualCheckoutDate.isAfter(booking.getCheckouDate())||(actualCheckoutDate.isBefore(booking.getCheckinDate()))) {
-                    return false;
+    /**
+     * Books several rooms for the same dates at once, e.g. for a group or a tour.
+     * Availability is looked up once per room type, and either every room is
+     * booked or none is. Rooms of one type are given out in the order the
+     * rooms were added, so a group gets rooms close to each other.
+     *
+     * @param guestIDs  the guest each room is booked for
+     * @param roomTypes the type of each room, in the same order as guestIDs
+     * @param checkin   the check-in date
+     * @param checkout  the check-out date
+     * @return          the booked room numbers in request order, or an empty array
+     *                  if there are not enough free rooms of some type
+     */
+    public int[] bookRooms(int[] guestIDs, RoomType[] roomTypes, LocalDate checkin, LocalDate checkout) {
+        long start = metrics.start();
+        if (guestIDs.length != roomTypes.length) {
+            throw new IllegalArgumentException("Every room needs a guest");
+        }
+        if (!checkin.isBefore(checkout)) {
+            throw new IllegalArgumentException("Check-out date must be before check-in date");
+        }
+        Guest[] bookers = new Guest[guestIDs.length];
+        for (int i = 0; i < guestIDs.length; i++) {
+            bookers[i] = guests.get(guestIDs[i]);
+            if (bookers[i] == null) {
+                throw new IllegalArgumentException("Invalid guest ID");
+            }
+        }
+        // Check every room type before booking anything
+        int[] needed = new int[RoomType.values().length];
+        for (RoomType roomType : roomTypes) {
+            needed[roomType.ordinal()]++;
+        }
+        int[][] free = new int[needed.length][];
+        long scanned = 0;
+        for (RoomType roomType : RoomType.values()) {
+            if (needed[roomType.ordinal()] > 0) {
+                free[roomType.ordinal()] = calendar.freeRooms(roomType, checkin.toEpochDay(), checkout.toEpochDay());
+                scanned += calendar.roomCount(roomType);
+                if (free[roomType.ordinal()].length < needed[roomType.ordinal()]) {
+                    metrics.record(Operation.BOOK_ROOMS, start, scanned, false);
+                    return new int[0];
                 }
-                bookings.remove(booking);
-                return true;
             }
         }
-        System.out.println("Booking not found");
-        return false;
+
+        int[] taken = new int[needed.length];
+        int[] roomNumbers = new int[roomTypes.length];
+        Booking[] group = new Booking[roomTypes.length];
+        LocalDate today = LocalDate.now();
+        for (int i = 0; i < roomTypes.length; i++) {
+            int type = roomTypes[i].ordinal();
+            roomNumbers[i] = free[type][taken[type]++];
+            double totalAmount = bookingAmount(rooms.get(roomNumbers[i]), checkin, checkout, isActiveVIP(bookers[i], today));
+            group[i] = new Booking(bookingIDs.next(), guestIDs[i], roomNumbers[i], today, checkin, checkout, totalAmount);
+        }
+        // One journal record, so a crash never keeps part of the group
+        if (!log(journal -> journal.logBookings(group))) {
+            metrics.record(Operation.BOOK_ROOMS, start, scanned, false);
+            return new int[0];
+        }
+        for (Booking booking : group) {
+            applyBooking(booking);
+        }
+        compactJournalIfNeeded();
+        metrics.record(Operation.BOOK_ROOMS, start, scanned, true);
+        return roomNumbers;
     }
 
-    public boolean cancelBooking(int bookingID) {
-        for (Booking booking : bookings) {
-            if (booking.getId() == bookingID) {
-                bookings.remove(booking);
-
-                // See if the guests can gather refunds
-                LocalDate today = LocalDate.now();
-                LocalDate checkinDate = booking.getCheckinDate();
-                long days = ChronoUnit.DAYS.between(today, checkinDate);
-                if (days >= 2) {
-                    Payment payment = new Payment(today, booking.getGuestID(), -booking.getTotalAmount(), "refund");
-                    payments.add(payment);
-                }
-                return true;
+    public boolean checkOut(int bookingID, LocalDate actualCheckoutDate) {
+        long start = metrics.start();
+        Booking booking = bookings.get(bookingID);
+        if (booking == null) {
+            System.out.println("Booking not found");
+            return metrics.record(Operation.CHECK_OUT, start, 0, false);
+        }
+        if (actualCheckoutDate.isAfter(booking.getCheckouDate())||(actualCheckoutDate.isBefore(booking.getCheckinDate()))) {
+            return metrics.record(Operation.CHECK_OUT, start, 1, false);
+        }
+        if (!log(journal -> journal.logCheckOut(bookingID, actualCheckoutDate))) {
+            return metrics.record(Operation.CHECK_OUT, start, 1, false);
+        }
+        // Archived only once the check-out is logged, so a booking that stays live is never archived too
+        if (archive != null) {
+            try {
+                archive.addBooking(booking);
+            } catch (UncheckedIOException e) {
+                System.out.println(e.getMessage());
             }
         }
-        return false;
+        applyCheckOut(booking, actualCheckoutDate);
+        compactJournalIfNeeded();
+        return metrics.record(Operation.CHECK_OUT, start, 1, true);
     }
 
-    public int[] searchGuest(String firstName, String lastName) {
-        ArrayList<Integer> searchedGuests = new ArrayList<>();
-        for (Guest guest : guests) {
-            if ((guest.getFName().toLowerCase().equals(firstName.toLowerCase())) 
-            && (guest.getLName().toLowerCase().equals(lastName.toLowerCase()))){
-                searchedGuests.add(guest.getGuestID());
-            }
+    public boolean cancelBooking(int bookingID) {
+        long start = metrics.start();
+        Booking booking = bookings.get(bookingID);
+        if (booking == null) {
+            return metrics.record(Operation.CANCEL_BOOKING, start, 0, false);
+        }
+
+        LocalDate refundDate = refundDate(booking, LocalDate.now());
+        if (!log(journal -> journal.logCancel(bookingID, refundDate))) {
+            return metrics.record(Operation.CANCEL_BOOKING, start, 1, false);
         }
-        return searchedGuests.stream().mapToInt(i -> i).toArray();
+        applyCancel(booking, refundDate);
+        compactJournalIfNeeded();
+        return metrics.record(Operation.CANCEL_BOOKING, start, 1, true);
+    }
+
+    public int[] searchGuest(String firstName, String lastName) {
+        long start = metrics.start();
+        int[] found = guestNames.find(firstName, lastName);
+        metrics.record(Operation.SEARCH_GUEST, start, found.length, found.length > 0);
+        return found;
+    }
+
+    /**
+     * Searches for guests whose names start with the given prefixes, ignoring case.
+     * Meant for type-ahead search, so either prefix may be empty.
+     *
+     * @param firstPrefix   the start of the guest first name
+     * @param lastPrefix    the start of the guest last name
+     * @return              an array of matching guest IDs, ordered by last name then first name
+     */
+    public int[] searchGuestByPrefix(String firstPrefix, String lastPrefix) {
+        return guestNames.findByPrefix(firstPrefix, lastPrefix);
     }
 
     /** 
@@ -354,48 +759,90 @@ public class HotelImpl implements Hotel {
      */
     public void searchAndDisplay(String firstName, String lastName){
         for (int guestID : searchGuest(firstName, lastName)) {
-            for (Guest guest : guests) {
-                if (guest.getGuestID() == guestID) {
-                    System.out.println(guest.getFName() + " " + guest.getLName());
-                    break;
-                }
-            }
+            Guest guest = guests.get(guestID);
+            System.out.println(guest.getFName() + " " + guest.getLName());
             displayGuestBooking(guestID);
         }
     }
 
     public void displayGuestBooking(int guestID) {
-        for (Booking booking : bookings) {
-            if (booking.getGuestID() == guestID) {
-                System.out.println(booking);
-            }
-        }
+        RecordWriter.display(out -> forEachGuestBooking(guestID, out));
     }
 
     public void displayBookingsOn(LocalDate thisDate) {
-        for (Booking booking: bookings){
-            if (isInRangeOf(thisDate, booking.getCheckinDate(), booking.getCheckouDate())) {
-                System.out.println(booking);
-            }
-        }
+        RecordWriter.display(out -> forEachBookingOn(thisDate, out));
     }
 
     public void displayPaymentsOn(LocalDate thisDate) {
-        for (Payment payment : payments) {
-            if (payment.getDate().isEqual(thisDate)) {
-                System.out.println(payment);
-            }
+        RecordWriter.display(out -> forEachPaymentOn(thisDate, out));
+    }
+
+    public void forEachGuestBooking(int guestID, Consumer<? super Booking> action) {
+        ArrayList<Booking> ownBookings = guestBookings.get(guestID);
+        if (ownBookings != null) {
+            ownBookings.forEach(action);
         }
     }
 
+    public void forEachBookingOn(LocalDate thisDate, Consumer<? super Booking> action) {
+        bookingsByDay.get(thisDate.toEpochDay()).forEach(action);
+    }
+
+    public void forEachPaymentOn(LocalDate thisDate, Consumer<? super Payment> action) {
+        payments.forEachOn(thisDate.toEpochDay(), action);
+    }
+
     public boolean saveRoomsData(String roomsTxtFileName) {
+        long start = metrics.start();
+        return metrics.record(Operation.SAVE_ROOMS, start, rooms.size(), saveRecords(roomsTxtFileName, rooms));
+    }
+
+    public boolean saveGuestsData(String guestsTxtFileName) {
+        long start = metrics.start();
+        return metrics.record(Operation.SAVE_GUESTS, start, guests.size(), saveRecords(guestsTxtFileName, guests));
+    }
+
+    public boolean saveBookingsData(String bookingsTxtFileName) {
+        long start = metrics.start();
+        return metrics.record(Operation.SAVE_BOOKINGS, start, bookings.size(), saveRecords(bookingsTxtFileName, bookings));
+    }
+
+    public boolean savePaymentsData(String paymentsTxtFileName) {
+        long start = metrics.start();
+        return metrics.record(Operation.SAVE_PAYMENTS, start, payments.size(), saveRecords(paymentsTxtFileName, payments));
+    }
+
+    /**
+     * Write records to a text file, one record per line in its toString() form
+     *
+     * @param  txtFileName  the text file
+     * @param  records      the records to write
+     * @return true if saving data successfully, otherwise false
+     */
+    static boolean saveRecords(String txtFileName, Iterable<?> records) {
+        try (FileChannel channel = FileChannel.open(Paths.get(txtFileName),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            RecordWriter out = new RecordWriter(channel);
+            records.forEach(out);
+            out.flush();
+            return true;
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Save all four tables in one binary snapshot file. Dates are stored as
+     * epoch days and amounts as whole cents.
+     *
+     * @param  snapshotFileName  the snapshot file
+     * @return true if saving data successfully, otherwise false
+     */
+    public boolean saveSnapshot(String snapshotFileName) {
         try {
-            BufferedWriter bufferedWriter = new BufferedWriter(new FileWriter(roomsTxtFileName));
-            for (Room room : rooms) {
-                bufferedWriter.write(room.toString());
-                bufferedWriter.newLine();
-            }
-            bufferedWriter.close();
+            HotelSnapshot.write(snapshotFileName, rooms, guests, bookings, payments, stats,
+                guestIDs.getLastID(), bookingIDs.getLastID(), journal == null ? 0 : journal.getSequence());
             return true;
         } catch (IOException e) {
             System.out.println(e.getMessage());
@@ -403,14 +850,17 @@ public class HotelImpl implements Hotel {
         }
     }
 
-    public boolean saveGuestsData(String guestsTxtFileName) {
+    /**
+     * Load all four tables from a binary snapshot file written by saveSnapshot,
+     * replacing the current ones. Together with the save*Data methods this
+     * converts a snapshot back to the text files.
+     *
+     * @param  snapshotFileName  the snapshot file
+     * @return true if loading data successfully, otherwise false
+     */
+    public boolean importSnapshot(String snapshotFileName) {
         try {
-            BufferedWriter bufferedWriter = new BufferedWriter(new FileWriter(guestsTxtFileName));
-            for (Guest guest : guests) {
-                bufferedWriter.write(guest.toString());
-                bufferedWriter.newLine();
-            }
-            bufferedWriter.close();
+            setSnapshot(HotelSnapshot.read(snapshotFileName));
             return true;
         } catch (IOException e) {
             System.out.println(e.getMessage());
@@ -418,14 +868,24 @@ public class HotelImpl implements Hotel {
         }
     }
 
-    public boolean saveBookingsData(String bookingsTxtFileName) {
+    /**
+     * Save the current state as the snapshot file and empty the journal.
+     * Only available on a hotel opened with a snapshot and journal.
+     *
+     * @return true if the checkpoint was written, otherwise false
+     */
+    public boolean checkpoint() {
+        if (journal == null) {
+            throw new IllegalStateException("This hotel has no journal");
+        }
         try {
-            BufferedWriter bufferedWriter = new BufferedWriter(new FileWriter(bookingsTxtFileName));
-            for (Booking booking : bookings) {
-                bufferedWriter.write(booking.toString());
-                bufferedWriter.newLine();
-            }
-            bufferedWriter.close();
+            // Write aside and rename, so a crash leaves either the old or the new snapshot
+            String tempFileName = snapshotFileName + ".tmp";
+            HotelSnapshot.write(tempFileName, rooms, guests, bookings, payments, stats,
+                guestIDs.getLastID(), bookingIDs.getLastID(), journal.getSequence());
+            Files.move(Paths.get(tempFileName), Paths.get(snapshotFileName),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            journal.truncate();
             return true;
         } catch (IOException e) {
             System.out.println(e.getMessage());
@@ -433,14 +893,46 @@ public class HotelImpl implements Hotel {
         }
     }
 
-    public boolean savePaymentsData(String paymentsTxtFileName){
+    /**
+     * Set the journal size at which the journal is folded into a new snapshot
+     *
+     * @param bytes the journal size in bytes
+     */
+    public void setJournalCompactionSize(long bytes) {
+        journalCompactionSize = bytes;
+    }
+
+    /**
+     * Force all journalled changes to disk and close the journal.
+     * The hotel can still be read afterwards but changes are no longer logged.
+     */
+    public void closeJournal() {
+        if (journal == null) {
+            return;
+        }
         try {
-            BufferedWriter bufferedWriter = new BufferedWriter(new FileWriter(paymentsTxtFileName));
-            for (Payment payment : payments) {
-                bufferedWriter.write(payment.toString());
-                bufferedWriter.newLine();
-            }
-            bufferedWriter.close();
+            journal.close();
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+        }
+        journal = null;
+    }
+
+    /**
+     * Open an archive for the hotel history, creating it if needed. From
+     * then on checkOut moves the stay to the archive instead of dropping it.
+     * IDs of archived stays and guests are not handed out again.
+     *
+     * @param  directoryName  the archive directory
+     * @return true if the archive was opened, otherwise false
+     */
+    public boolean openArchive(String directoryName) {
+        try {
+            HistoryArchive opened = new HistoryArchive(directoryName);
+            guestIDs.seen(opened.getLastGuestID());
+            bookingIDs.seen(opened.getLastBookingID());
+            closeArchive();
+            archive = opened;
             return true;
         } catch (IOException e) {
             System.out.println(e.getMessage());
@@ -448,10 +940,209 @@ public class HotelImpl implements Hotel {
         }
     }
 
+    /**
+     * Force the archive to disk and close it. Checked-out stays are dropped again afterwards.
+     */
+    public void closeArchive() {
+        if (archive == null) {
+            return;
+        }
+        try {
+            archive.close();
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+        }
+        archive = null;
+    }
+
+    /**
+     * Move the payments made before a day to the archive. On a hotel with a
+     * journal a checkpoint follows, so the moved payments also leave the snapshot.
+     * The archive remembers the day, so repeating the call after it failed or
+     * after a crash archives no payment twice; payments dated before a day
+     * already archived count as archived.
+     *
+     * @param  date  the first day whose payments stay in memory
+     * @return true if the payments were moved, otherwise false
+     */
+    public boolean archivePaymentsBefore(LocalDate date) {
+        if (archive == null) {
+            throw new IllegalStateException("This hotel has no archive");
+        }
+        long cutoff = date.toEpochDay();
+        try {
+            archive.addPaymentsBefore(cutoff, payments);
+            archive.force();
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println(e.getMessage());
+            return false;
+        }
+        payments = payments.from(cutoff);
+        return journal == null || checkpoint();
+    }
+
+    /**
+     * Returns the archive of completed stays and old payments, or null if none is open
+     */
+    HistoryArchive getArchive() {
+        return archive;
+    }
+
+    /**
+     * Journal a change before it is applied, if the hotel has a journal
+     *
+     * @return false, after printing why, if the change cannot be made durable and must not be applied
+     */
+    private boolean log(JournalEntry entry) {
+        if (journal == null) {
+            return true;
+        }
+        try {
+            entry.logTo(journal);
+            return true;
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+            return false;
+        }
+    }
+
+    private interface JournalEntry {
+        void logTo(Journal journal) throws IOException;
+    }
+
+    private void compactJournalIfNeeded() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            if (journal.size() >= journalCompactionSize) {
+                checkpoint();
+            }
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    private void applyAddRoom(Room room) {
+        rooms.put(room.getRoomNumber(), room);
+        RoomType roomType = stringToRoomType(room.getRoomType());
+        availability.invalidateRoom(room.getRoomNumber(), roomType);
+        if (roomType != null) {
+            calendar.addRoom(room.getRoomNumber(), roomType, scheduleOf(room.getRoomNumber()));
+            stats.addRoom(roomType, 1);
+        }
+    }
+
+    private void applyRemoveRoom(Room room) {
+        RoomType roomType = stringToRoomType(room.getRoomType());
+        availability.invalidateRoom(room.getRoomNumber(), roomType);
+        if (roomType != null) {
+            calendar.removeRoom(room.getRoomNumber(), roomType);
+            stats.addRoom(roomType, -1);
+        }
+        schedules.remove(room.getRoomNumber());
+        rooms.remove(room.getRoomNumber());
+    }
+
+    private void applyAddGuest(Guest guest) {
+        guests.put(guest.getGuestID(), guest);
+        guestIDs.seen(guest.getGuestID());
+        guestNames.add(guest.getGuestID(), guest.getFName(), guest.getLName());
+        if (guest instanceof VIPGuest) {
+            Payment payment = Payment.of(((VIPGuest)guest).getVIPstartDate(), guest.getGuestID(), 50.00, "VIPmembership");
+            addPayment(payment);
+        }
+    }
+
+    private void applyRemoveGuest(Guest guest) {
+        guests.remove(guest.getGuestID());
+        guestNames.remove(guest.getGuestID(), guest.getFName(), guest.getLName());
+    }
+
+    private void applyBooking(Booking booking) {
+        bookings.put(booking.getId(), booking);
+        bookingIDs.seen(booking.getId());
+        indexBooking(booking);
+        countStay(booking, 1);
+        Payment payment = Payment.of(booking.getBookingDate(), booking.getGuestID(), booking.getTotalAmount(), "booking");
+        addPayment(payment);
+    }
+
+    private void applyCheckOut(Booking booking, LocalDate actualCheckoutDate) {
+        bookings.remove(booking.getId());
+        unindexBooking(booking);
+        // The nights left after an early check-out are no longer sold
+        countStay(booking, actualCheckoutDate.toEpochDay(), booking.getCheckoutDay(), -1);
+    }
+
+    private void applyCancel(Booking booking, LocalDate refundDate) {
+        bookings.remove(booking.getId());
+        unindexBooking(booking);
+        countStay(booking, -1);
+        if (refundDate != null) {
+            Payment payment = Payment.of(refundDate, booking.getGuestID(), -booking.getTotalAmount(), "refund");
+            addPayment(payment);
+        }
+    }
+
+    /**
+     * Answers the room assignment from the room schedules
+     */
+    private class ScheduleGaps implements RoomAssignment.Gaps {
+        public int freeNightsBefore(int roomNumber, long day, int limit) {
+            RoomSchedule schedule = schedules.get(roomNumber);
+            return schedule == null ? limit : schedule.freeNightsBefore(day, limit);
+        }
+
+        public int freeNightsAfter(int roomNumber, long day, int limit) {
+            RoomSchedule schedule = schedules.get(roomNumber);
+            return schedule == null ? limit : schedule.freeNightsAfter(day, limit);
+        }
+    }
+
+    /**
+     * Applies journal records through the same steps as the live operations
+     */
+    private class JournalReplayer implements Journal.Replayer {
+        public void addRoom(Room room) {applyAddRoom(room);}
+
+        public void removeRoom(int roomNumber) {
+            Room room = rooms.get(roomNumber);
+            if (room != null) {
+                applyRemoveRoom(room);
+            }
+        }
+
+        public void addGuest(Guest guest) {applyAddGuest(guest);}
+
+        public void removeGuest(int guestID) {
+            Guest guest = guests.get(guestID);
+            if (guest != null) {
+                applyRemoveGuest(guest);
+            }
+        }
+
+        public void book(Booking booking) {applyBooking(booking);}
+
+        public void checkOut(int bookingID, LocalDate actualCheckoutDate) {
+            Booking booking = bookings.get(bookingID);
+            if (booking != null) {
+                applyCheckOut(booking, actualCheckoutDate);
+            }
+        }
+
+        public void cancel(int bookingID, LocalDate refundDate) {
+            Booking booking = bookings.get(bookingID);
+            if (booking != null) {
+                applyCancel(booking, refundDate);
+            }
+        }
+    }
+
     /**
      * Represents a Room object
      */
-    static class Room {
+    public static class Room {
         private int roomNumber;
         private String roomType;
         private double price;
@@ -461,6 +1152,8 @@ public class HotelImpl implements Hotel {
         public int getRoomNumber() {return roomNumber;}
         public String getRoomType() {return roomType;}
         public double getPrice() {return price;}
+        public String getCapacity() {return capacity;}
+        public String getFacilities() {return facilities;}
 
         Room(int roomNumber, String roomType, double price, String capacity, String facilities) {
             this.roomNumber = roomNumber;
@@ -478,23 +1171,22 @@ public class HotelImpl implements Hotel {
     /**
      * Represents a Guest object
      */
-    static class Guest {
+    public static class Guest {
         private int guestID;
         private String fName;
         private String lName;
         private LocalDate dateJoin;
-        private static int numberOfGuests = 0;
 
         public int getGuestID() {return guestID;}
         public String getFName() {return fName;}
         public String getLName() {return lName;}
+        public LocalDate getDateJoin() {return dateJoin;}
 
-        Guest(String fName, String lName, LocalDate dateJoin){
+        Guest(int guestID, String fName, String lName, LocalDate dateJoin){
             this.fName = fName;
             this.lName = lName;
             this.dateJoin = dateJoin;
-            numberOfGuests += 1;
-            guestID = 10000 + numberOfGuests;
+            this.guestID = guestID;
         }
 
         public String toString() {
@@ -506,15 +1198,15 @@ public class HotelImpl implements Hotel {
     /**
      * Represents a VIPGuest object
     */
-    static class VIPGuest extends Guest {
+    public static class VIPGuest extends Guest {
         private LocalDate VIPstartDate;
         private LocalDate VIPexpiryDate;
 
         public LocalDate getVIPstartDate() {return VIPstartDate;}
         public LocalDate getVIPexpiryDate() {return VIPexpiryDate;}
 
-        VIPGuest(String fName, String lName, LocalDate dateJoin, LocalDate VIPstartDate, LocalDate VIPexpiryDate ){
-            super(fName, lName, dateJoin);
+        VIPGuest(int guestID, String fName, String lName, LocalDate dateJoin, LocalDate VIPstartDate, LocalDate VIPexpiryDate ){
+            super(guestID, fName, lName, dateJoin);
             this.VIPstartDate = VIPstartDate;
             this.VIPexpiryDate = VIPexpiryDate;
         }
@@ -526,65 +1218,229 @@ public class HotelImpl implements Hotel {
     }
 
     /**
-     * Represents a Booking object
+     * Represents a Booking object. The dates are kept as epoch days, so a
+     * booking holds no other objects; the date accessors build them on demand.
      */
-    static class Booking {
+    public static class Booking {
         private int id;
         private int guestID;
         private int roomNumber;
-        private LocalDate bookingDate;
-        private LocalDate checkinDate;
-        private LocalDate checkoutDate;
+        private int bookingDay;
+        private int checkinDay;
+        private int checkoutDay;
         private double totalAmount;
 
         public int getId() {return id;}
         public int getGuestID() {return guestID;}
         public int getRoomNumber() {return roomNumber;}
-        public LocalDate getBookingDate() {return bookingDate;}
-        public LocalDate getCheckinDate() {return checkinDate;}
-        public LocalDate getCheckouDate() {return checkoutDate;}
+        public LocalDate getBookingDate() {return LocalDate.ofEpochDay(bookingDay);}
+        public LocalDate getCheckinDate() {return LocalDate.ofEpochDay(checkinDay);}
+        public LocalDate getCheckouDate() {return LocalDate.ofEpochDay(checkoutDay);}
         public double getTotalAmount() {return totalAmount;}
 
+        int getBookingDay() {return bookingDay;}
+        int getCheckinDay() {return checkinDay;}
+        int getCheckoutDay() {return checkoutDay;}
+
         Booking(int id, int guestID, int roomNumber, LocalDate bookingDate, LocalDate checkinDate, LocalDate checkoutDate, double totalAmount) {
+            this(id, guestID, roomNumber, bookingDate.toEpochDay(), checkinDate.toEpochDay(), checkoutDate.toEpochDay(), totalAmount);
+        }
+
+        Booking(int id, int guestID, int roomNumber, long bookingDay, long checkinDay, long checkoutDay, double totalAmount) {
             this.id = id;
             this.guestID = guestID;
             this.roomNumber = roomNumber;
-            this.bookingDate = bookingDate;
-            this.checkinDate = checkinDate;
-            this.checkoutDate = checkoutDate;
+            this.bookingDay = (int)bookingDay;
+            this.checkinDay = (int)checkinDay;
+            this.checkoutDay = (int)checkoutDay;
             this.totalAmount = totalAmount;
         }
 
         public String toString() {
             return Integer.toString(id) + "," + Integer.toString(guestID) + "," + Integer.toString(roomNumber)
-            + "," + bookingDate.toString() + "," + checkinDate.toString() + "," + checkoutDate.toString()
+            + "," + getBookingDate().toString() + "," + getCheckinDate().toString() + "," + getCheckouDate().toString()
             + "," + String.format("%.2f", totalAmount);
         }
     }
 
     /**
-     * Represents a Payment object
+     * Represents a Payment object. A payment is either one made with of()
+     * or a view of a row of a PaymentColumns table.
      */
-    static class Payment {
-        private LocalDate date;
-        private int guestID;
-        private double amount;
-        private String payReason;
+    public static abstract class Payment {
+        public abstract LocalDate getDate();
+        public abstract int getGuestID();
+        public abstract double getAmount();
+        public abstract String getPayReason();
+
+        /**
+         * Create a payment that holds its own fields
+         */
+        static Payment of(LocalDate date, int guestID, double amount, String payReason) {
+            return new Stored(date, guestID, amount, payReason);
+        }
 
-        public LocalDate getDate() {return date;}
-        public int getGuestID() {return guestID;}
-        public double getAmount()  {return amount;}
-        public String getPayReason() {return payReason;}
+        int getDay() {return (int)getDate().toEpochDay();}
 
-        Payment(LocalDate date, int guestID, double amount, String payReason) {
-            this.date = date;
-            this.guestID = guestID;
-            this.amount = amount;
-            this.payReason = payReason;
+        public String toString() {return getDate().toString() + "," + Integer.toString(getGuestID()) + ","
+            + Double.toString(getAmount()) + "," + getPayReason();
+        }
+
+        private static class Stored extends Payment {
+            private LocalDate date;
+            private int guestID;
+            private double amount;
+            private String payReason;
+
+            Stored(LocalDate date, int guestID, double amount, String payReason) {
+                this.date = date;
+                this.guestID = guestID;
+                this.amount = amount;
+                this.payReason = payReason;
+            }
+
+            public LocalDate getDate() {return date;}
+            public int getGuestID() {return guestID;}
+            public double getAmount() {return amount;}
+            public String getPayReason() {return payReason;}
+        }
+    }
+
+    /**
+     * Add a booking to the room schedule and the guest's bookings
+     *
+     * @param booking   a booking just added to the bookings table
+     */
+    private void indexBooking(Booking booking) {
+        scheduleOf(booking.getRoomNumber()).add(booking);
+        invalidateAvailability(booking);
+        for (long day : daysInRangeOf(booking)) {
+            bookingsByDay.add(day, booking);
+        }
+        ArrayList<Booking> ownBookings = guestBookings.get(booking.getGuestID());
+        if (ownBookings == null) {
+            ownBookings = new ArrayList<>();
+            guestBookings.put(booking.getGuestID(), ownBookings);
+        }
+        ownBookings.add(booking);
+    }
+
+    /**
+     * Remove a booking from the room schedule and the guest's bookings
+     *
+     * @param booking   a booking just removed from the bookings table
+     */
+    private void unindexBooking(Booking booking) {
+        scheduleOf(booking.getRoomNumber()).remove(booking);
+        invalidateAvailability(booking);
+        for (long day : daysInRangeOf(booking)) {
+            bookingsByDay.remove(day, booking);
+        }
+        ArrayList<Booking> ownBookings = guestBookings.get(booking.getGuestID());
+        if (ownBookings != null) {
+            ownBookings.remove(booking);
+            if (ownBookings.isEmpty()) {
+                guestBookings.remove(booking.getGuestID());
+            }
+        }
+    }
+
+    /**
+     * Returns the days on which a booking is listed by displayBookingsOn,
+     * from the check-in date to the check-out date inclusive
+     *
+     * @param booking   a booking
+     * @return          the epoch days the booking covers
+     */
+    static long[] daysInRangeOf(Booking booking) {
+        long checkin = booking.getCheckinDay();
+        long checkout = booking.getCheckoutDay();
+        if (checkout < checkin) {
+            return new long[] {checkin, checkout};
+        }
+        long[] days = new long[(int)(checkout - checkin + 1)];
+        for (int i = 0; i < days.length; i++) {
+            days[i] = checkin + i;
+        }
+        return days;
+    }
+
+    /**
+     * Add a payment to the payments table
+     *
+     * @param payment   a new payment
+     */
+    private void addPayment(Payment payment) {
+        payments.add(payment);
+        stats.addPayment(payment.getDate().toEpochDay(), HotelSnapshot.toCents(payment.getAmount()), payment.getPayReason());
+    }
+
+    /**
+     * Add the nights of a booking to the occupancy totals of its room type
+     *
+     * @param booking   the booking
+     * @param sign      1 for a new booking, -1 for one taken back
+     */
+    private void countStay(Booking booking, int sign) {
+        countStay(booking, booking.getCheckinDay(), booking.getCheckoutDay(), sign);
+    }
+
+    /**
+     * Add some of the nights of a booking to the occupancy totals of its room type
+     *
+     * @param booking   the booking
+     * @param fromDay   the first night
+     * @param toDay     the day after the last night
+     * @param sign      1 to count the nights, -1 to take them back
+     */
+    private void countStay(Booking booking, long fromDay, long toDay, int sign) {
+        Room room = rooms == null ? null : rooms.get(booking.getRoomNumber());
+        RoomType roomType = room == null ? null : stringToRoomType(room.getRoomType());
+        if (roomType != null) {
+            stats.addStay(roomType, booking, fromDay, toDay, sign);
         }
+    }
+
+    /**
+     * Drop the cached availability answers that a booking of a room changes
+     *
+     * @param booking   a booking just added to or removed from its room schedule
+     */
+    private void invalidateAvailability(Booking booking) {
+        Room room = rooms == null ? null : rooms.get(booking.getRoomNumber());
+        availability.invalidateStay(booking.getRoomNumber(), room == null ? null : stringToRoomType(room.getRoomType()),
+            booking.getCheckinDay(), booking.getCheckoutDay());
+    }
 
-        public String toString() {return date.toString() + "," + Integer.toString(guestID) + ","
-            + Double.toString(amount) + "," + payReason;
+    /**
+     * Returns the booking schedule of a room, creating an empty one if needed
+     *
+     * @param roomNumber  the room number
+     * @return            the schedule holding all bookings of the room
+     */
+    RoomSchedule scheduleOf(int roomNumber) {
+        RoomSchedule schedule = schedules.get(roomNumber);
+        if (schedule == null) {
+            schedule = new RoomSchedule();
+            schedules.put(roomNumber, schedule);
+        }
+        return schedule;
+    }
+
+    /**
+     * Regroup all rooms by room type on top of the current room schedules
+     */
+    private void rebuildCalendar() {
+        calendar = new OccupancyCalendar();
+        availability.clear();
+        if (rooms == null) {
+            return;
+        }
+        for (Room room : rooms) {
+            RoomType roomType = stringToRoomType(room.getRoomType());
+            if (roomType != null) {
+                calendar.addRoom(room.getRoomNumber(), roomType, scheduleOf(room.getRoomNumber()));
+            }
         }
     }
 
@@ -594,7 +1450,7 @@ public class HotelImpl implements Hotel {
      * @param roomType  a room type
      * @return          the string representation of the room type
      */
-    String roomTypeToString(RoomType roomType) {
+    static String roomTypeToString(RoomType roomType) {
         String str;
         switch(roomType) {
             case DOUBLE: str = "double"; break;
@@ -606,6 +1462,79 @@ public class HotelImpl implements Hotel {
         return str;
     }
 
+    /**
+     * Returns the RoomType constant of a string representation
+     *
+     * @param str   the string representation of a room type
+     * @return      the room type, or null if the string is not a known room type
+     */
+    static RoomType stringToRoomType(String str) {
+        for (RoomType roomType : RoomType.values()) {
+            if (roomTypeToString(roomType).equals(str)) {
+                return roomType;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether a guest gets the VIP discount on a given day
+     *
+     * @param guest a guest
+     * @param today the day of the booking
+     * @return      true if the guest is a VIP whose membership covers that day
+     */
+    static boolean isActiveVIP(Guest guest, LocalDate today) {
+        if (!(guest instanceof VIPGuest)) {
+            return false;
+        }
+        VIPGuest vGuest = (VIPGuest)guest;
+        return isInRangeOf(today, vGuest.getVIPstartDate(), vGuest.getVIPexpiryDate());
+    }
+
+    /**
+     * Calculate the price of the room for the guest
+     *
+     * @param room      the booked room
+     * @param checkin   the check-in date
+     * @param checkout  the check-out date
+     * @param isVIP     true if the guest gets the VIP discount
+     * @return          the total amount to pay
+     */
+    static double bookingAmount(Room room, LocalDate checkin, LocalDate checkout, boolean isVIP) {
+        double totalAmount = room.getPrice() * ChronoUnit.DAYS.between(checkin, checkout);
+        if (isVIP) {totalAmount = 0.9 * totalAmount;}
+        return totalAmount;
+    }
+
+    /**
+     * See if the guest can gather a refund when cancelling
+     *
+     * @param booking   the cancelled booking
+     * @param today     the day of the cancellation
+     * @return          the date of the refund, or null if there is no refund
+     */
+    static LocalDate refundDate(Booking booking, LocalDate today) {
+        long days = ChronoUnit.DAYS.between(today, booking.getCheckinDate());
+        return days >= 2 ? today : null;
+    }
+
+    /**
+     * Check to see if the guest still has booking on any future days
+     *
+     * @param ownBookings   the bookings of one guest
+     * @param today         the current date
+     * @return              true if any of the bookings starts after today
+     */
+    static boolean hasFutureBooking(Iterable<Booking> ownBookings, LocalDate today) {
+        for (Booking booking : ownBookings) {
+            if (booking.getCheckinDate().isAfter(today)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Determines if a given date is in range of aDate and bDate, where aDate is before bDate (inclusive)
      * 
@@ -614,7 +1543,7 @@ public class HotelImpl implements Hotel {
      * @param bDate     the later of the two dates
      * @return          true if the date is in range of aDate and bDate, false otherwise 
      */
-    boolean isInRangeOf(LocalDate thisDate, LocalDate aDate, LocalDate bDate) {
+    static boolean isInRangeOf(LocalDate thisDate, LocalDate aDate, LocalDate bDate) {
         return ((bDate.isAfter(thisDate)) && (aDate.isBefore(thisDate)))
             || (bDate.equals(thisDate)) || (aDate.equals(thisDate));
     }
@@ -0,0 +1,198 @@
+package hotel;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Locale;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and latency histograms for the operations of one hotel.
+ *
+ * A hotel starts with the shared DISABLED instance, whose start() does not
+ * even read the clock and whose record() returns at once, so an
+ * uninstrumented hotel pays one field read and one branch per operation.
+ * The counters of an enabled instance are LongAdders and the histograms
+ * lock-free, so threads recording at once do not serialise on them.
+ *
+ * The metrics can be published as JMX MBeans, one per operation, and
+ * written in the Prometheus text format for a pull-style scraper.
+ */
+public class HotelMetrics {
+
+    /**
+     * The measured hotel operations
+     */
+    public enum Operation {
+        IS_AVAILABLE("isAvailable"),
+        AVAILABLE_ROOMS("availableRooms"),
+        BOOK_ONE_ROOM("bookOneRoom"),
+        BOOK_ROOMS("bookRooms"),
+        CANCEL_BOOKING("cancelBooking"),
+        CHECK_OUT("checkOut"),
+        SEARCH_GUEST("searchGuest"),
+        IMPORT_ROOMS("importRoomsData"),
+        IMPORT_GUESTS("importGuestsData"),
+        IMPORT_BOOKINGS("importBookingsData"),
+        IMPORT_PAYMENTS("importPaymentsData"),
+        SAVE_ROOMS("saveRoomsData"),
+        SAVE_GUESTS("saveGuestsData"),
+        SAVE_BOOKINGS("saveBookingsData"),
+        SAVE_PAYMENTS("savePaymentsData");
+
+        private final String methodName;
+
+        Operation(String methodName) {
+            this.methodName = methodName;
+        }
+
+        public String getMethodName() {return methodName;}
+    }
+
+    static final HotelMetrics DISABLED = new HotelMetrics(false);
+
+    private final boolean enabled;
+    private final EnumMap<Operation, OperationMetrics> operations = new EnumMap<>(Operation.class);
+
+    HotelMetrics() {
+        this(true);
+    }
+
+    private HotelMetrics(boolean enabled) {
+        this.enabled = enabled;
+        if (enabled) {
+            for (Operation operation : Operation.values()) {
+                operations.put(operation, new OperationMetrics(operation.getMethodName()));
+            }
+        }
+    }
+
+    public boolean isEnabled() {return enabled;}
+
+    /**
+     * Returns the metrics of one operation, or null if metrics are disabled
+     */
+    public OperationMetrics get(Operation operation) {
+        return operations.get(operation);
+    }
+
+    /**
+     * Returns the time an operation starts at, to pass to record
+     */
+    long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Count one run of an operation
+     *
+     * @param operation     the operation
+     * @param start         what start() returned when the operation began
+     * @param rowsScanned   the rooms, bookings or other records the operation looked at
+     * @param succeeded     false if the operation failed or found nothing to book
+     * @return              succeeded, so that a method can return through this call
+     */
+    boolean record(Operation operation, long start, long rowsScanned, boolean succeeded) {
+        if (enabled) {
+            operations.get(operation).record(System.nanoTime() - start, rowsScanned, succeeded);
+        }
+        return succeeded;
+    }
+
+    /**
+     * Register one MBean per operation with the platform MBean server, named
+     * hotel:type=Operation,hotel=hotelName,name=methodName
+     *
+     * @param  hotelName  tells apart the hotels of one process
+     * @return true if all MBeans were registered, otherwise false
+     */
+    public boolean registerMBeans(String hotelName) {
+        if (!enabled) {
+            throw new IllegalStateException("Metrics are disabled");
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            for (OperationMetrics metrics : operations.values()) {
+                server.registerMBean(metrics, objectName(hotelName, metrics));
+            }
+            return true;
+        } catch (JMException e) {
+            System.out.println(e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Unregister the MBeans registered under a hotel name
+     */
+    public void unregisterMBeans(String hotelName) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (OperationMetrics metrics : operations.values()) {
+            try {
+                ObjectName name = objectName(hotelName, metrics);
+                if (server.isRegistered(name)) {
+                    server.unregisterMBean(name);
+                }
+            } catch (JMException e) {
+                System.out.println(e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Write the metrics in the Prometheus text exposition format
+     *
+     * @param out   receives the text
+     */
+    public void writeText(Appendable out) throws IOException {
+        if (!enabled) {
+            out.append("# Metrics are disabled\n");
+            return;
+        }
+        out.append("# TYPE hotel_operation_calls_total counter\n");
+        for (OperationMetrics metrics : operations.values()) {
+            line(out, "hotel_operation_calls_total", metrics, null, metrics.getCalls());
+        }
+        out.append("# TYPE hotel_operation_failures_total counter\n");
+        for (OperationMetrics metrics : operations.values()) {
+            line(out, "hotel_operation_failures_total", metrics, null, metrics.getFailures());
+        }
+        out.append("# TYPE hotel_operation_rows_scanned_total counter\n");
+        for (OperationMetrics metrics : operations.values()) {
+            line(out, "hotel_operation_rows_scanned_total", metrics, null, metrics.getRowsScanned());
+        }
+        out.append("# TYPE hotel_operation_latency_seconds summary\n");
+        for (OperationMetrics metrics : operations.values()) {
+            if (metrics.getCalls() == 0) {
+                continue;
+            }
+            for (String quantile : new String[] {"0.5", "0.9", "0.99", "0.999"}) {
+                line(out, "hotel_operation_latency_seconds", metrics, quantile,
+                    metrics.getPercentileMicros(Double.parseDouble(quantile) * 100) / 1e6);
+            }
+            line(out, "hotel_operation_latency_seconds_sum", metrics, null, metrics.getMeanMicros() * metrics.getCalls() / 1e6);
+            line(out, "hotel_operation_latency_seconds_count", metrics, null, metrics.getCalls());
+        }
+        out.append("# TYPE hotel_operation_latency_max_seconds gauge\n");
+        for (OperationMetrics metrics : operations.values()) {
+            line(out, "hotel_operation_latency_max_seconds", metrics, null, metrics.getMaxMicros() / 1e6);
+        }
+    }
+
+    private static void line(Appendable out, String name, OperationMetrics metrics, String quantile, double value)
+        throws IOException {
+        out.append(name).append("{operation=\"").append(metrics.getName()).append('"');
+        if (quantile != null) {
+            out.append(",quantile=\"").append(quantile).append('"');
+        }
+        out.append("} ");
+        out.append(value == Math.rint(value) && Math.abs(value) < 1e15
+            ? Long.toString((long)value) : String.format(Locale.ROOT, "%.9f", value));
+        out.append('\n');
+    }
+
+    private static ObjectName objectName(String hotelName, OperationMetrics metrics) throws JMException {
+        return new ObjectName("hotel:type=Operation,hotel=" + ObjectName.quote(hotelName) + ",name=" + metrics.getName());
+    }
+}
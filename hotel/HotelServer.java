@@ -0,0 +1,533 @@
+package hotel;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Serves the operations of one Hotel as HTTP/JSON on the loopback interface,
+ * so that many clients can share one in-memory hotel.
+ *
+ * Parameters come from the query string or an urlencoded form body;
+ * dates are yyyy-MM-dd and room types are single, double, twin or family.
+ *
+ *   GET    /rooms                                       all rooms
+ *   POST   /rooms?number&type&price&capacity&facilities  addRoom
+ *   DELETE /rooms?number                                removeRoom
+ *   GET    /guests[?first&last]                         all guests, or searchGuest
+ *   POST   /guests?first&last&joined[&vipStart&vipExpiry]  addGuest, answering the new guest ID
+ *   DELETE /guests?id                                   removeGuest
+ *   GET    /bookings[?date | ?guest]                    all bookings, bookings on a day or of a guest
+ *   POST   /bookings?guest&type&checkin&checkout        bookOneRoom
+ *   DELETE /bookings?id                                 cancelBooking
+ *   POST   /checkout?id&date                            checkOut
+ *   GET    /payments[?date]                             all payments or payments on a day
+ *   GET    /available?type&checkin&checkout             availableRooms
+ *   GET    /available?room&checkin&checkout             isAvailable
+ *   GET    /metrics                                     operation metrics as Prometheus text
+ *
+ * Lists are written to the response as they are visited, so a large
+ * table never has to fit in one String. Each request runs on its own
+ * virtual thread when the JDK has them, otherwise on a pooled thread.
+ * A ConcurrentHotel is called directly; any other hotel is guarded by a
+ * read-write lock so that queries run together and changes run alone.
+ * The elements of a list are then copied under the lock and written
+ * after it is released, so a slow client never holds up the changes.
+ *
+ * Bad parameters are answered with 400 and any other failure with 500.
+ * A list that fails after its status was sent drops the connection, so
+ * the client never takes the part it got for the whole list.
+ */
+public class HotelServer {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private Hotel hotel;
+    private RecordSource records;
+    private ReadWriteLock lock;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * Create a server for a hotel; call start() to accept requests
+     *
+     * @param hotel the hotel to serve, a HotelImpl or a ConcurrentHotel
+     * @param port  the port on the loopback interface, 0 for any free port
+     * @throws IOException if the port cannot be bound
+     */
+    public HotelServer(Hotel hotel, int port) throws IOException {
+        if (!(hotel instanceof RecordSource)) {
+            throw new IllegalArgumentException("The hotel must be a HotelImpl or a ConcurrentHotel");
+        }
+        this.hotel = hotel;
+        this.records = (RecordSource)hotel;
+        this.lock = hotel instanceof ConcurrentHotel ? null : new ReentrantReadWriteLock();
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/rooms", exchange -> handle(exchange, this::rooms));
+        server.createContext("/guests", exchange -> handle(exchange, this::guests));
+        server.createContext("/bookings", exchange -> handle(exchange, this::bookings));
+        server.createContext("/checkout", exchange -> handle(exchange, this::checkOut));
+        server.createContext("/payments", exchange -> handle(exchange, this::payments));
+        server.createContext("/available", exchange -> handle(exchange, this::available));
+        server.createContext("/metrics", exchange -> handle(exchange, this::metrics));
+    }
+
+    public void start() {
+        executor = newRequestExecutor();
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Stop accepting requests and wait up to a second for running ones to finish
+     */
+    public void stop() {
+        server.stop(1);
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Returns the port the server listens on
+     */
+    public int getPort() {return server.getAddress().getPort();}
+
+    /**
+     * Serve the four data files on a port until the process is stopped
+     *
+     * @param args  the port, then the rooms, guests, bookings and payments txt files
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 5) {
+            System.out.println("Usage: HotelServer port rooms.txt guests.txt bookings.txt payments.txt");
+            return;
+        }
+        ConcurrentHotel hotel = new ConcurrentHotel(args[1], args[2], args[3], args[4]);
+        hotel.enableMetrics().registerMBeans("port " + args[0]);
+        HotelServer server = new HotelServer(hotel, Integer.parseInt(args[0]));
+        server.start();
+        System.out.println("Serving on http://localhost:" + server.getPort() + "/");
+    }
+
+    /**
+     * Answers one request
+     */
+    private interface Handler {
+        void handle(Request request) throws IOException;
+    }
+
+    private void handle(HttpExchange exchange, Handler handler) throws IOException {
+        Request request = new Request(exchange);
+        try {
+            request.parseParams();
+            handler.handle(request);
+        } catch (RuntimeException e) {
+            if (request.sent) {
+                // Leaving the exchange open makes the HttpServer close the connection
+                // instead of ending the response as if it were complete
+                throw new IOException("Response aborted", e);
+            }
+            int status = e instanceof IllegalArgumentException || e instanceof DateTimeParseException ? 400 : 500;
+            request.send(status, "{\"error\":" + quote(String.valueOf(e.getMessage())) + "}");
+        }
+        exchange.close();
+    }
+
+    private void rooms(Request request) throws IOException {
+        switch (request.method) {
+            case "GET":
+                list(request, action -> records.forEachRoom(room -> action.accept(json(room))));
+                break;
+            case "POST": {
+                int number = request.intParam("number");
+                RoomType type = request.roomTypeParam("type");
+                double price = Double.parseDouble(request.param("price"));
+                int capacity = request.intParam("capacity");
+                String facilities = request.param("facilities");
+                boolean added = write(() -> hotel.addRoom(number, type, price, capacity, facilities));
+                request.send(added ? 201 : 409, "{\"added\":" + added + "}");
+                break;
+            }
+            case "DELETE": {
+                int number = request.intParam("number");
+                boolean removed = write(() -> hotel.removeRoom(number));
+                request.send(removed ? 200 : 409, "{\"removed\":" + removed + "}");
+                break;
+            }
+            default: request.send(405, "{\"error\":\"Method not allowed\"}");
+        }
+    }
+
+    private void guests(Request request) throws IOException {
+        switch (request.method) {
+            case "GET":
+                if (request.params.containsKey("last")) {
+                    String first = request.param("first");
+                    String last = request.param("last");
+                    request.send(200, json(read(() -> hotel.searchGuest(first, last))));
+                } else {
+                    list(request, action -> records.forEachGuest(guest -> action.accept(json(guest))));
+                }
+                break;
+            case "POST": {
+                String first = request.param("first");
+                String last = request.param("last");
+                LocalDate joined = request.dateParam("joined");
+                int guestID;
+                if (request.params.containsKey("vipStart")) {
+                    LocalDate start = request.dateParam("vipStart");
+                    LocalDate expiry = request.dateParam("vipExpiry");
+                    guestID = write(() -> hotel instanceof ConcurrentHotel
+                        ? ((ConcurrentHotel)hotel).addNewGuest(first, last, joined, start, expiry)
+                        : ((HotelImpl)hotel).addNewGuest(first, last, joined, start, expiry));
+                } else {
+                    guestID = write(() -> hotel instanceof ConcurrentHotel
+                        ? ((ConcurrentHotel)hotel).addNewGuest(first, last, joined)
+                        : ((HotelImpl)hotel).addNewGuest(first, last, joined));
+                }
+                request.send(guestID < 0 ? 409 : 201, "{\"added\":" + (guestID >= 0) + ",\"guestID\":" + guestID + "}");
+                break;
+            }
+            case "DELETE": {
+                int id = request.intParam("id");
+                boolean removed = write(() -> hotel.removeGuest(id));
+                request.send(removed ? 200 : 409, "{\"removed\":" + removed + "}");
+                break;
+            }
+            default: request.send(405, "{\"error\":\"Method not allowed\"}");
+        }
+    }
+
+    private void bookings(Request request) throws IOException {
+        switch (request.method) {
+            case "GET":
+                if (request.params.containsKey("date")) {
+                    LocalDate date = request.dateParam("date");
+                    list(request, action -> records.forEachBookingOn(date, booking -> action.accept(json(booking))));
+                } else if (request.params.containsKey("guest")) {
+                    int guestID = request.intParam("guest");
+                    list(request, action -> records.forEachGuestBooking(guestID, booking -> action.accept(json(booking))));
+                } else {
+                    list(request, action -> records.forEachBooking(booking -> action.accept(json(booking))));
+                }
+                break;
+            case "POST": {
+                int guestID = request.intParam("guest");
+                RoomType type = request.roomTypeParam("type");
+                LocalDate checkin = request.dateParam("checkin");
+                LocalDate checkout = request.dateParam("checkout");
+                int roomNumber = write(() -> hotel.bookOneRoom(guestID, type, checkin, checkout));
+                request.send(roomNumber < 0 ? 409 : 201, "{\"roomNumber\":" + roomNumber + "}");
+                break;
+            }
+            case "DELETE": {
+                int id = request.intParam("id");
+                boolean cancelled = write(() -> hotel.cancelBooking(id));
+                request.send(cancelled ? 200 : 404, "{\"cancelled\":" + cancelled + "}");
+                break;
+            }
+            default: request.send(405, "{\"error\":\"Method not allowed\"}");
+        }
+    }
+
+    private void checkOut(Request request) throws IOException {
+        if (!request.method.equals("POST")) {
+            request.send(405, "{\"error\":\"Method not allowed\"}");
+            return;
+        }
+        int id = request.intParam("id");
+        LocalDate date = request.dateParam("date");
+        boolean checkedOut = write(() -> hotel.checkOut(id, date));
+        request.send(checkedOut ? 200 : 409, "{\"checkedOut\":" + checkedOut + "}");
+    }
+
+    private void payments(Request request) throws IOException {
+        if (!request.method.equals("GET")) {
+            request.send(405, "{\"error\":\"Method not allowed\"}");
+        } else if (request.params.containsKey("date")) {
+            LocalDate date = request.dateParam("date");
+            list(request, action -> records.forEachPaymentOn(date, payment -> action.accept(json(payment))));
+        } else {
+            list(request, action -> records.forEachPayment(payment -> action.accept(json(payment))));
+        }
+    }
+
+    private void available(Request request) throws IOException {
+        if (!request.method.equals("GET")) {
+            request.send(405, "{\"error\":\"Method not allowed\"}");
+            return;
+        }
+        LocalDate checkin = request.dateParam("checkin");
+        LocalDate checkout = request.dateParam("checkout");
+        if (request.params.containsKey("room")) {
+            int room = request.intParam("room");
+            boolean available = read(() -> hotel.isAvailable(room, checkin, checkout));
+            request.send(200, "{\"available\":" + available + "}");
+        } else {
+            RoomType type = request.roomTypeParam("type");
+            request.send(200, json(read(() -> hotel.availableRooms(type, checkin, checkout))));
+        }
+    }
+
+    private void metrics(Request request) throws IOException {
+        if (!request.method.equals("GET")) {
+            request.send(405, "{\"error\":\"Method not allowed\"}");
+            return;
+        }
+        HotelMetrics metrics = hotel instanceof ConcurrentHotel
+            ? ((ConcurrentHotel)hotel).getMetrics() : ((HotelImpl)hotel).getMetrics();
+        Writer out = request.stream(200, "text/plain; version=0.0.4; charset=utf-8");
+        metrics.writeText(out);
+        out.flush();
+    }
+
+    /**
+     * Write a JSON array of the elements a visitor produces. Under the read
+     * lock the elements are copied first and written once it is released;
+     * a ConcurrentHotel visits a snapshot, so they are written as they come.
+     */
+    private void list(Request request, Consumer<Consumer<String>> visitor) throws IOException {
+        List<String> elements = null;
+        if (lock != null) {
+            List<String> copy = new ArrayList<>();
+            read(() -> {
+                visitor.accept(copy::add);
+                return null;
+            });
+            elements = copy;
+        }
+        Writer out = request.stream(200);
+        out.write('[');
+        boolean[] first = {true};
+        Consumer<String> writer = element -> {
+            try {
+                if (!first[0]) {
+                    out.write(',');
+                }
+                first[0] = false;
+                out.write(element);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+        try {
+            if (elements != null) {
+                elements.forEach(writer);
+            } else {
+                visitor.accept(writer);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        out.write(']');
+        out.flush();
+    }
+
+    private interface Call<T> {
+        T call();
+    }
+
+    private <T> T read(Call<T> call) {
+        if (lock == null) {
+            return call.call();
+        }
+        lock.readLock().lock();
+        try {
+            return call.call();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private <T> T write(Call<T> call) {
+        if (lock == null) {
+            return call.call();
+        }
+        lock.writeLock().lock();
+        try {
+            return call.call();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns a virtual-thread-per-task executor on JDKs that have one,
+     * otherwise a pool of daemon threads that grows with the load
+     */
+    static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "hotel-server");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    static String json(HotelImpl.Room room) {
+        return "{\"roomNumber\":" + room.getRoomNumber() + ",\"roomType\":" + quote(room.getRoomType())
+            + ",\"price\":" + room.getPrice() + ",\"capacity\":" + quote(room.getCapacity())
+            + ",\"facilities\":" + quote(room.getFacilities()) + "}";
+    }
+
+    static String json(HotelImpl.Guest guest) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"guestID\":").append(guest.getGuestID())
+            .append(",\"firstName\":").append(quote(guest.getFName()))
+            .append(",\"lastName\":").append(quote(guest.getLName()))
+            .append(",\"dateJoin\":\"").append(guest.getDateJoin()).append('"');
+        if (guest instanceof HotelImpl.VIPGuest) {
+            HotelImpl.VIPGuest vGuest = (HotelImpl.VIPGuest)guest;
+            sb.append(",\"VIPstartDate\":\"").append(vGuest.getVIPstartDate())
+                .append("\",\"VIPexpiryDate\":\"").append(vGuest.getVIPexpiryDate()).append('"');
+        }
+        return sb.append('}').toString();
+    }
+
+    static String json(HotelImpl.Booking booking) {
+        return "{\"id\":" + booking.getId() + ",\"guestID\":" + booking.getGuestID()
+            + ",\"roomNumber\":" + booking.getRoomNumber() + ",\"bookingDate\":\"" + booking.getBookingDate()
+            + "\",\"checkinDate\":\"" + booking.getCheckinDate() + "\",\"checkoutDate\":\"" + booking.getCheckouDate()
+            + "\",\"totalAmount\":" + booking.getTotalAmount() + "}";
+    }
+
+    static String json(HotelImpl.Payment payment) {
+        return "{\"date\":\"" + payment.getDate() + "\",\"guestID\":" + payment.getGuestID()
+            + ",\"amount\":" + payment.getAmount() + ",\"payReason\":" + quote(payment.getPayReason()) + "}";
+    }
+
+    static String json(int[] values) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(values[i]);
+        }
+        return sb.append(']').toString();
+    }
+
+    static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int)c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * The method, parameters and response of one exchange
+     */
+    private static class Request {
+        private HttpExchange exchange;
+        private String method;
+        private Map<String, String> params = new HashMap<>();
+        // Whether the status line and headers are on their way to the client
+        private boolean sent;
+
+        Request(HttpExchange exchange) {
+            this.exchange = exchange;
+            this.method = exchange.getRequestMethod();
+        }
+
+        /**
+         * Read the parameters of the query string and the request body
+         */
+        void parseParams() throws IOException {
+            parse(exchange.getRequestURI().getRawQuery());
+            try (InputStream body = exchange.getRequestBody()) {
+                parse(new String(body.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+
+        String param(String name) {
+            String value = params.get(name);
+            if (value == null) {
+                throw new IllegalArgumentException("Missing parameter " + name);
+            }
+            return value;
+        }
+
+        int intParam(String name) {
+            return Integer.parseInt(param(name));
+        }
+
+        LocalDate dateParam(String name) {
+            return LocalDate.parse(param(name));
+        }
+
+        RoomType roomTypeParam(String name) {
+            RoomType roomType = HotelImpl.stringToRoomType(param(name).toLowerCase());
+            if (roomType == null) {
+                throw new IllegalArgumentException("Invalid room type");
+            }
+            return roomType;
+        }
+
+        void send(int status, String json) throws IOException {
+            byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            sent = true;
+            exchange.sendResponseHeaders(status, bytes.length);
+            exchange.getResponseBody().write(bytes);
+        }
+
+        /**
+         * Start a response of unknown length
+         */
+        Writer stream(int status) throws IOException {
+            return stream(status, "application/json; charset=utf-8");
+        }
+
+        Writer stream(int status, String contentType) throws IOException {
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+            sent = true;
+            exchange.sendResponseHeaders(status, 0);
+            return new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8), BUFFER_SIZE);
+        }
+
+        private void parse(String query) {
+            if (query == null || query.isEmpty()) {
+                return;
+            }
+            for (String pair : query.split("&")) {
+                int eq = pair.indexOf('=');
+                String name = eq < 0 ? pair : pair.substring(0, eq);
+                String value = eq < 0 ? "" : pair.substring(eq + 1);
+                params.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+            }
+        }
+    }
+}
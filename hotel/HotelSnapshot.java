@@ -0,0 +1,342 @@
+package hotel;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A versioned binary file holding all four tables of a hotel.
+ *
+ * Layout (big-endian): the magic number and version, the sequence number
+ * of the last journal record it contains, the last guest and booking IDs
+ * handed out, so that IDs of records since removed are not reused, the room type and
+ * pay reason dictionaries, then the rooms, guests, bookings and payments,
+ * each preceded by its record count, and last the revenue and occupancy
+ * totals as the amount of every day they cover. Dates are stored as epoch days and
+ * money as whole cents. Bookings (32 bytes) and payments (18 bytes) are
+ * fixed-width records; rooms and guests carry length-prefixed strings.
+ *
+ * Amounts are rounded to the cent, so a payment such as a VIP discount
+ * of 0.9 * 111.11 comes back as 100.00 rather than 99.999.
+ */
+class HotelSnapshot {
+    static final int MAGIC = 0x48544C53; // "HTLS"
+    static final int VERSION = 5;
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private ParallelLoader.Loaded<HotelImpl.Room> rooms;
+    private ParallelLoader.Loaded<HotelImpl.Guest> guests;
+    private ParallelLoader.Loaded<HotelImpl.Booking> bookings;
+    private ParallelLoader.Loaded<HotelImpl.Payment> payments;
+    private HotelStats stats;
+    private long journalSequence;
+    private int lastGuestID;
+    private int lastBookingID;
+
+    ParallelLoader.Loaded<HotelImpl.Room> getRooms() {return rooms;}
+    ParallelLoader.Loaded<HotelImpl.Guest> getGuests() {return guests;}
+    ParallelLoader.Loaded<HotelImpl.Booking> getBookings() {return bookings;}
+    ParallelLoader.Loaded<HotelImpl.Payment> getPayments() {return payments;}
+    long getJournalSequence() {return journalSequence;}
+
+    /**
+     * Returns the last guest ID handed out, or 0 for a snapshot older than version 4
+     */
+    int getLastGuestID() {return lastGuestID;}
+
+    /**
+     * Returns the last booking ID handed out, or 0 for a snapshot older than version 4
+     */
+    int getLastBookingID() {return lastBookingID;}
+
+    /**
+     * Returns the saved revenue and occupancy totals, or null for a snapshot older than version 3
+     */
+    HotelStats getStats() {return stats;}
+
+    private HotelSnapshot() {
+    }
+
+    /**
+     * Write the four tables to a snapshot file, replacing its contents
+     *
+     * @param fileName  the snapshot file
+     * @param rooms     the rooms
+     * @param guests    the guests
+     * @param bookings  the bookings
+     * @param payments  the payments
+     * @param stats     the revenue and occupancy totals
+     * @param lastGuestID   the last guest ID handed out
+     * @param lastBookingID the last booking ID handed out
+     * @param journalSequence the last journal record already applied to the tables, 0 if none
+     * @throws IOException if writing fails
+     */
+    static void write(String fileName, IntHashMap<HotelImpl.Room> rooms, IntHashMap<HotelImpl.Guest> guests,
+        IntHashMap<HotelImpl.Booking> bookings, PaymentColumns payments, HotelStats stats,
+        int lastGuestID, int lastBookingID, long journalSequence) throws IOException {
+        try (FileChannel channel = new FileOutputStream(fileName).getChannel()) {
+            Writer out = new Writer(channel);
+            ArrayList<String> roomTypes = new ArrayList<>();
+            HashMap<String, Integer> roomTypeCodes = new HashMap<>();
+            for (HotelImpl.Room room : rooms) {
+                code(room.getRoomType(), roomTypes, roomTypeCodes, 1 << 8);
+            }
+            ArrayList<String> payReasons = new ArrayList<>();
+            HashMap<String, Integer> payReasonCodes = new HashMap<>();
+            for (int row = 0; row < payments.size(); row++) {
+                code(payments.getPayReason(row), payReasons, payReasonCodes, 1 << 16);
+            }
+
+            out.ensure(24).putInt(MAGIC).putInt(VERSION).putLong(journalSequence).putInt(lastGuestID).putInt(lastBookingID);
+            out.putDictionary(roomTypes);
+            out.putDictionary(payReasons);
+
+            out.ensure(4).putInt(rooms.size());
+            for (HotelImpl.Room room : rooms) {
+                out.ensure(13).putInt(room.getRoomNumber())
+                    .put((byte)(int)roomTypeCodes.get(room.getRoomType()))
+                    .putLong(toCents(room.getPrice()));
+                out.putString(room.getCapacity());
+                out.putString(room.getFacilities());
+            }
+
+            out.ensure(4).putInt(guests.size());
+            for (HotelImpl.Guest guest : guests) {
+                boolean isVIP = guest instanceof HotelImpl.VIPGuest;
+                out.ensure(17).putInt(guest.getGuestID()).put((byte)(isVIP ? 1 : 0))
+                    .putInt((int)guest.getDateJoin().toEpochDay());
+                if (isVIP) {
+                    HotelImpl.VIPGuest vGuest = (HotelImpl.VIPGuest)guest;
+                    out.buffer.putInt((int)vGuest.getVIPstartDate().toEpochDay())
+                        .putInt((int)vGuest.getVIPexpiryDate().toEpochDay());
+                }
+                out.putString(guest.getFName());
+                out.putString(guest.getLName());
+            }
+
+            out.ensure(4).putInt(bookings.size());
+            for (HotelImpl.Booking booking : bookings) {
+                out.ensure(32).putInt(booking.getId()).putInt(booking.getGuestID()).putInt(booking.getRoomNumber())
+                    .putInt(booking.getBookingDay())
+                    .putInt(booking.getCheckinDay())
+                    .putInt(booking.getCheckoutDay())
+                    .putLong(toCents(booking.getTotalAmount()));
+            }
+
+            out.ensure(4).putInt(payments.size());
+            for (int row = 0; row < payments.size(); row++) {
+                out.ensure(18).putInt(payments.getDay(row)).putInt(payments.getGuestID(row))
+                    .putLong(payments.getCents(row))
+                    .putShort((short)(int)payReasonCodes.get(payments.getPayReason(row)));
+            }
+
+            out.putTotals(stats.getRevenueTotals());
+            out.ensure(4).putInt(stats.getRevenueTotalsByReason().size());
+            for (Map.Entry<String, DayTotals> reason : stats.getRevenueTotalsByReason().entrySet()) {
+                out.putString(reason.getKey());
+                out.putTotals(reason.getValue());
+            }
+            out.ensure(4).putInt(RoomType.values().length);
+            for (RoomType roomType : RoomType.values()) {
+                out.putString(roomType.name());
+                out.putTotals(stats.getOccupiedRoomTotals(roomType));
+                out.putTotals(stats.getRoomRevenueTotals(roomType));
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * Read the four tables from a snapshot file
+     *
+     * @param fileName  the snapshot file
+     * @return          the tables, in the order they were saved
+     * @throws IOException if the file cannot be read or is not a snapshot
+     */
+    static HotelSnapshot read(String fileName) throws IOException {
+        long startNanos = System.nanoTime();
+        try (FileChannel channel = new FileInputStream(fileName).getChannel()) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.remaining() < 8 || in.getInt() != MAGIC) {
+                throw new IOException(fileName + " is not a hotel snapshot");
+            }
+            int version = in.getInt();
+            if (version < 1 || version > VERSION) {
+                throw new IOException(fileName + " has unsupported snapshot version " + version);
+            }
+            HotelSnapshot snapshot = new HotelSnapshot();
+            snapshot.journalSequence = version >= 2 ? in.getLong() : 0;
+            if (version >= 4) {
+                snapshot.lastGuestID = in.getInt();
+                snapshot.lastBookingID = in.getInt();
+            }
+            String[] roomTypes = getDictionary(in);
+            String[] payReasons = getDictionary(in);
+
+            int count = in.getInt();
+            ArrayList<HotelImpl.Room> rooms = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int roomNumber = in.getInt();
+                String roomType = roomTypes[in.get() & 0xff];
+                double price = in.getLong() / 100.0;
+                rooms.add(new HotelImpl.Room(roomNumber, roomType, price, getString(in), getString(in)));
+            }
+            snapshot.rooms = new ParallelLoader.Loaded<>(fileName, rooms, startNanos);
+
+            startNanos = System.nanoTime();
+            count = in.getInt();
+            ArrayList<HotelImpl.Guest> guests = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                // Journal records refer to guests by ID, so the saved IDs are kept
+                int guestID = in.getInt();
+                boolean isVIP = in.get() != 0;
+                LocalDate dateJoin = LocalDate.ofEpochDay(in.getInt());
+                if (isVIP) {
+                    LocalDate start = LocalDate.ofEpochDay(in.getInt());
+                    LocalDate expiry = LocalDate.ofEpochDay(in.getInt());
+                    guests.add(new HotelImpl.VIPGuest(guestID, getString(in), getString(in), dateJoin, start, expiry));
+                } else {
+                    guests.add(new HotelImpl.Guest(guestID, getString(in), getString(in), dateJoin));
+                }
+            }
+            snapshot.guests = new ParallelLoader.Loaded<>(fileName, guests, startNanos);
+
+            startNanos = System.nanoTime();
+            count = in.getInt();
+            ArrayList<HotelImpl.Booking> bookings = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                bookings.add(new HotelImpl.Booking(in.getInt(), in.getInt(), in.getInt(),
+                    (long)in.getInt(), (long)in.getInt(), (long)in.getInt(), in.getLong() / 100.0));
+            }
+            snapshot.bookings = new ParallelLoader.Loaded<>(fileName, bookings, startNanos);
+
+            startNanos = System.nanoTime();
+            count = in.getInt();
+            ArrayList<HotelImpl.Payment> payments = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                LocalDate date = LocalDate.ofEpochDay(in.getInt());
+                int guestID = in.getInt();
+                double amount = in.getLong() / 100.0;
+                // Pay reason codes took one byte before version 5
+                int reason = version >= 5 ? in.getShort() & 0xffff : in.get() & 0xff;
+                payments.add(HotelImpl.Payment.of(date, guestID, amount, payReasons[reason]));
+            }
+            snapshot.payments = new ParallelLoader.Loaded<>(fileName, payments, startNanos);
+
+            if (version >= 3) {
+                HotelStats stats = new HotelStats();
+                stats.setRevenueTotals(null, getTotals(in));
+                for (int reasons = in.getInt(); reasons > 0; reasons--) {
+                    stats.setRevenueTotals(getString(in), getTotals(in));
+                }
+                for (int types = in.getInt(); types > 0; types--) {
+                    RoomType roomType = RoomType.valueOf(getString(in));
+                    stats.setStayTotals(roomType, getTotals(in), getTotals(in));
+                }
+                snapshot.stats = stats;
+            }
+            return snapshot;
+        } catch (java.nio.BufferUnderflowException e) {
+            throw new IOException(fileName + " is truncated");
+        }
+    }
+
+    static long toCents(double amount) {
+        return Math.round(amount * 100);
+    }
+
+    private static void code(String value, ArrayList<String> dictionary, HashMap<String, Integer> codes,
+        int limit) throws IOException {
+        if (!codes.containsKey(value)) {
+            if (dictionary.size() == limit) {
+                throw new IOException("A snapshot holds at most 256 room types and 65536 pay reasons");
+            }
+            codes.put(value, dictionary.size());
+            dictionary.add(value);
+        }
+    }
+
+    private static DayTotals getTotals(ByteBuffer in) {
+        int firstDay = in.getInt();
+        double[] days = new double[in.getInt()];
+        in.asDoubleBuffer().get(days);
+        in.position(in.position() + days.length * 8);
+        return DayTotals.ofDays(firstDay, days);
+    }
+
+    private static String[] getDictionary(ByteBuffer in) {
+        String[] dictionary = new String[in.getInt()];
+        for (int i = 0; i < dictionary.length; i++) {
+            dictionary[i] = getString(in);
+        }
+        return dictionary;
+    }
+
+    private static String getString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes through one reusable buffer that is flushed to the channel when full
+     */
+    private static class Writer {
+        private FileChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        Writer(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Returns the buffer once it has room for the given number of bytes
+         */
+        ByteBuffer ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+                if (buffer.capacity() < bytes) {
+                    buffer = ByteBuffer.allocateDirect(bytes);
+                }
+            }
+            return buffer;
+        }
+
+        void putString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            ensure(4 + bytes.length).putInt(bytes.length).put(bytes);
+        }
+
+        void putDictionary(List<String> dictionary) throws IOException {
+            ensure(4).putInt(dictionary.size());
+            for (String value : dictionary) {
+                putString(value);
+            }
+        }
+
+        void putTotals(DayTotals totals) throws IOException {
+            double[] days = totals.toDays();
+            ensure(8).putInt(totals.getFirstDay()).putInt(days.length);
+            for (double amount : days) {
+                ensure(8).putDouble(amount);
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
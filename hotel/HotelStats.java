@@ -0,0 +1,203 @@
+package hotel;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Revenue and occupancy totals of a hotel, kept up to date as payments and
+ * bookings are made, so that a report over any range of days costs a few
+ * tree lookups instead of a scan of the payments or bookings.
+ *
+ * Revenue is counted on the day of each payment, by pay reason. Occupancy
+ * counts the booked rooms of each room type for every night of a stay,
+ * from the check-in night to the night before check-out, and spreads the
+ * booking amount evenly over those nights. A checked-out stay stays
+ * counted; a cancelled one is taken out again. Occupancy rates and RevPAR
+ * are relative to the rooms the hotel has now.
+ *
+ * Snapshots keep the totals, so checked-out stays and archived payments
+ * stay counted when a hotel is opened again. Importing bookings or
+ * payments from a text file counts that file alone.
+ */
+public class HotelStats {
+    private DayTotals revenue = new DayTotals();
+    private HashMap<String, DayTotals> revenueByReason = new HashMap<>();
+    private EnumMap<RoomType, DayTotals> occupiedRooms = new EnumMap<>(RoomType.class);
+    private EnumMap<RoomType, DayTotals> roomRevenue = new EnumMap<>(RoomType.class);
+    private int[] roomCounts = new int[RoomType.values().length];
+
+    HotelStats() {
+        for (RoomType roomType : RoomType.values()) {
+            occupiedRooms.put(roomType, new DayTotals());
+            roomRevenue.put(roomType, new DayTotals());
+        }
+    }
+
+    /**
+     * Returns the income of a range of days, refunds taken off
+     *
+     * @param from  the first day
+     * @param to    the last day, inclusive
+     * @return      the sum of the payments made in the range
+     */
+    public double getRevenue(LocalDate from, LocalDate to) {
+        return toAmount(revenue.sum(from.toEpochDay(), to.toEpochDay()));
+    }
+
+    /**
+     * Returns the income of a range of days for one pay reason,
+     * e.g. "booking", "refund" or "VIPmembership"
+     *
+     * @param payReason the pay reason
+     * @param from      the first day
+     * @param to        the last day, inclusive
+     * @return          the sum of the payments with that reason made in the range
+     */
+    public double getRevenue(String payReason, LocalDate from, LocalDate to) {
+        DayTotals totals = revenueByReason.get(payReason);
+        return totals == null ? 0 : toAmount(totals.sum(from.toEpochDay(), to.toEpochDay()));
+    }
+
+    public double getRevenue(YearMonth month) {
+        return getRevenue(month.atDay(1), month.atEndOfMonth());
+    }
+
+    public double getRevenue(String payReason, YearMonth month) {
+        return getRevenue(payReason, month.atDay(1), month.atEndOfMonth());
+    }
+
+    /**
+     * Returns the number of nights rooms of a type are booked in a range of nights
+     *
+     * @param roomType  the room type
+     * @param from      the first night
+     * @param to        the last night, inclusive
+     * @return          the booked room-nights
+     */
+    public long getRoomNightsSold(RoomType roomType, LocalDate from, LocalDate to) {
+        return Math.round(occupiedRooms.get(roomType).sum(from.toEpochDay(), to.toEpochDay()));
+    }
+
+    /**
+     * Returns the share of the room-nights of a type that are booked in a range of nights
+     *
+     * @param roomType  the room type
+     * @param from      the first night
+     * @param to        the last night, inclusive
+     * @return          the occupancy rate from 0 to 1, or 0 if there are no rooms of the type
+     */
+    public double getOccupancy(RoomType roomType, LocalDate from, LocalDate to) {
+        long available = availableRoomNights(roomType, from, to);
+        return available == 0 ? 0 : (double)getRoomNightsSold(roomType, from, to) / available;
+    }
+
+    /**
+     * Returns the revenue per available room of a type over a range of nights
+     *
+     * @param roomType  the room type
+     * @param from      the first night
+     * @param to        the last night, inclusive
+     * @return          the room revenue of the nights divided by the available room-nights
+     */
+    public double getRevPAR(RoomType roomType, LocalDate from, LocalDate to) {
+        long available = availableRoomNights(roomType, from, to);
+        return available == 0 ? 0 : roomRevenue.get(roomType).sum(from.toEpochDay(), to.toEpochDay()) / 100 / available;
+    }
+
+    void addPayment(long epochDay, long amountCents, String payReason) {
+        revenue.add(epochDay, amountCents);
+        revenueByReason.computeIfAbsent(payReason, reason -> new DayTotals()).add(epochDay, amountCents);
+    }
+
+    /**
+     * Count the nights of a booking, or take them off again with sign -1
+     */
+    void addStay(RoomType roomType, HotelImpl.Booking booking, int sign) {
+        addStay(roomType, booking, booking.getCheckinDay(), booking.getCheckoutDay(), sign);
+    }
+
+    /**
+     * Count some of the nights of a booking, e.g. take off with sign -1 the
+     * nights after an early check-out. Each night is worth the booking's
+     * nightly share of its amount.
+     *
+     * @param fromDay   the first night, clamped to the stay
+     * @param toDay     the day after the last night, clamped to the stay
+     */
+    void addStay(RoomType roomType, HotelImpl.Booking booking, long fromDay, long toDay, int sign) {
+        long nights = (long)booking.getCheckoutDay() - booking.getCheckinDay();
+        fromDay = Math.max(fromDay, booking.getCheckinDay());
+        toDay = Math.min(toDay, booking.getCheckoutDay());
+        if (nights <= 0 || fromDay >= toDay) {
+            return;
+        }
+        occupiedRooms.get(roomType).addRange(fromDay, toDay, sign);
+        roomRevenue.get(roomType).addRange(fromDay, toDay,
+            sign * HotelSnapshot.toCents(booking.getTotalAmount()) / (double)nights);
+    }
+
+    /**
+     * Take over the revenue and occupancy totals of saved stats; the room counts stay
+     */
+    void setTotals(HotelStats saved) {
+        revenue = saved.revenue;
+        revenueByReason = saved.revenueByReason;
+        occupiedRooms = saved.occupiedRooms;
+        roomRevenue = saved.roomRevenue;
+    }
+
+    DayTotals getRevenueTotals() {return revenue;}
+    Map<String, DayTotals> getRevenueTotalsByReason() {return revenueByReason;}
+    DayTotals getOccupiedRoomTotals(RoomType roomType) {return occupiedRooms.get(roomType);}
+    DayTotals getRoomRevenueTotals(RoomType roomType) {return roomRevenue.get(roomType);}
+
+    void setRevenueTotals(String payReason, DayTotals totals) {
+        if (payReason == null) {
+            revenue = totals;
+        } else {
+            revenueByReason.put(payReason, totals);
+        }
+    }
+
+    void setStayTotals(RoomType roomType, DayTotals occupied, DayTotals revenue) {
+        occupiedRooms.put(roomType, occupied);
+        roomRevenue.put(roomType, revenue);
+    }
+
+    void addRoom(RoomType roomType, int count) {
+        roomCounts[roomType.ordinal()] += count;
+    }
+
+    /**
+     * Forget the revenue, e.g. before the payments are imported again
+     */
+    void clearRevenue() {
+        revenue = new DayTotals();
+        revenueByReason.clear();
+    }
+
+    /**
+     * Forget the occupancy, e.g. before the bookings are imported again
+     */
+    void clearStays() {
+        for (RoomType roomType : RoomType.values()) {
+            occupiedRooms.put(roomType, new DayTotals());
+            roomRevenue.put(roomType, new DayTotals());
+        }
+    }
+
+    void clearRooms() {
+        roomCounts = new int[RoomType.values().length];
+    }
+
+    private long availableRoomNights(RoomType roomType, LocalDate from, LocalDate to) {
+        long nights = to.toEpochDay() - from.toEpochDay() + 1;
+        return nights <= 0 ? 0 : nights * roomCounts[roomType.ordinal()];
+    }
+
+    private static double toAmount(double cents) {
+        return Math.round(cents) / 100.0;
+    }
+}
@@ -0,0 +1,99 @@
+package hotel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out increasing IDs for one table of one hotel. IDs come from an
+ * atomic counter, so concurrent callers never get the same ID.
+ *
+ * With a block size above 1 each thread reserves a block of IDs at once
+ * and hands them out without touching the shared counter again until the
+ * block is used up. IDs then stay unique but are no longer in the order
+ * they were handed out, and the unused rest of a block is skipped once
+ * the counter is reset.
+ */
+class IdAllocator {
+    private final AtomicInteger lastID;
+    private final int blockSize;
+    private final ThreadLocal<Block> blocks = new ThreadLocal<>();
+    // Blocks reserved before the last reset are not used any more
+    private volatile int generation = 0;
+
+    /**
+     * Create an allocator that hands out one ID at a time
+     *
+     * @param lastID    the ID just below the first one to hand out
+     */
+    IdAllocator(int lastID) {
+        this(lastID, 1);
+    }
+
+    /**
+     * Create an allocator that reserves IDs for each thread in blocks
+     *
+     * @param lastID    the ID just below the first one to hand out
+     * @param blockSize the number of IDs a thread reserves at once
+     */
+    IdAllocator(int lastID, int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Block size must be at least 1");
+        }
+        this.lastID = new AtomicInteger(lastID);
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Returns a new ID
+     *
+     * @return  an ID that has not been handed out or seen before
+     */
+    int next() {
+        if (blockSize == 1) {
+            return lastID.incrementAndGet();
+        }
+        Block block = blocks.get();
+        int currentGeneration = generation;
+        if (block == null || block.next == block.end || block.generation != currentGeneration) {
+            int end = lastID.addAndGet(blockSize);
+            block = new Block(end - blockSize + 1, end + 1, currentGeneration);
+            blocks.set(block);
+        }
+        return block.next++;
+    }
+
+    /**
+     * Record an ID that was handed out elsewhere, e.g. read from a file,
+     * so that it is never handed out again
+     *
+     * @param id    an ID in use
+     */
+    void seen(int id) {
+        lastID.accumulateAndGet(id, Math::max);
+    }
+
+    /**
+     * Start again after a given ID, when the whole table has been replaced
+     *
+     * @param lastID    the highest ID in use, or the initial value if there is none
+     */
+    void reset(int lastID) {
+        this.lastID.set(lastID);
+        generation++;
+    }
+
+    /**
+     * Returns the highest ID handed out or seen so far
+     */
+    int getLastID() {return lastID.get();}
+
+    private static class Block {
+        private int next;
+        private final int end;
+        private final int generation;
+
+        Block(int next, int end, int generation) {
+            this.next = next;
+            this.end = end;
+            this.generation = generation;
+        }
+    }
+}
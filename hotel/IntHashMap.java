@@ -0,0 +1,205 @@
+package hotel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A hash map from primitive int keys to records that iterates in
+ * insertion order. The entries live in insertion-ordered arrays and an
+ * open-addressing table of entry positions finds them by key, so get,
+ * put and remove take constant time without boxing the key.
+ * Removed entries leave a gap that is compacted away once gaps make up
+ * half of the entries.
+ *
+ * @param <V> the type of the records
+ */
+class IntHashMap<V> implements Iterable<V> {
+    private static final int EMPTY = 0;
+    private static final int REMOVED = -1;
+
+    // slot = position of the entry + 1, or EMPTY / REMOVED
+    private int[] slots;
+    private int[] keys;
+    private Object[] values;
+    private int count = 0;     // entries in use, including removed ones
+    private int size = 0;      // entries still present
+    private int usedSlots = 0; // slots that are not EMPTY
+
+    IntHashMap() {
+        this(16);
+    }
+
+    IntHashMap(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        slots = new int[capacity];
+        keys = new int[Math.max(8, expectedSize)];
+        values = new Object[keys.length];
+    }
+
+    int size() {return size;}
+
+    boolean isEmpty() {return size == 0;}
+
+    boolean containsKey(int key) {
+        return find(key) >= 0;
+    }
+
+    /**
+     * Returns the record stored under a key
+     *
+     * @param key   the key
+     * @return      the record, or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    V get(int key) {
+        int slot = find(key);
+        return slot < 0 ? null : (V)values[slots[slot] - 1];
+    }
+
+    /**
+     * Store a record under a key. A replaced record keeps its position in the iteration order.
+     *
+     * @param key   the key
+     * @param value the record, not null
+     * @return      the record previously stored under the key, or null
+     */
+    @SuppressWarnings("unchecked")
+    V put(int key, V value) {
+        int slot = find(key);
+        if (slot >= 0) {
+            int entry = slots[slot] - 1;
+            V previous = (V)values[entry];
+            values[entry] = value;
+            return previous;
+        }
+        if ((usedSlots + 1) * 2 > slots.length) {
+            rehash(size + 1);
+        }
+        if (count == keys.length) {
+            keys = Arrays.copyOf(keys, count * 2);
+            values = Arrays.copyOf(values, count * 2);
+        }
+        keys[count] = key;
+        values[count] = value;
+        count++;
+        size++;
+        int mask = slots.length - 1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            if (slots[i] == EMPTY || slots[i] == REMOVED) {
+                if (slots[i] == EMPTY) {
+                    usedSlots++;
+                }
+                slots[i] = count;
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Remove the record stored under a key
+     *
+     * @param key   the key
+     * @return      the removed record, or null if there was none
+     */
+    @SuppressWarnings("unchecked")
+    V remove(int key) {
+        int slot = find(key);
+        if (slot < 0) {
+            return null;
+        }
+        int entry = slots[slot] - 1;
+        V previous = (V)values[entry];
+        values[entry] = null;
+        slots[slot] = REMOVED;
+        size--;
+        if (count > 16 && size * 2 < count) {
+            rehash(size);
+        }
+        return previous;
+    }
+
+    /**
+     * Iterates over the records in insertion order
+     */
+    public Iterator<V> iterator() {
+        final Object[] entries = values;
+        final int end = count;
+        return new Iterator<V>() {
+            private int next = skipRemoved(0);
+
+            public boolean hasNext() {return next < end;}
+
+            @SuppressWarnings("unchecked")
+            public V next() {
+                if (next >= end) {
+                    throw new NoSuchElementException();
+                }
+                V value = (V)entries[next];
+                next = skipRemoved(next + 1);
+                return value;
+            }
+
+            private int skipRemoved(int i) {
+                while (i < end && entries[i] == null) {
+                    i++;
+                }
+                return i;
+            }
+        };
+    }
+
+    private int find(int key) {
+        int mask = slots.length - 1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            int slot = slots[i];
+            if (slot == EMPTY) {
+                return -1;
+            }
+            if (slot != REMOVED && keys[slot - 1] == key) {
+                return i;
+            }
+        }
+    }
+
+    /**
+     * Drop the gaps left by removed entries and rebuild the slot table for the given size
+     */
+    private void rehash(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 4) {
+            capacity <<= 1;
+        }
+        // Copy into new arrays so that running iterators keep their view
+        int[] newKeys = new int[Math.max(8, expectedSize * 2)];
+        Object[] newValues = new Object[newKeys.length];
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            if (values[i] != null) {
+                newKeys[n] = keys[i];
+                newValues[n] = values[i];
+                n++;
+            }
+        }
+        keys = newKeys;
+        values = newValues;
+        count = n;
+        slots = new int[capacity];
+        usedSlots = n;
+        int mask = capacity - 1;
+        for (int e = 0; e < n; e++) {
+            int i = hash(keys[e]) & mask;
+            while (slots[i] != EMPTY) {
+                i = (i + 1) & mask;
+            }
+            slots[i] = e + 1;
+        }
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,35 @@
+package hotel;
+import java.util.Arrays;
+
+/**
+ * A growable list of ints, for row numbers and similar small indexes
+ * that would otherwise box every entry.
+ */
+class IntList {
+    private int[] values;
+    private int size = 0;
+
+    IntList() {
+        this(4);
+    }
+
+    IntList(int capacity) {
+        values = new int[Math.max(1, capacity)];
+    }
+
+    void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    int get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " of " + size);
+        }
+        return values[index];
+    }
+
+    int size() {return size;}
+}
@@ -0,0 +1,424 @@
+package hotel;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of the changes made to a hotel since its last
+ * snapshot. Every change is one record:
+ *
+ *   int length | long sequence | byte type | payload | int CRC32
+ *
+ * where length counts the sequence, type and payload, and the CRC covers
+ * the same bytes. A group booking is one record, so it replays whole or
+ * not at all. Replay stops at the first incomplete or corrupt record,
+ * which is where a crash cut the file off.
+ *
+ * Changes are buffered and written with one fsync per group. With a sync
+ * interval of 0 every change is forced to disk before the logging call
+ * returns; a change that cannot be forced is dropped from the file again
+ * and the logging call throws, so the caller can leave it unmade.
+ * Otherwise a background thread forces the buffered changes every
+ * interval, and a crash loses at most that window of changes.
+ */
+class Journal implements Closeable {
+    static final byte ADD_ROOM = 1;
+    static final byte REMOVE_ROOM = 2;
+    static final byte ADD_GUEST = 3;
+    static final byte REMOVE_GUEST = 4;
+    static final byte BOOK = 5;
+    static final byte CHECK_OUT = 6;
+    static final byte CANCEL = 7;
+    static final byte BOOK_GROUP = 8;
+
+    private static final int HEADER_SIZE = 4;
+    private static final int TRAILER_SIZE = 4;
+    private static final int BOOKING_SIZE = 3 * 4 + 4 * 8;
+
+    /**
+     * Applies the records of a journal to a hotel
+     */
+    interface Replayer {
+        void addRoom(HotelImpl.Room room);
+        void removeRoom(int roomNumber);
+        void addGuest(HotelImpl.Guest guest);
+        void removeGuest(int guestID);
+        void book(HotelImpl.Booking booking);
+        void checkOut(int bookingID, LocalDate actualCheckoutDate);
+        void cancel(int bookingID, LocalDate refundDate);
+    }
+
+    private FileChannel channel;
+    private long syncIntervalMillis;
+    private ScheduledExecutorService flusher;
+    private ByteBuffer pending = ByteBuffer.allocate(1 << 16);
+    private ByteBuffer record = ByteBuffer.allocate(256);
+    private CRC32 crc = new CRC32();
+    private long sequence;
+    private Object flushLock = new Object();
+
+    /**
+     * Open a journal file for appending, creating it if needed.
+     * Call replay before logging anything.
+     *
+     * @param fileName           the journal file
+     * @param syncIntervalMillis the longest time a change stays unforced, 0 to force every change
+     * @throws IOException if the file cannot be opened
+     */
+    Journal(String fileName, long syncIntervalMillis) throws IOException {
+        this.channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.syncIntervalMillis = syncIntervalMillis;
+        if (syncIntervalMillis > 0) {
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "journal-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::syncQuietly, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Apply every intact record after a sequence number, then cut off any
+     * torn record at the end so that new records follow the last good one
+     *
+     * @param afterSequence the sequence number already contained in the snapshot
+     * @param replayer      applies the records
+     * @return              the number of records applied
+     * @throws IOException if the file cannot be read
+     */
+    long replay(long afterSequence, Replayer replayer) throws IOException {
+        sequence = afterSequence;
+        long applied = 0;
+        long size = channel.size();
+        ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        while (in.remaining() >= HEADER_SIZE) {
+            int start = in.position();
+            int length = in.getInt();
+            if (length < 9 || in.remaining() < length + TRAILER_SIZE) {
+                in.position(start);
+                break;
+            }
+            crc.reset();
+            ByteBuffer body = in.slice();
+            body.limit(length);
+            crc.update(body);
+            in.position(start + HEADER_SIZE + length);
+            if ((int)crc.getValue() != in.getInt()) {
+                in.position(start);
+                break;
+            }
+            in.position(start + HEADER_SIZE);
+            long recordSequence = in.getLong();
+            byte type = in.get();
+            if (recordSequence > afterSequence) {
+                apply(type, in, replayer);
+                applied++;
+                sequence = recordSequence;
+            }
+            in.position(start + HEADER_SIZE + length + TRAILER_SIZE);
+        }
+        if (in.position() < size) {
+            System.out.println("Journal truncated after " + in.position() + " of " + size + " bytes");
+            channel.truncate(in.position());
+        }
+        channel.position(in.position());
+        return applied;
+    }
+
+    void logAddRoom(HotelImpl.Room room) throws IOException {
+        begin(ADD_ROOM);
+        record.putInt(room.getRoomNumber()).putDouble(room.getPrice());
+        putString(room.getRoomType());
+        putString(room.getCapacity());
+        putString(room.getFacilities());
+        end();
+    }
+
+    void logRemoveRoom(int roomNumber) throws IOException {
+        begin(REMOVE_ROOM);
+        record.putInt(roomNumber);
+        end();
+    }
+
+    void logAddGuest(HotelImpl.Guest guest) throws IOException {
+        begin(ADD_GUEST);
+        boolean isVIP = guest instanceof HotelImpl.VIPGuest;
+        record.putInt(guest.getGuestID()).putLong(guest.getDateJoin().toEpochDay()).put((byte)(isVIP ? 1 : 0));
+        if (isVIP) {
+            HotelImpl.VIPGuest vGuest = (HotelImpl.VIPGuest)guest;
+            record.putLong(vGuest.getVIPstartDate().toEpochDay()).putLong(vGuest.getVIPexpiryDate().toEpochDay());
+        }
+        putString(guest.getFName());
+        putString(guest.getLName());
+        end();
+    }
+
+    void logRemoveGuest(int guestID) throws IOException {
+        begin(REMOVE_GUEST);
+        record.putInt(guestID);
+        end();
+    }
+
+    void logBooking(HotelImpl.Booking booking) throws IOException {
+        begin(BOOK);
+        putBooking(booking);
+        end();
+    }
+
+    /**
+     * Log the bookings of bookRooms as one record
+     */
+    void logBookings(HotelImpl.Booking[] group) throws IOException {
+        begin(BOOK_GROUP);
+        record.putInt(group.length);
+        for (HotelImpl.Booking booking : group) {
+            putBooking(booking);
+        }
+        end();
+    }
+
+    /**
+     * @param actualCheckoutDate the day the guest left, which may be before the booked check-out
+     */
+    void logCheckOut(int bookingID, LocalDate actualCheckoutDate) throws IOException {
+        begin(CHECK_OUT);
+        record.putInt(bookingID).putLong(actualCheckoutDate.toEpochDay());
+        end();
+    }
+
+    /**
+     * @param refundDate the date of the refund payment, or null if there was no refund
+     * @throws IOException if the change is to be forced and cannot be; it is not logged then
+     */
+    void logCancel(int bookingID, LocalDate refundDate) throws IOException {
+        begin(CANCEL);
+        record.putInt(bookingID).put((byte)(refundDate == null ? 0 : 1))
+            .putLong(refundDate == null ? 0 : refundDate.toEpochDay());
+        end();
+    }
+
+    /**
+     * Returns the sequence number of the last record logged or replayed
+     */
+    synchronized long getSequence() {return sequence;}
+
+    /**
+     * Returns the size of the journal file, including changes not yet written
+     */
+    synchronized long size() throws IOException {
+        return channel.size() + pending.position();
+    }
+
+    /**
+     * Write and force every buffered change to disk
+     *
+     * @throws IOException if writing fails; the changes stay buffered
+     */
+    void sync() throws IOException {
+        synchronized (flushLock) {
+            ByteBuffer batch;
+            synchronized (this) {
+                if (pending.position() == 0) {
+                    return;
+                }
+                batch = pending;
+                pending = ByteBuffer.allocate(batch.capacity());
+            }
+            batch.flip();
+            try {
+                while (batch.hasRemaining()) {
+                    channel.write(batch);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                synchronized (this) {
+                    // Keep the unwritten changes ahead of anything logged meanwhile
+                    ByteBuffer merged = ByteBuffer.allocate(batch.remaining() + pending.capacity());
+                    pending.flip();
+                    merged.put(batch).put(pending);
+                    pending = merged;
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Drop every record, once the changes have been saved in a snapshot
+     *
+     * @throws IOException if the file cannot be truncated
+     */
+    void truncate() throws IOException {
+        synchronized (flushLock) {
+            sync();
+            channel.truncate(0);
+            channel.position(0);
+            channel.force(true);
+        }
+    }
+
+    public void close() throws IOException {
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        sync();
+        channel.close();
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    private void begin(byte type) {
+        record.clear();
+        record.position(HEADER_SIZE + 8);
+        record.put(type);
+    }
+
+    private void end() throws IOException {
+        int length = record.position() - HEADER_SIZE;
+        long recordSequence;
+        synchronized (this) {
+            recordSequence = ++sequence;
+            record.putLong(HEADER_SIZE, sequence);
+            record.putInt(0, length);
+            crc.reset();
+            crc.update(record.array(), HEADER_SIZE, length);
+            record.putInt((int)crc.getValue());
+            record.flip();
+            if (pending.remaining() < record.remaining()) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + record.remaining()));
+                pending.flip();
+                grown.put(pending);
+                pending = grown;
+            }
+            pending.put(record);
+        }
+        if (syncIntervalMillis == 0) {
+            commit(recordSequence);
+        }
+    }
+
+    /**
+     * Force the record just logged, or drop it again if that fails. Only the
+     * one writer of a journal without a flusher logs, so it is the only record
+     * pending.
+     */
+    private void commit(long recordSequence) throws IOException {
+        synchronized (flushLock) {
+            long end = -1;
+            try {
+                end = channel.position();
+                sync();
+            } catch (IOException e) {
+                synchronized (this) {
+                    pending.clear();
+                    sequence = recordSequence - 1;
+                }
+                if (end >= 0) {
+                    try {
+                        // Cut off whatever part of the record reached the file
+                        channel.truncate(end);
+                        channel.position(end);
+                    } catch (IOException truncateFailure) {
+                        e.addSuppressed(truncateFailure);
+                    }
+                }
+                throw e;
+            }
+        }
+    }
+
+    private void putBooking(HotelImpl.Booking booking) {
+        reserve(BOOKING_SIZE);
+        record.putInt(booking.getId()).putInt(booking.getGuestID()).putInt(booking.getRoomNumber())
+            .putLong(booking.getBookingDay())
+            .putLong(booking.getCheckinDay())
+            .putLong(booking.getCheckoutDay())
+            .putDouble(booking.getTotalAmount());
+    }
+
+    private void putString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        reserve(bytes.length + 4);
+        record.putInt(bytes.length).put(bytes);
+    }
+
+    /**
+     * Grow the record buffer to fit more bytes and the trailer
+     */
+    private void reserve(int bytes) {
+        if (record.remaining() < bytes + TRAILER_SIZE) {
+            ByteBuffer grown = ByteBuffer.allocate(record.capacity() + bytes + 256);
+            record.flip();
+            grown.put(record);
+            record = grown;
+        }
+    }
+
+    private static HotelImpl.Booking getBooking(ByteBuffer in) {
+        return new HotelImpl.Booking(in.getInt(), in.getInt(), in.getInt(), in.getLong(), in.getLong(), in.getLong(), in.getDouble());
+    }
+
+    private static String getString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void apply(byte type, ByteBuffer in, Replayer replayer) {
+        switch (type) {
+            case ADD_ROOM: {
+                int roomNumber = in.getInt();
+                double price = in.getDouble();
+                String roomType = getString(in);
+                replayer.addRoom(new HotelImpl.Room(roomNumber, roomType, price, getString(in), getString(in)));
+                break;
+            }
+            case REMOVE_ROOM: replayer.removeRoom(in.getInt()); break;
+            case ADD_GUEST: {
+                int guestID = in.getInt();
+                LocalDate dateJoin = LocalDate.ofEpochDay(in.getLong());
+                if (in.get() != 0) {
+                    LocalDate start = LocalDate.ofEpochDay(in.getLong());
+                    LocalDate expiry = LocalDate.ofEpochDay(in.getLong());
+                    replayer.addGuest(new HotelImpl.VIPGuest(guestID, getString(in), getString(in), dateJoin, start, expiry));
+                } else {
+                    replayer.addGuest(new HotelImpl.Guest(guestID, getString(in), getString(in), dateJoin));
+                }
+                break;
+            }
+            case REMOVE_GUEST: replayer.removeGuest(in.getInt()); break;
+            case BOOK: replayer.book(getBooking(in)); break;
+            case BOOK_GROUP:
+                for (int count = in.getInt(); count > 0; count--) {
+                    replayer.book(getBooking(in));
+                }
+                break;
+            case CHECK_OUT: replayer.checkOut(in.getInt(), LocalDate.ofEpochDay(in.getLong())); break;
+            case CANCEL: {
+                int bookingID = in.getInt();
+                boolean refunded = in.get() != 0;
+                long refundDay = in.getLong();
+                replayer.cancel(bookingID, refunded ? LocalDate.ofEpochDay(refundDay) : null);
+                break;
+            }
+            default: throw new IllegalStateException("Unknown journal record type " + type);
+        }
+    }
+}
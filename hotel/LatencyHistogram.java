@@ -0,0 +1,84 @@
+package hotel;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts latencies in buckets that grow with the value: every power of two
+ * is split into 8 buckets, so any percentile is known to within 12.5%
+ * across the whole range from nanoseconds to hours, in a fixed 4 KB.
+ * Recording is one increment and never blocks.
+ */
+class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(64 * SUB_BUCKETS);
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    long getCount() {
+        long count = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    long getMax() {return max.get();}
+
+    /**
+     * Returns a latency that the given share of the recorded latencies do not exceed
+     *
+     * @param percentile    from 0 to 100
+     * @return              the highest value of the bucket holding that percentile, 0 if nothing was recorded
+     */
+    long getPercentile(double percentile) {
+        long[] snapshot = new long[counts.length()];
+        long count = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long)Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highestValueOf(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Values below 8 get a bucket each; above that, the top three bits
+     * after the highest set bit pick the bucket within its power of two
+     */
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int)value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int)(value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + sub;
+    }
+
+    static long highestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = (bucket >>> SUB_BUCKET_BITS) + SUB_BUCKET_BITS - 1;
+        long lowest = (long)(SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1))) << (exponent - SUB_BUCKET_BITS);
+        return lowest + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
@@ -0,0 +1,34 @@
+package hotel;
+
+/**
+ * How long loading one data file took
+ */
+public class LoadStats {
+    private String fileName;
+    private long records;
+    private long nanos;
+
+    public String getFileName() {return fileName;}
+    public long getRecords() {return records;}
+    public double getMillis() {return nanos / 1e6;}
+
+    LoadStats(String fileName, long records, long nanos) {
+        this.fileName = fileName;
+        this.records = records;
+        this.nanos = nanos;
+    }
+
+    /**
+     * Returns the number of records loaded per second
+     *
+     * @return  the load rate
+     */
+    public double getRecordsPerSecond() {
+        return nanos == 0 ? 0 : records * 1e9 / nanos;
+    }
+
+    public String toString() {
+        return fileName + ": " + records + " records in " + String.format("%.1f", getMillis()) + " ms ("
+            + String.format("%.0f", getRecordsPerSecond()) + " records/s)";
+    }
+}
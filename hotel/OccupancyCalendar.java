@@ -0,0 +1,103 @@
+package hotel;
+import java.util.Arrays;
+import java.util.EnumMap;
+
+/**
+ * Groups the room schedules by room type, so that one range query
+ * checks the occupancy bitmaps of every room of a type in turn
+ * without looking at any individual booking.
+ */
+class OccupancyCalendar {
+    private EnumMap<RoomType, TypeGroup> groups = new EnumMap<>(RoomType.class);
+
+    /**
+     * Add a room to the group of its room type
+     *
+     * @param roomNumber  the room number
+     * @param roomType    the room type
+     * @param schedule    the booking schedule of the room
+     */
+    void addRoom(int roomNumber, RoomType roomType, RoomSchedule schedule) {
+        TypeGroup group = groups.get(roomType);
+        if (group == null) {
+            group = new TypeGroup();
+            groups.put(roomType, group);
+        }
+        group.add(roomNumber, schedule);
+    }
+
+    /**
+     * Remove a room from the group of its room type
+     *
+     * @param roomNumber  the room number
+     * @param roomType    the room type
+     */
+    void removeRoom(int roomNumber, RoomType roomType) {
+        TypeGroup group = groups.get(roomType);
+        if (group != null) {
+            group.remove(roomNumber);
+        }
+    }
+
+    /**
+     * Returns the rooms of one type that are free for every night of [checkin, checkout)
+     *
+     * @param roomType  a room type
+     * @param checkin   the check-in epoch day
+     * @param checkout  the check-out epoch day
+     * @return          the free room numbers, in the order the rooms were added
+     */
+    int[] freeRooms(RoomType roomType, long checkin, long checkout) {
+        TypeGroup group = groups.get(roomType);
+        if (group == null) {
+            return new int[0];
+        }
+        int[] free = new int[group.size];
+        int count = 0;
+        for (int i = 0; i < group.size; i++) {
+            if (group.schedules[i].isFree(checkin, checkout)) {
+                free[count++] = group.roomNumbers[i];
+            }
+        }
+        return Arrays.copyOf(free, count);
+    }
+
+    /**
+     * Returns the number of rooms of one type, which is what freeRooms looks at
+     */
+    int roomCount(RoomType roomType) {
+        TypeGroup group = groups.get(roomType);
+        return group == null ? 0 : group.size;
+    }
+
+    /**
+     * The rooms of one room type, kept in parallel arrays
+     */
+    private static class TypeGroup {
+        private int[] roomNumbers = new int[8];
+        private RoomSchedule[] schedules = new RoomSchedule[8];
+        private int size = 0;
+
+        void add(int roomNumber, RoomSchedule schedule) {
+            if (size == roomNumbers.length) {
+                roomNumbers = Arrays.copyOf(roomNumbers, size * 2);
+                schedules = Arrays.copyOf(schedules, size * 2);
+            }
+            roomNumbers[size] = roomNumber;
+            schedules[size] = schedule;
+            size++;
+        }
+
+        void remove(int roomNumber) {
+            for (int i = 0; i < size; i++) {
+                if (roomNumbers[i] == roomNumber) {
+                    System.arraycopy(roomNumbers, i + 1, roomNumbers, i, size - i - 1);
+                    System.arraycopy(schedules, i + 1, schedules, i, size - i - 1);
+                    size--;
+                    schedules[size] = null;
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package hotel;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * How often one hotel operation ran, how often it failed, how many rows it
+ * looked at and how long it took
+ */
+public class OperationMetrics implements OperationMetricsMBean {
+    private final String name;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder rowsScanned = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    OperationMetrics(String name) {
+        this.name = name;
+    }
+
+    void record(long nanos, long rows, boolean succeeded) {
+        calls.increment();
+        if (!succeeded) {
+            failures.increment();
+        }
+        if (rows != 0) {
+            rowsScanned.add(rows);
+        }
+        totalNanos.add(nanos);
+        latency.record(nanos);
+    }
+
+    public String getName() {return name;}
+
+    public long getCalls() {return calls.sum();}
+
+    public long getFailures() {return failures.sum();}
+
+    public long getRowsScanned() {return rowsScanned.sum();}
+
+    public double getMeanMicros() {
+        long count = calls.sum();
+        return count == 0 ? 0 : totalNanos.sum() / 1e3 / count;
+    }
+
+    public double getP50Micros() {return getPercentileMicros(50);}
+
+    public double getP90Micros() {return getPercentileMicros(90);}
+
+    public double getP99Micros() {return getPercentileMicros(99);}
+
+    public double getP999Micros() {return getPercentileMicros(99.9);}
+
+    public double getMaxMicros() {return latency.getMax() / 1e3;}
+
+    /**
+     * Returns the latency the given share of the calls did not exceed, within 12.5%
+     *
+     * @param percentile    from 0 to 100
+     * @return              the latency in microseconds
+     */
+    public double getPercentileMicros(double percentile) {
+        return latency.getPercentile(percentile) / 1e3;
+    }
+}
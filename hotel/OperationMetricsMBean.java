@@ -0,0 +1,24 @@
+package hotel;
+
+/**
+ * The JMX view of the metrics of one hotel operation. Latencies are in microseconds.
+ */
+public interface OperationMetricsMBean {
+    long getCalls();
+
+    long getFailures();
+
+    long getRowsScanned();
+
+    double getMeanMicros();
+
+    double getP50Micros();
+
+    double getP90Micros();
+
+    double getP99Micros();
+
+    double getP999Micros();
+
+    double getMaxMicros();
+}
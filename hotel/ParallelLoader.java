@@ -0,0 +1,144 @@
+package hotel;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Parses a large data file on several threads. The file is memory-mapped
+ * in chunks that start and end on line boundaries, every chunk is parsed
+ * by its own task, and the records are joined back in file order.
+ */
+class ParallelLoader {
+    private static final long MIN_CHUNK_SIZE = 1 << 20;
+    // One map call takes at most Integer.MAX_VALUE bytes; this leaves room to finish the last line
+    private static final long MAX_CHUNK_SIZE = 1 << 30;
+
+    /**
+     * Turns the current line of a reader into a record
+     *
+     * @param <T> the type of the records
+     */
+    interface RowParser<T> {
+        T parse(CsvReader reader);
+    }
+
+    /**
+     * The records of a file together with how long loading them took
+     *
+     * @param <T> the type of the records
+     */
+    static class Loaded<T> {
+        private ArrayList<T> records;
+        private LoadStats stats;
+
+        ArrayList<T> getRecords() {return records;}
+        LoadStats getStats() {return stats;}
+
+        Loaded(String fileName, ArrayList<T> records, long startNanos) {
+            this.records = records;
+            this.stats = new LoadStats(fileName, records.size(), System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Parse every line of a file, one chunk per task
+     *
+     * @param fileName  the text file
+     * @param parser    turns one line into a record
+     * @param pool      the pool that parses the chunks
+     * @return          the records in file order
+     * @throws IOException if the file cannot be read
+     */
+    static <T> Loaded<T> load(String fileName, RowParser<T> parser, ForkJoinPool pool) throws IOException {
+        long startNanos = System.nanoTime();
+        try (FileChannel channel = new FileInputStream(fileName).getChannel()) {
+            long size = channel.size();
+            long chunkSize = Math.min(MAX_CHUNK_SIZE, Math.max(MIN_CHUNK_SIZE, size / (pool.getParallelism() * 4L)));
+            List<ForkJoinTask<ArrayList<T>>> tasks = new ArrayList<>();
+            long start = 0;
+            while (start < size) {
+                long end = lineStartAfter(channel, Math.min(size, start + chunkSize) - 1, size);
+                if (end - start > Integer.MAX_VALUE) {
+                    throw new IOException(fileName + " has a line too long to map");
+                }
+                MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                tasks.add(pool.submit(() -> parseChunk(chunk, parser)));
+                start = end;
+            }
+            int total = 0;
+            List<ArrayList<T>> parts = new ArrayList<>();
+            for (ForkJoinTask<ArrayList<T>> task : tasks) {
+                ArrayList<T> part = task.join();
+                parts.add(part);
+                total += part.size();
+            }
+            ArrayList<T> records = new ArrayList<>(total);
+            for (ArrayList<T> part : parts) {
+                records.addAll(part);
+            }
+            return new Loaded<>(fileName, records, startNanos);
+        }
+    }
+
+    /**
+     * Parse every line of a file on the calling thread
+     *
+     * @param fileName  the text file
+     * @param parser    turns one line into a record
+     * @return          the records in file order
+     * @throws IOException if the file cannot be read
+     */
+    static <T> Loaded<T> load(String fileName, RowParser<T> parser) throws IOException {
+        long startNanos = System.nanoTime();
+        try (CsvReader reader = new CsvReader(fileName)) {
+            ArrayList<T> records = new ArrayList<>();
+            while (reader.nextLine()) {
+                records.add(parser.parse(reader));
+            }
+            return new Loaded<>(fileName, records, startNanos);
+        }
+    }
+
+    private static <T> ArrayList<T> parseChunk(ByteBuffer chunk, RowParser<T> parser) {
+        CsvReader reader = new CsvReader(chunk);
+        ArrayList<T> records = new ArrayList<>();
+        try {
+            while (reader.nextLine()) {
+                records.add(parser.parse(reader));
+            }
+        } catch (IOException e) {
+            // A chunk reader never touches the file itself
+            throw new UncheckedIOException(e);
+        }
+        return records;
+    }
+
+    /**
+     * Returns the offset just after the first newline at or after a position,
+     * or the file size if there is none
+     */
+    private static long lineStartAfter(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        while (position < size) {
+            probe.clear();
+            int read = channel.read(probe, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (probe.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+}
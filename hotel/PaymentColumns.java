@@ -0,0 +1,183 @@
+package hotel;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/**
+ * The payments table kept in primitive columns instead of one object per
+ * payment: the date as an epoch day, the guest ID, the amount in whole
+ * cents and the pay reason as a two-byte code into a dictionary. A payment
+ * takes 18 bytes plus 4 for the index by day, and a scan over one column
+ * reads consecutive memory.
+ *
+ * Payments are only ever added, so a row number stays valid for good.
+ * Reading a row hands out a small view that answers the Payment accessors
+ * from the columns.
+ */
+class PaymentColumns implements Iterable<HotelImpl.Payment> {
+    private int[] days;
+    private int[] guestIDs;
+    private long[] cents;
+    private short[] reasons;
+    private int size = 0;
+    private ArrayList<String> reasonNames = new ArrayList<>();
+    private HashMap<String, Integer> reasonCodes = new HashMap<>();
+    private IntHashMap<IntList> rowsByDay = new IntHashMap<>();
+
+    PaymentColumns() {
+        this(16);
+    }
+
+    PaymentColumns(int expectedSize) {
+        int capacity = Math.max(16, expectedSize);
+        days = new int[capacity];
+        guestIDs = new int[capacity];
+        cents = new long[capacity];
+        reasons = new short[capacity];
+    }
+
+    /**
+     * Add a payment as a new row
+     *
+     * @param payment   the payment; its amount is rounded to the cent
+     */
+    void add(HotelImpl.Payment payment) {
+        add(payment.getDate().toEpochDay(), payment.getGuestID(), HotelSnapshot.toCents(payment.getAmount()),
+            payment.getPayReason());
+    }
+
+    void add(long epochDay, int guestID, long amountCents, String payReason) {
+        if (size == days.length) {
+            int capacity = size * 2;
+            days = Arrays.copyOf(days, capacity);
+            guestIDs = Arrays.copyOf(guestIDs, capacity);
+            cents = Arrays.copyOf(cents, capacity);
+            reasons = Arrays.copyOf(reasons, capacity);
+        }
+        days[size] = (int)epochDay;
+        guestIDs[size] = guestID;
+        cents[size] = amountCents;
+        reasons[size] = code(payReason);
+        IntList rows = rowsByDay.get((int)epochDay);
+        if (rows == null) {
+            rows = new IntList();
+            rowsByDay.put((int)epochDay, rows);
+        }
+        rows.add(size);
+        size++;
+    }
+
+    int size() {return size;}
+
+    int getDay(int row) {return days[row];}
+    int getGuestID(int row) {return guestIDs[row];}
+    long getCents(int row) {return cents[row];}
+    String getPayReason(int row) {return reasonNames.get(reasons[row] & 0xffff);}
+
+    /**
+     * Returns a view of one row
+     *
+     * @param row   the row number, from 0 to size() - 1
+     * @return      a payment answering its accessors from the row
+     */
+    HotelImpl.Payment get(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+        }
+        return new View(row);
+    }
+
+    /**
+     * Iterates over the payments in the order they were added
+     */
+    public Iterator<HotelImpl.Payment> iterator() {
+        final int end = size;
+        return new Iterator<HotelImpl.Payment>() {
+            private int next = 0;
+
+            public boolean hasNext() {return next < end;}
+
+            public HotelImpl.Payment next() {
+                if (next >= end) {
+                    throw new NoSuchElementException();
+                }
+                return new View(next++);
+            }
+        };
+    }
+
+    /**
+     * Visit the payments made on one day, in the order they were added
+     *
+     * @param epochDay  the day
+     * @param action    receives a view of every payment of the day
+     */
+    void forEachOn(long epochDay, Consumer<? super HotelImpl.Payment> action) {
+        IntList rows = rowsByDay.get((int)epochDay);
+        if (rows == null) {
+            return;
+        }
+        for (int i = 0; i < rows.size(); i++) {
+            action.accept(new View(rows.get(i)));
+        }
+    }
+
+    /**
+     * Returns a copy of the table without the payments made before a day
+     *
+     * @param epochDay  the first day to keep
+     * @return          the payments made on or after that day, in the order they were added
+     */
+    PaymentColumns from(long epochDay) {
+        PaymentColumns kept = new PaymentColumns();
+        for (int row = 0; row < size; row++) {
+            if (days[row] >= epochDay) {
+                kept.add(days[row], guestIDs[row], cents[row], getPayReason(row));
+            }
+        }
+        return kept;
+    }
+
+    private short code(String payReason) {
+        Integer code = reasonCodes.get(payReason);
+        if (code == null) {
+            if (reasonNames.size() == 1 << 16) {
+                throw new IllegalArgumentException("At most 65536 different pay reasons are supported");
+            }
+            code = reasonNames.size();
+            reasonCodes.put(payReason, code);
+            reasonNames.add(payReason);
+        }
+        return (short)(int)code;
+    }
+
+    /**
+     * A payment read from one row of the columns
+     */
+    private class View extends HotelImpl.Payment {
+        private final int row;
+
+        View(int row) {
+            this.row = row;
+        }
+
+        @Override
+        public LocalDate getDate() {return LocalDate.ofEpochDay(days[row]);}
+
+        @Override
+        int getDay() {return days[row];}
+
+        @Override
+        public int getGuestID() {return guestIDs[row];}
+
+        @Override
+        public double getAmount() {return cents[row] / 100.0;}
+
+        @Override
+        public String getPayReason() {return PaymentColumns.this.getPayReason(row);}
+    }
+}
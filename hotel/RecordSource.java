@@ -0,0 +1,63 @@
+package hotel;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.function.Consumer;
+
+/**
+ * Hands the records of a hotel to a callback instead of printing them.
+ * Each method visits the same records, in the same order, as the
+ * display method of the same name.
+ *
+ * The write methods send the same records to a RecordWriter, as the
+ * display methods print them, and flush it.
+ */
+public interface RecordSource {
+    void forEachRoom(Consumer<? super HotelImpl.Room> action);
+
+    void forEachGuest(Consumer<? super HotelImpl.Guest> action);
+
+    void forEachBooking(Consumer<? super HotelImpl.Booking> action);
+
+    void forEachPayment(Consumer<? super HotelImpl.Payment> action);
+
+    void forEachGuestBooking(int guestID, Consumer<? super HotelImpl.Booking> action);
+
+    void forEachBookingOn(LocalDate thisDate, Consumer<? super HotelImpl.Booking> action);
+
+    void forEachPaymentOn(LocalDate thisDate, Consumer<? super HotelImpl.Payment> action);
+
+    default void writeAllRooms(RecordWriter out) throws IOException {
+        forEachRoom(out);
+        out.flush();
+    }
+
+    default void writeAllGuests(RecordWriter out) throws IOException {
+        forEachGuest(out);
+        out.flush();
+    }
+
+    default void writeAllBookings(RecordWriter out) throws IOException {
+        forEachBooking(out);
+        out.flush();
+    }
+
+    default void writeAllPayments(RecordWriter out) throws IOException {
+        forEachPayment(out);
+        out.flush();
+    }
+
+    default void writeGuestBooking(int guestID, RecordWriter out) throws IOException {
+        forEachGuestBooking(guestID, out);
+        out.flush();
+    }
+
+    default void writeBookingsOn(LocalDate thisDate, RecordWriter out) throws IOException {
+        forEachBookingOn(thisDate, out);
+        out.flush();
+    }
+
+    default void writePaymentsOn(LocalDate thisDate, RecordWriter out) throws IOException {
+        forEachPaymentOn(thisDate, out);
+        out.flush();
+    }
+}
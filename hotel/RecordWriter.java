@@ -0,0 +1,289 @@
+package hotel;
+import java.io.Flushable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.text.DecimalFormatSymbols;
+import java.time.LocalDate;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/**
+ * Writes hotel records one per line, in the same text as their toString()
+ * and the data files, to an Appendable or a byte channel.
+ *
+ * The lines are built in one reusable buffer that goes out in blocks of
+ * about 64 KB, and numbers and dates are written digit by digit instead
+ * of through String.format and LocalDate.toString, so writing a record
+ * makes next to no garbage. A writer is a Consumer, so it can be passed
+ * straight to the forEach methods of a RecordSource.
+ *
+ * Writing does not throw: the first IOException stops the writer and is
+ * thrown by the next flush(). Call flush() when done, or nothing may have
+ * been written yet.
+ */
+public class RecordWriter implements Consumer<Object>, Flushable {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private final Appendable out;
+    private final WritableByteChannel channel;
+    private final CharsetEncoder encoder;
+    private final StringBuilder buffer = new StringBuilder(BUFFER_SIZE + 256);
+    private char[] chars;
+    private ByteBuffer bytes;
+    private IOException error;
+
+    // String.format("%.2f") follows the default locale; digits are only written directly for the usual symbols
+    private final boolean plainNumbers;
+
+    /**
+     * Create a writer that appends to a Writer, StringBuilder, PrintStream or any other Appendable
+     *
+     * @param out   receives the text
+     */
+    public RecordWriter(Appendable out) {
+        this.out = out;
+        this.channel = null;
+        this.encoder = null;
+        this.plainNumbers = hasPlainNumbers();
+    }
+
+    /**
+     * Create a writer that encodes the text in the default charset, like the saved data files
+     *
+     * @param channel   receives the bytes, e.g. a FileChannel or a socket
+     */
+    public RecordWriter(WritableByteChannel channel) {
+        this(channel, Charset.defaultCharset());
+    }
+
+    /**
+     * Create a writer that encodes the text in a charset, replacing characters it cannot encode
+     *
+     * @param channel   receives the bytes, e.g. a FileChannel or a socket
+     * @param charset   the charset of the bytes
+     */
+    public RecordWriter(WritableByteChannel channel, Charset charset) {
+        this.out = null;
+        this.channel = channel;
+        this.encoder = charset.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.chars = new char[BUFFER_SIZE + 256];
+        this.bytes = ByteBuffer.allocate((int)(chars.length * encoder.maxBytesPerChar()));
+        this.plainNumbers = hasPlainNumbers();
+    }
+
+    /**
+     * Write one record of any kind, or the toString() of anything else
+     */
+    public void accept(Object record) {
+        if (record instanceof HotelImpl.Booking) {
+            write((HotelImpl.Booking)record);
+        } else if (record instanceof HotelImpl.Payment) {
+            write((HotelImpl.Payment)record);
+        } else if (record instanceof HotelImpl.Guest) {
+            write((HotelImpl.Guest)record);
+        } else if (record instanceof HotelImpl.Room) {
+            write((HotelImpl.Room)record);
+        } else {
+            buffer.append(record);
+            endLine();
+        }
+    }
+
+    public void write(HotelImpl.Room room) {
+        buffer.append(room.getRoomNumber()).append(',').append(room.getRoomType()).append(',');
+        appendAmount(room.getPrice());
+        buffer.append(',').append(room.getCapacity()).append(',').append(room.getFacilities());
+        endLine();
+    }
+
+    public void write(HotelImpl.Guest guest) {
+        buffer.append(guest.getGuestID()).append(',').append(guest.getFName()).append(',')
+            .append(guest.getLName()).append(',');
+        appendDate(guest.getDateJoin().toEpochDay());
+        if (guest instanceof HotelImpl.VIPGuest) {
+            HotelImpl.VIPGuest vip = (HotelImpl.VIPGuest)guest;
+            buffer.append(',');
+            appendDate(vip.getVIPstartDate().toEpochDay());
+            buffer.append(',');
+            appendDate(vip.getVIPexpiryDate().toEpochDay());
+        }
+        endLine();
+    }
+
+    public void write(HotelImpl.Booking booking) {
+        buffer.append(booking.getId()).append(',').append(booking.getGuestID()).append(',')
+            .append(booking.getRoomNumber()).append(',');
+        appendDate(booking.getBookingDay());
+        buffer.append(',');
+        appendDate(booking.getCheckinDay());
+        buffer.append(',');
+        appendDate(booking.getCheckoutDay());
+        buffer.append(',');
+        appendAmount(booking.getTotalAmount());
+        endLine();
+    }
+
+    public void write(HotelImpl.Payment payment) {
+        appendDate(payment.getDay());
+        // StringBuilder.append(double) writes the same digits as Double.toString
+        buffer.append(',').append(payment.getGuestID()).append(',').append(payment.getAmount())
+            .append(',').append(payment.getPayReason());
+        endLine();
+    }
+
+    /**
+     * Write out everything buffered
+     *
+     * @throws IOException if this or any earlier write failed
+     */
+    public void flush() throws IOException {
+        if (error == null) {
+            try {
+                drain(true);
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Write records to the console through one writer, for the display methods
+     *
+     * @param report    hands the records to the writer
+     */
+    static void display(Consumer<? super RecordWriter> report) {
+        RecordWriter out = new RecordWriter(System.out);
+        report.accept(out);
+        try {
+            out.flush();
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    private void endLine() {
+        buffer.append(LINE_SEPARATOR);
+        if (buffer.length() >= BUFFER_SIZE && error == null) {
+            try {
+                drain(false);
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+        if (error != null) {
+            buffer.setLength(0);
+        }
+    }
+
+    private void drain(boolean endOfInput) throws IOException {
+        if (out != null) {
+            out.append(buffer);
+            buffer.setLength(0);
+            return;
+        }
+        int length = buffer.length();
+        if (chars.length < length) {
+            chars = new char[length];
+        }
+        buffer.getChars(0, length, chars, 0);
+        CharBuffer in = CharBuffer.wrap(chars, 0, length);
+        CoderResult result;
+        do {
+            result = encoder.encode(in, bytes, endOfInput);
+            writeBytes();
+        } while (result.isOverflow());
+        if (endOfInput) {
+            while (encoder.flush(bytes).isOverflow()) {
+                writeBytes();
+            }
+            writeBytes();
+            encoder.reset();
+        }
+        // Keep a high surrogate whose pair is still to come
+        buffer.setLength(0);
+        buffer.append(chars, in.position(), in.remaining());
+    }
+
+    private void writeBytes() throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        bytes.clear();
+    }
+
+    /**
+     * Append an epoch day as yyyy-MM-dd, as LocalDate.toString does
+     */
+    private void appendDate(long epochDay) {
+        // Days to civil dates, counting years from March so that the leap day comes last
+        long z = epochDay + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shiftedMonth = (5 * dayOfYear + 2) / 153;
+        long day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+        long month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        if (year < 0 || year > 9999) {
+            buffer.append(LocalDate.ofEpochDay(epochDay));
+            return;
+        }
+        appendDigits(year, 4);
+        buffer.append('-');
+        appendDigits(month, 2);
+        buffer.append('-');
+        appendDigits(day, 2);
+    }
+
+    private void appendDigits(long value, int width) {
+        for (long scale = width == 4 ? 1000 : 10; scale > 0; scale /= 10) {
+            buffer.append((char)('0' + value / scale % 10));
+        }
+    }
+
+    /**
+     * Append an amount as String.format("%.2f") does
+     */
+    private void appendAmount(double amount) {
+        // Above 1e7 the product with 100 is too coarse to tell a tie from its neighbours
+        if (!plainNumbers || Double.isNaN(amount) || Double.isInfinite(amount) || Math.abs(amount) >= 1e7) {
+            buffer.append(String.format("%.2f", amount));
+            return;
+        }
+        double scaled = Math.abs(amount) * 100;
+        long cents = (long)scaled;
+        double fraction = scaled - cents;
+        if (Math.abs(fraction - 0.5) < 1e-6) {
+            // Too close to a tie to trust the product; round the shortest decimal half up like Formatter
+            cents = BigDecimal.valueOf(Math.abs(amount)).setScale(2, RoundingMode.HALF_UP).unscaledValue().longValue();
+        } else if (fraction > 0.5) {
+            cents++;
+        }
+        if (Double.doubleToRawLongBits(amount) < 0) {
+            buffer.append('-');
+        }
+        buffer.append(cents / 100).append('.');
+        appendDigits(cents % 100, 2);
+    }
+
+    private static boolean hasPlainNumbers() {
+        DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(Locale.getDefault(Locale.Category.FORMAT));
+        return symbols.getZeroDigit() == '0' && symbols.getDecimalSeparator() == '.' && symbols.getMinusSign() == '-';
+    }
+}
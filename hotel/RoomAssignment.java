@@ -0,0 +1,88 @@
+package hotel;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Picks which of the free rooms of a type bookOneRoom books.
+ *
+ * BEST_FIT, the default, books the room whose free gap around the stay
+ * is the tightest, so stays pack next to each other and the long free
+ * runs of other rooms stay whole for long stays. RANDOM spreads the
+ * bookings evenly instead, which leaves scattered short gaps behind.
+ */
+public interface RoomAssignment {
+
+    /**
+     * Books the room whose free gap around the stay is the smallest
+     */
+    RoomAssignment BEST_FIT = new BestFit(56);
+
+    /**
+     * Books any free room with equal chance
+     */
+    RoomAssignment RANDOM = (freeRooms, checkin, checkout, gaps) -> ThreadLocalRandom.current().nextInt(freeRooms.length);
+
+    /**
+     * Choose one of the free rooms
+     *
+     * @param freeRooms the rooms free for the whole stay, at least one; must not be changed
+     * @param checkin   the check-in epoch day
+     * @param checkout  the check-out epoch day
+     * @param gaps      tells how long each room stays free around the stay
+     * @return          the index in freeRooms of the room to book
+     */
+    int choose(int[] freeRooms, long checkin, long checkout, Gaps gaps);
+
+    /**
+     * The free nights of the rooms of a hotel
+     */
+    interface Gaps {
+        /**
+         * Returns how many free nights a room has right before a day, at most limit
+         */
+        int freeNightsBefore(int roomNumber, long day, int limit);
+
+        /**
+         * Returns how many free nights a room has from a day on, at most limit
+         */
+        int freeNightsAfter(int roomNumber, long day, int limit);
+    }
+
+    /**
+     * Best fit by the free nights next to the stay. A room whose gaps reach
+     * past the horizon counts as free for the whole horizon, so empty rooms
+     * come last. Of two equally tight rooms the one whose stay touches a
+     * neighbouring booking wins, then the first.
+     */
+    class BestFit implements RoomAssignment {
+        private final int horizon;
+
+        /**
+         * @param horizon   the most nights looked at on each side of the stay
+         */
+        public BestFit(int horizon) {
+            if (horizon < 1) {
+                throw new IllegalArgumentException("The horizon must be at least one night");
+            }
+            this.horizon = horizon;
+        }
+
+        public int choose(int[] freeRooms, long checkin, long checkout, Gaps gaps) {
+            int best = 0;
+            long bestScore = Long.MAX_VALUE;
+            for (int i = 0; i < freeRooms.length; i++) {
+                int before = gaps.freeNightsBefore(freeRooms[i], checkin, horizon);
+                int after = gaps.freeNightsAfter(freeRooms[i], checkout, horizon);
+                // The nights left free around the stay, then 1 if it touches no booking
+                long score = 2L * (before + after) + (before == 0 || after == 0 ? 0 : 1);
+                if (score < bestScore) {
+                    best = i;
+                    bestScore = score;
+                    if (score == 0) {
+                        break;
+                    }
+                }
+            }
+            return best;
+        }
+    }
+}
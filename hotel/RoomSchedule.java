@@ -0,0 +1,222 @@
+package hotel;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The bookings of a single room, ordered by check-in day, together
+ * with a bitmap of the nights the room is occupied.
+ * Dates are kept as epoch days and a stay covers the nights
+ * [checkin, checkout), so back-to-back stays do not overlap.
+ */
+class RoomSchedule {
+    // key = check-in epoch day in the high 32 bits, booking ID in the low 32 bits
+    private TreeMap<Long, HotelImpl.Booking> bookings = new TreeMap<>();
+    private long longestStay = 0;
+
+    // bit (day - 64 * firstWord) of nights is set when the room is occupied that night
+    private long firstWord = 0;
+    private long[] nights = new long[0];
+
+    /**
+     * Add a booking to this room's schedule
+     *
+     * @param booking  the booking to add
+     */
+    void add(HotelImpl.Booking booking) {
+        long checkin = booking.getCheckinDay();
+        long checkout = booking.getCheckoutDay();
+        if (checkout - checkin > longestStay) {
+            longestStay = checkout - checkin;
+        }
+        bookings.put(key(checkin, booking.getId()), booking);
+        mark(checkin, checkout, true);
+    }
+
+    /**
+     * Remove a booking from this room's schedule
+     *
+     * @param booking  the booking to remove
+     * @return         true if the booking was in the schedule
+     */
+    boolean remove(HotelImpl.Booking booking) {
+        long checkin = booking.getCheckinDay();
+        long checkout = booking.getCheckoutDay();
+        if (bookings.remove(key(checkin, booking.getId())) == null) {
+            return false;
+        }
+        mark(checkin, checkout, false);
+        // Imported data may hold overlapping stays, so put back the nights they still cover
+        for (HotelImpl.Booking other : overlapping(checkin, checkout)) {
+            mark(Math.max(checkin, other.getCheckinDay()),
+                Math.min(checkout, other.getCheckoutDay()), true);
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the room is free for every night of [checkin, checkout)
+     *
+     * @param checkin   the check-in epoch day
+     * @param checkout  the check-out epoch day
+     * @return          true if the room is free for the whole period
+     */
+    boolean isFree(long checkin, long checkout) {
+        if (checkin >= checkout) {
+            return true;
+        }
+        long from = Math.floorDiv(checkin, 64);
+        long to = Math.floorDiv(checkout - 1, 64);
+        long occupied = 0;
+        for (long w = Math.max(from, firstWord); w <= to && w < firstWord + nights.length; w++) {
+            long word = nights[(int)(w - firstWord)];
+            if (w == from) {
+                word &= -1L << (checkin - 64 * w);
+            }
+            if (w == to) {
+                word &= -1L >>> (63 - (checkout - 1 - 64 * w));
+            }
+            occupied |= word;
+        }
+        return occupied == 0;
+    }
+
+    /**
+     * Returns how many free nights come right before a day, looking back at most limit nights
+     *
+     * @param day   the epoch day, e.g. a check-in day
+     * @param limit the most nights counted
+     * @return      the free nights from day - 1 backwards, up to limit
+     */
+    int freeNightsBefore(long day, int limit) {
+        long lastNight = 64 * (firstWord + nights.length) - 1;
+        long night = day - 1;
+        int count = 0;
+        while (count < limit) {
+            if (night > lastNight) {
+                count += (int)Math.min(night - lastNight, limit);
+                night = lastNight;
+                continue;
+            }
+            long w = Math.floorDiv(night, 64);
+            if (w < firstWord) {
+                return limit;
+            }
+            int bit = (int)(night - 64 * w);
+            // Move this night to the top bit, so the leading zeros are the free nights before it
+            long word = nights[(int)(w - firstWord)] << (63 - bit);
+            if (word != 0) {
+                return Math.min(count + Long.numberOfLeadingZeros(word), limit);
+            }
+            count += bit + 1;
+            night -= bit + 1;
+        }
+        return limit;
+    }
+
+    /**
+     * Returns how many free nights come from a day on, looking ahead at most limit nights
+     *
+     * @param day   the epoch day, e.g. a check-out day
+     * @param limit the most nights counted
+     * @return      the free nights from day onwards, up to limit
+     */
+    int freeNightsAfter(long day, int limit) {
+        long firstNight = 64 * firstWord;
+        long night = day;
+        int count = 0;
+        while (count < limit) {
+            if (night < firstNight) {
+                count += (int)Math.min(firstNight - night, limit);
+                night = firstNight;
+                continue;
+            }
+            long w = Math.floorDiv(night, 64);
+            if (w >= firstWord + nights.length) {
+                return limit;
+            }
+            int bit = (int)(night - 64 * w);
+            // Move this night to the bottom bit, so the trailing zeros are the free nights from it
+            long word = nights[(int)(w - firstWord)] >>> bit;
+            if (word != 0) {
+                return Math.min(count + Long.numberOfTrailingZeros(word), limit);
+            }
+            count += 64 - bit;
+            night += 64 - bit;
+        }
+        return limit;
+    }
+
+    /**
+     * Returns the bookings of this room that share at least one night with [checkin, checkout)
+     *
+     * @param checkin   the check-in epoch day
+     * @param checkout  the check-out epoch day
+     * @return          the overlapping bookings, latest check-in first
+     */
+    ArrayList<HotelImpl.Booking> overlapping(long checkin, long checkout) {
+        ArrayList<HotelImpl.Booking> found = new ArrayList<>();
+        // Only bookings starting within longestStay days before checkin can reach into the period
+        Map<Long, HotelImpl.Booking> candidates =
+            bookings.subMap(key(checkin - longestStay, 0), false, key(checkout, 0), false).descendingMap();
+        for (HotelImpl.Booking booking : candidates.values()) {
+            if (booking.getCheckoutDay() > checkin) {
+                found.add(booking);
+            }
+        }
+        return found;
+    }
+
+    boolean isEmpty() {return bookings.isEmpty();}
+
+    /**
+     * Set or clear the bits of the nights [checkin, checkout), growing the bitmap as needed
+     */
+    private void mark(long checkin, long checkout, boolean occupied) {
+        if (checkin >= checkout) {
+            return;
+        }
+        long from = Math.floorDiv(checkin, 64);
+        long to = Math.floorDiv(checkout - 1, 64);
+        if (occupied) {
+            grow(from, to);
+        }
+        for (long w = Math.max(from, firstWord); w <= to && w < firstWord + nights.length; w++) {
+            long mask = -1L;
+            if (w == from) {
+                mask &= -1L << (checkin - 64 * w);
+            }
+            if (w == to) {
+                mask &= -1L >>> (63 - (checkout - 1 - 64 * w));
+            }
+            int i = (int)(w - firstWord);
+            nights[i] = occupied ? (nights[i] | mask) : (nights[i] & ~mask);
+        }
+    }
+
+    private void grow(long from, long to) {
+        if (nights.length == 0) {
+            firstWord = from;
+            nights = new long[(int)(to - from + 1)];
+            return;
+        }
+        long lastWord = firstWord + nights.length - 1;
+        if (from >= firstWord && to <= lastWord) {
+            return;
+        }
+        long newFirst = Math.min(from, firstWord);
+        long newLast = Math.max(to, lastWord);
+        // Leave some headroom at the end, since new bookings are mostly in the future
+        if (newLast > lastWord) {
+            newLast = Math.max(newLast, lastWord + nights.length / 2);
+        }
+        long[] grown = new long[(int)(newLast - newFirst + 1)];
+        System.arraycopy(nights, 0, grown, (int)(firstWord - newFirst), nights.length);
+        firstWord = newFirst;
+        nights = grown;
+    }
+
+    private static long key(long epochDay, int bookingID) {
+        return (epochDay << 32) | (bookingID & 0xffffffffL);
+    }
+}
@@ -0,0 +1,65 @@
+package hotel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Numbers the changes made to a hotel and hands out consistent read versions.
+ *
+ * Every change runs between beginWrite and endWrite and stamps all the
+ * records it adds or removes with the version beginWrite returned. Writers
+ * share the lock, so they never wait for each other. Opening a snapshot
+ * takes the lock exclusively for just long enough to read the counter,
+ * so that every change with a lower or equal version is complete and none
+ * with a higher one is visible. The snapshot is then read without locking.
+ */
+class VersionClock {
+    private final StampedLock lock = new StampedLock();
+    private final Lock writers = lock.asReadLock();
+    private final AtomicLong version = new AtomicLong();
+    // open snapshot version -> number of snapshots open at it
+    private final ConcurrentSkipListMap<Long, Integer> openSnapshots = new ConcurrentSkipListMap<>();
+
+    /**
+     * Start a change
+     *
+     * @return  the version to stamp the change with
+     */
+    long beginWrite() {
+        writers.lock();
+        return version.incrementAndGet();
+    }
+
+    void endWrite() {
+        writers.unlock();
+    }
+
+    /**
+     * Returns the latest complete version and keeps it readable until closeSnapshot
+     */
+    long openSnapshot() {
+        long stamp = lock.writeLock();
+        try {
+            long current = version.get();
+            openSnapshots.merge(current, 1, Integer::sum);
+            return current;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    void closeSnapshot(long snapshotVersion) {
+        openSnapshots.computeIfPresent(snapshotVersion, (v, count) -> count == 1 ? null : count - 1);
+    }
+
+    /**
+     * Returns the oldest version any open or future snapshot can read.
+     * Only valid between beginWrite and endWrite, while no snapshot can open.
+     */
+    long horizon() {
+        Map.Entry<Long, Integer> oldest = openSnapshots.firstEntry();
+        return oldest == null ? version.get() : oldest.getKey();
+    }
+}
@@ -0,0 +1,148 @@
+package hotel;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An append-only list of record versions that can be read as it was at
+ * any version of the hotel. A record is never changed in place: removing
+ * it only stamps its version with the hotel version that removed it, so
+ * a reader working at an older version still sees it.
+ *
+ * Removed versions that no open snapshot can see any more are dropped
+ * once they make up half of the list. While an open snapshot still sees
+ * them they are kept, and the list waits to be pruned again once the
+ * oldest snapshot has moved on.
+ *
+ * @param <T> the type of the records
+ */
+class VersionedLog<T> {
+    private static final long NOT_REMOVED = Long.MAX_VALUE;
+
+    /**
+     * One record together with the hotel versions that added and removed it
+     *
+     * @param <T> the type of the record
+     */
+    static class Version<T> {
+        private final T record;
+        private final long created;
+        private volatile long removed = NOT_REMOVED;
+
+        Version(T record, long created) {
+            this.record = record;
+            this.created = created;
+        }
+
+        T getRecord() {return record;}
+
+        void remove(long version) {
+            removed = version;
+        }
+
+        boolean isVisibleAt(long version) {
+            return created <= version && version < removed;
+        }
+    }
+
+    private final ConcurrentLinkedQueue<Version<T>> versions = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicInteger removedKept = new AtomicInteger();
+    // guarded by this
+    private long prunedAt = Long.MIN_VALUE;
+    private boolean waiting = false;
+
+    void add(Version<T> version) {
+        versions.add(version);
+        size.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of versions kept, including removed ones not dropped yet
+     */
+    int size() {
+        return size.get();
+    }
+
+    /**
+     * Note that one of the versions in this list was removed, and drop the
+     * removed versions older than every open snapshot if enough have piled up
+     *
+     * @param horizon   the oldest version an open or future snapshot can read
+     * @return          true if the list has started waiting: call prune again once the horizon moves
+     */
+    boolean removed(long horizon) {
+        removedKept.incrementAndGet();
+        synchronized (this) {
+            boolean wasWaiting = waiting;
+            prune(horizon);
+            return waiting && !wasWaiting;
+        }
+    }
+
+    /**
+     * Drop the removed versions older than every open snapshot, if they make
+     * up half of the list. Nothing more can be dropped until the horizon
+     * moves, so the list is only scanned again after it has.
+     *
+     * @param horizon   the oldest version an open or future snapshot can read
+     * @return          true if the list still waits for the horizon to move
+     */
+    synchronized boolean prune(long horizon) {
+        if (removedKept.get() * 2L >= size.get() && horizon > prunedAt) {
+            prunedAt = horizon;
+            versions.removeIf(version -> {
+                if (version.removed <= horizon) {
+                    size.decrementAndGet();
+                    removedKept.decrementAndGet();
+                    return true;
+                }
+                return false;
+            });
+        }
+        waiting = removedKept.get() > 0 && removedKept.get() * 2L >= size.get();
+        return waiting;
+    }
+
+    /**
+     * Returns the records as they were at a version, in the order they were added
+     *
+     * @param version   the hotel version to read
+     * @return          the records visible at that version
+     */
+    Iterable<T> at(long version) {
+        return () -> new Iterator<T>() {
+            private Iterator<Version<T>> it = versions.iterator();
+            private T next = advance();
+
+            public boolean hasNext() {return next != null;}
+
+            public T next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                T record = next;
+                next = advance();
+                return record;
+            }
+
+            private T advance() {
+                while (it.hasNext()) {
+                    Version<T> candidate = it.next();
+                    if (candidate.isVisibleAt(version)) {
+                        return candidate.record;
+                    }
+                }
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Returns the records not removed yet, including ones still being added
+     */
+    Iterable<T> live() {
+        return at(NOT_REMOVED - 1);
+    }
+}
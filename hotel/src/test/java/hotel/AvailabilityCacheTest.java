@@ -0,0 +1,48 @@
+package hotel;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+class AvailabilityCacheTest {
+    @Test
+    void bookingDropsOnlyTheAnswersItOverlaps() {
+        AvailabilityCache cache = new AvailabilityCache(16);
+        int[] free = {101, 102};
+        // A long stay that starts well before the booking still overlaps it
+        cache.putFreeRooms(RoomType.DOUBLE, 0, 30, free);
+        cache.putFreeRooms(RoomType.DOUBLE, 20, 22, free);
+        cache.putFreeRooms(RoomType.DOUBLE, 25, 27, free);
+        cache.putFreeRooms(RoomType.DOUBLE, 27, 29, free);
+        cache.putFreeRooms(RoomType.SINGLE, 25, 27, free);
+        cache.putIsFree(101, 24, 26, true);
+        cache.putIsFree(102, 24, 26, true);
+
+        cache.invalidateStay(101, RoomType.DOUBLE, 22, 27);
+
+        assertNull(cache.getFreeRooms(RoomType.DOUBLE, 0, 30));
+        assertNull(cache.getFreeRooms(RoomType.DOUBLE, 25, 27));
+        assertNull(cache.getIsFree(101, 24, 26));
+        // Checking out on the first night booked, or checking in on the day it ends, does not overlap
+        assertArrayEquals(free, cache.getFreeRooms(RoomType.DOUBLE, 20, 22));
+        assertArrayEquals(free, cache.getFreeRooms(RoomType.DOUBLE, 27, 29));
+        assertArrayEquals(free, cache.getFreeRooms(RoomType.SINGLE, 25, 27));
+        assertEquals(Boolean.TRUE, cache.getIsFree(102, 24, 26));
+        assertEquals(3, cache.getInvalidations());
+    }
+
+    @Test
+    void clearForgetsTheLongestStay() {
+        AvailabilityCache cache = new AvailabilityCache(16);
+        cache.putIsFree(101, 0, 100, true);
+        cache.clear();
+        cache.putIsFree(101, 10, 12, true);
+        cache.putIsFree(101, 50, 52, true);
+
+        cache.invalidateStay(101, null, 50, 51);
+
+        assertEquals(Boolean.TRUE, cache.getIsFree(101, 10, 12));
+        assertNull(cache.getIsFree(101, 50, 52));
+    }
+}
@@ -0,0 +1,125 @@
+package hotel;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Field;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import org.junit.jupiter.api.Test;
+import hotel.HotelImpl.Booking;
+
+class ConcurrentHotelTest {
+    private static final LocalDate CHECKIN = LocalDate.now().plusDays(10);
+
+    @Test
+    void concurrentGroupsNeverShareARoomNight() throws Exception {
+        ConcurrentHotel hotel = new ConcurrentHotel();
+        for (int i = 0; i < 40; i++) {
+            hotel.addRoom(101 + i, i % 2 == 0 ? RoomType.DOUBLE : RoomType.SINGLE, 80, 2, "tv");
+        }
+        hotel.addGuest("Jane", "Doe", LocalDate.of(2019, 1, 1));
+        hotel.addGuest("John", "Smith", LocalDate.of(2019, 1, 1));
+        int jane = hotel.searchGuest("Jane", "Doe")[0];
+        int john = hotel.searchGuest("John", "Smith")[0];
+
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        List<Future<Integer>> booked = new ArrayList<>();
+        try {
+            for (int t = 0; t < 8; t++) {
+                booked.add(threads.submit(() -> {
+                    int rooms = 0;
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < 200; i++) {
+                        LocalDate checkin = CHECKIN.plusDays(random.nextInt(20));
+                        LocalDate checkout = checkin.plusDays(1 + random.nextInt(3));
+                        if (i % 3 == 0) {
+                            rooms += hotel.bookOneRoom(jane, RoomType.SINGLE, checkin, checkout) == -1 ? 0 : 1;
+                        } else {
+                            int[] group = hotel.bookRooms(new int[] {jane, john, john},
+                                new RoomType[] {RoomType.DOUBLE, RoomType.SINGLE, RoomType.DOUBLE}, checkin, checkout);
+                            assertTrue(group.length == 0 || group.length == 3);
+                            rooms += group.length;
+                        }
+                    }
+                    return rooms;
+                }));
+            }
+            int rooms = 0;
+            for (Future<Integer> future : booked) {
+                rooms += future.get();
+            }
+
+            Map<Integer, List<Booking>> byRoom = new HashMap<>();
+            hotel.forEachBooking(booking -> byRoom.computeIfAbsent(booking.getRoomNumber(), k -> new ArrayList<>()).add(booking));
+            assertEquals(rooms, byRoom.values().stream().mapToInt(List::size).sum());
+            for (List<Booking> stays : byRoom.values()) {
+                for (int i = 0; i < stays.size(); i++) {
+                    for (int j = i + 1; j < stays.size(); j++) {
+                        Booking a = stays.get(i);
+                        Booking b = stays.get(j);
+                        assertTrue(a.getCheckoutDay() <= b.getCheckinDay() || b.getCheckoutDay() <= a.getCheckinDay(),
+                            "room " + a.getRoomNumber() + " booked twice");
+                    }
+                }
+            }
+        } finally {
+            threads.shutdown();
+        }
+    }
+
+    @Test
+    void removedBookingsAreDroppedFromEveryList() throws Exception {
+        ConcurrentHotel hotel = new ConcurrentHotel();
+        hotel.addRoom(101, RoomType.DOUBLE, 80, 2, "tv");
+        hotel.addGuest("Jane", "Doe", LocalDate.of(2019, 1, 1));
+        int guest = hotel.searchGuest("Jane", "Doe")[0];
+        hotel.bookOneRoom(guest, RoomType.DOUBLE, CHECKIN, CHECKIN.plusDays(3));
+        assertTrue(hotel.cancelBooking(onlyBookingID(hotel)));
+
+        assertEquals(0, ((VersionedLog<?>)field(hotel, "bookingLog")).size());
+        assertTrue(((Map<?, ?>)field(hotel, "guestBookings")).isEmpty());
+        assertTrue(((Map<?, ?>)field(hotel, "bookingsByDay")).isEmpty());
+    }
+
+    @Test
+    void bookingsRemovedUnderAnOpenSnapshotAreDroppedWhenItCloses() throws Exception {
+        ConcurrentHotel hotel = new ConcurrentHotel();
+        hotel.addRoom(101, RoomType.DOUBLE, 80, 2, "tv");
+        hotel.addGuest("Jane", "Doe", LocalDate.of(2019, 1, 1));
+        int guest = hotel.searchGuest("Jane", "Doe")[0];
+        hotel.bookOneRoom(guest, RoomType.DOUBLE, CHECKIN, CHECKIN.plusDays(3));
+
+        ConcurrentHotel.Snapshot snapshot = hotel.openSnapshot();
+        assertTrue(hotel.cancelBooking(onlyBookingID(hotel)));
+        assertEquals(1, snapshot.bookings().count());
+        List<Booking> seen = new ArrayList<>();
+        snapshot.forEachGuestBooking(guest, seen::add);
+        assertEquals(1, seen.size());
+        assertFalse(((Map<?, ?>)field(hotel, "guestBookings")).isEmpty());
+
+        snapshot.close();
+        assertEquals(0, ((VersionedLog<?>)field(hotel, "bookingLog")).size());
+        assertTrue(((Map<?, ?>)field(hotel, "guestBookings")).isEmpty());
+        assertTrue(((Map<?, ?>)field(hotel, "bookingsByDay")).isEmpty());
+    }
+
+    private static int onlyBookingID(ConcurrentHotel hotel) {
+        int[] id = new int[1];
+        hotel.forEachBooking(booking -> id[0] = booking.getId());
+        return id[0];
+    }
+
+    private static Object field(ConcurrentHotel hotel, String name) throws ReflectiveOperationException {
+        Field field = ConcurrentHotel.class.getDeclaredField(name);
+        field.setAccessible(true);
+        return field.get(hotel);
+    }
+}
@@ -0,0 +1,37 @@
+package hotel;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class DayTotalsTest {
+    @Test
+    void totalsSurviveGrowingInBothDirections() {
+        DayTotals totals = new DayTotals();
+        totals.addRange(100, 103, 10);
+        // Later days, then earlier days, then both at once
+        totals.add(140, 5);
+        totals.addRange(60, 62, 2);
+        totals.addRange(-500, 1000, 1);
+
+        assertEquals(10 + 1, totals.sum(101, 101));
+        assertEquals(3 * 10 + 5 + 2 * 2 + 1500, totals.sum(-1000, 2000));
+        assertEquals(2 * 2 + 2, totals.sum(60, 61));
+        assertEquals(5 + 1, totals.sum(140, 140));
+        assertEquals(0, totals.sum(1000, 1200));
+        assertEquals(1, totals.sum(-500, -500));
+        assertEquals(0, totals.sum(-501, -501));
+    }
+
+    @Test
+    void daysRoundTripThroughOfDays() {
+        DayTotals totals = new DayTotals();
+        totals.addRange(20, 23, 4);
+        totals.add(5, 1);
+        DayTotals copy = DayTotals.ofDays(totals.getFirstDay(), totals.toDays());
+
+        assertArrayEquals(totals.toDays(), copy.toDays());
+        assertEquals(totals.sum(0, 30), copy.sum(0, 30));
+        assertEquals(4, copy.sum(22, 22));
+    }
+}
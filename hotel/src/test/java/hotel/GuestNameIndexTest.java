@@ -0,0 +1,40 @@
+package hotel;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import org.junit.jupiter.api.Test;
+
+class GuestNameIndexTest {
+
+    @Test
+    void firstNamePrefixAloneFindsGuestsInLastNameOrder() {
+        GuestNameIndex index = new GuestNameIndex();
+        index.add(10001, "Anna", "Smith");
+        index.add(10002, "Annabel", "Brown");
+        index.add(10003, "Bob", "Adams");
+        index.add(10004, "anna", "SMITH");
+        index.add(10005, "Anne", "Clark");
+        index.add(10006, "Ann", "Brown");
+
+        assertArrayEquals(new int[] {10006, 10002, 10005, 10001, 10004}, index.findByPrefix("Ann", ""));
+        assertArrayEquals(new int[] {10002}, index.findByPrefix("annab", ""));
+        assertArrayEquals(new int[0], index.findByPrefix("Zoe", ""));
+
+        index.remove(10001, "Anna", "Smith");
+        index.remove(10006, "Ann", "Brown");
+        assertArrayEquals(new int[] {10002, 10005, 10004}, index.findByPrefix("ANN", ""));
+        index.remove(10004, "anna", "smith");
+        assertArrayEquals(new int[] {10002, 10005}, index.findByPrefix("Ann", ""));
+    }
+
+    @Test
+    void lastNamePrefixStillNarrowsByFirstName() {
+        GuestNameIndex index = new GuestNameIndex();
+        index.add(10001, "Anna", "Smith");
+        index.add(10002, "Bob", "Smithers");
+        index.add(10003, "Anna", "Adams");
+
+        assertArrayEquals(new int[] {10001, 10002}, index.findByPrefix("", "smith"));
+        assertArrayEquals(new int[] {10001}, index.findByPrefix("an", "Smi"));
+        assertArrayEquals(new int[] {10003, 10001, 10002}, index.findByPrefix("", ""));
+    }
+}
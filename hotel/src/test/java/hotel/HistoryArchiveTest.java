@@ -0,0 +1,204 @@
+package hotel;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class HistoryArchiveTest {
+    private static final LocalDate DAY = LocalDate.of(2019, 3, 1);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void paymentsAreArchivedOnceWhenArchivingIsRepeated() throws IOException {
+        PaymentColumns columns = threePayments();
+        try (HistoryArchive archive = new HistoryArchive(directory.toString())) {
+            assertEquals(2, archive.addPaymentsBefore(DAY.plusDays(2).toEpochDay(), columns));
+            // As after a crash before the checkpoint: the payments are still in the hotel
+            assertEquals(0, archive.addPaymentsBefore(DAY.plusDays(2).toEpochDay(), columns));
+            assertEquals(1, archive.addPaymentsBefore(DAY.plusDays(3).toEpochDay(), columns));
+            assertEquals(3, archive.paymentCount());
+        }
+        try (HistoryArchive archive = new HistoryArchive(directory.toString())) {
+            assertEquals(DAY.plusDays(3).toEpochDay(), archive.getPaymentsArchivedBefore());
+            assertEquals(0, archive.addPaymentsBefore(DAY.plusDays(3).toEpochDay(), columns));
+            double[] total = {0};
+            archive.forEachPaymentOfGuest(10001, payment -> total[0] += payment.getAmount());
+            assertEquals(80.0 - 80.0, total[0], 0.001);
+            assertEquals(3, archive.paymentCount());
+        }
+    }
+
+    @Test
+    void archivingRepeatedAfterACrashAddsEachPaymentOnce() throws IOException {
+        String snapshot = directory.resolve("snapshot").toString();
+        String journal = directory.resolve("journal").toString();
+        String archive = directory.resolve("archive").toString();
+        HotelImpl hotel = new HotelImpl(snapshot, journal, 0);
+        hotel.addRoom(101, RoomType.DOUBLE, 80, 2, "tv");
+        hotel.addGuest("Jane", "Doe", DAY);
+        hotel.bookOneRoom(hotel.searchGuest("Jane", "Doe")[0], RoomType.DOUBLE, LocalDate.now().plusDays(5),
+            LocalDate.now().plusDays(7));
+        hotel.closeJournal();
+
+        // Archive as the hotel would, then crash before its checkpoint
+        HotelImpl crashed = new HotelImpl(snapshot, journal, 0);
+        assertTrue(crashed.openArchive(archive));
+        crashed.getArchive().addPaymentsBefore(LocalDate.now().plusDays(1).toEpochDay(), paymentsOf(crashed));
+        crashed.closeArchive();
+        crashed.closeJournal();
+
+        HotelImpl reopened = new HotelImpl(snapshot, journal, 0);
+        assertTrue(reopened.openArchive(archive));
+        assertTrue(reopened.archivePaymentsBefore(LocalDate.now().plusDays(1)));
+        assertEquals(1, reopened.getArchive().paymentCount());
+        assertEquals(0, reopened.payments().count());
+        reopened.closeArchive();
+    }
+
+    @Test
+    void bookingIDsOfArchivedStaysAreNotHandedOutAgain() {
+        String snapshot = directory.resolve("snapshot").toString();
+        String journal = directory.resolve("journal").toString();
+        String archive = directory.resolve("archive").toString();
+        LocalDate checkin = LocalDate.now().plusDays(5);
+        HotelImpl hotel = new HotelImpl(snapshot, journal, 0);
+        hotel.addRoom(101, RoomType.DOUBLE, 80, 2, "tv");
+        hotel.addGuest("Jane", "Doe", DAY);
+        int guest = hotel.searchGuest("Jane", "Doe")[0];
+        assertTrue(hotel.openArchive(archive));
+        hotel.bookOneRoom(guest, RoomType.DOUBLE, checkin, checkin.plusDays(2));
+        assertTrue(hotel.checkOut(onlyBooking(hotel).getId(), checkin.plusDays(2)));
+        assertTrue(hotel.checkpoint());
+        hotel.closeArchive();
+        hotel.closeJournal();
+
+        HotelImpl reopened = new HotelImpl(snapshot, journal, 0);
+        assertTrue(reopened.openArchive(archive));
+        reopened.bookOneRoom(guest, RoomType.DOUBLE, checkin.plusDays(10), checkin.plusDays(15));
+        HotelImpl.Booking second = onlyBooking(reopened);
+        assertEquals(2, second.getId());
+        assertTrue(reopened.checkOut(second.getId(), checkin.plusDays(15)));
+        double[] total = {0};
+        reopened.getArchive().forEachBookingOfGuest(guest, booking -> total[0] += booking.getTotalAmount());
+        assertEquals(2 * 80.0 + 5 * 80.0, total[0], 0.001);
+        reopened.closeArchive();
+        reopened.closeJournal();
+
+        // A hotel started from nothing takes its IDs past those in the archive
+        HotelImpl fresh = new HotelImpl(directory.resolve("fresh").toString(), directory.resolve("fresh.journal").toString(), 0);
+        assertTrue(fresh.openArchive(archive));
+        fresh.addRoom(101, RoomType.DOUBLE, 80, 2, "tv");
+        fresh.addGuest("John", "Smith", DAY);
+        int freshGuest = fresh.searchGuest("John", "Smith")[0];
+        assertTrue(freshGuest > guest);
+        fresh.bookOneRoom(freshGuest, RoomType.DOUBLE, checkin, checkin.plusDays(1));
+        assertEquals(3, onlyBooking(fresh).getId());
+        fresh.closeArchive();
+        fresh.closeJournal();
+    }
+
+    @Test
+    void stayWithAnArchivedBookingIDIsStillArchived() throws IOException {
+        try (HistoryArchive archive = new HistoryArchive(directory.toString())) {
+            HotelImpl.Booking stay = new HotelImpl.Booking(1, 10001, 101, DAY, DAY, DAY.plusDays(2), 160.0);
+            archive.addBooking(stay);
+            archive.addBooking(stay);
+            assertEquals(1, archive.bookingCount());
+            archive.addBooking(new HotelImpl.Booking(1, 10001, 101, DAY.plusDays(5), DAY.plusDays(10), DAY.plusDays(15), 400.0));
+            assertEquals(2, archive.bookingCount());
+            assertEquals(1, archive.getLastBookingID());
+            assertEquals(10001, archive.getLastGuestID());
+        }
+    }
+
+    @Test
+    void checkOutThatCannotBeLoggedIsNotArchived() throws Exception {
+        HotelImpl hotel = new HotelImpl(directory.resolve("snapshot").toString(), directory.resolve("journal").toString(), 0);
+        hotel.addRoom(101, RoomType.DOUBLE, 80, 2, "tv");
+        hotel.addGuest("Jane", "Doe", DAY);
+        LocalDate checkin = LocalDate.now().plusDays(5);
+        hotel.bookOneRoom(hotel.searchGuest("Jane", "Doe")[0], RoomType.DOUBLE, checkin, checkin.plusDays(2));
+        assertTrue(hotel.openArchive(directory.resolve("archive").toString()));
+        Field journal = HotelImpl.class.getDeclaredField("journal");
+        journal.setAccessible(true);
+        ((Journal)journal.get(hotel)).close();
+
+        HotelImpl.Booking booking = onlyBooking(hotel);
+        assertFalse(hotel.checkOut(booking.getId(), checkin.plusDays(2)));
+        assertEquals(0, hotel.getArchive().bookingCount());
+        assertEquals(booking, onlyBooking(hotel));
+        hotel.closeArchive();
+    }
+
+    private static HotelImpl.Booking onlyBooking(HotelImpl hotel) {
+        return hotel.bookings().reduce((a, b) -> {
+            throw new IllegalStateException("More than one booking");
+        }).get();
+    }
+
+    @Test
+    void streamsReadEveryRecordAcrossSegmentsInParallel() throws IOException {
+        // More than one mapped segment of 65536 records
+        int count = 70000;
+        PaymentColumns columns = new PaymentColumns();
+        try (HistoryArchive archive = new HistoryArchive(directory.toString())) {
+            for (int i = 0; i < count; i++) {
+                archive.addBooking(new HotelImpl.Booking(i + 1, 10001 + i % 1000, 101 + i % 50, DAY, DAY.plusDays(i % 300),
+                    DAY.plusDays(i % 300 + 2), i % 7 * 10.0));
+                columns.add(HotelImpl.Payment.of(DAY.plusDays(i % 300), 10001 + i % 1000, i % 7 * 10.0,
+                    i % 3 == 0 ? "refund" : "booking"));
+            }
+            archive.addPaymentsBefore(Long.MAX_VALUE, columns);
+
+            List<String> bookings = new ArrayList<>();
+            archive.forEachBookingBetween(LocalDate.MIN, LocalDate.MAX, booking -> bookings.add(describe(booking)));
+            List<String> payments = new ArrayList<>();
+            archive.forEachPaymentBetween(LocalDate.MIN, LocalDate.MAX, payment -> payments.add(describe(payment)));
+            assertEquals(bookings, archive.bookings(count).map(HistoryArchiveTest::describe).collect(Collectors.toList()));
+            assertEquals(payments, archive.payments(count).map(HistoryArchiveTest::describe).collect(Collectors.toList()));
+            assertEquals(count / 3 + 1, archive.payments(count).filter(payment -> payment.getPayReason().equals("refund")).count());
+
+            // Records archived after the stream is made are not in it
+            Stream<HotelImpl.Booking> first = archive.bookings(10);
+            archive.addBooking(new HotelImpl.Booking(count + 1, 10001, 101, DAY, DAY, DAY.plusDays(1), 80.0));
+            assertEquals(10, first.count());
+            assertThrows(IllegalArgumentException.class, () -> archive.payments(count + 1));
+        }
+    }
+
+    private static String describe(HotelImpl.Booking booking) {
+        return booking.getId() + " " + booking.getGuestID() + " " + booking.getRoomNumber() + " " + booking.getCheckinDate()
+            + " " + booking.getCheckouDate() + " " + booking.getTotalAmount();
+    }
+
+    private static String describe(HotelImpl.Payment payment) {
+        return payment.getDate() + " " + payment.getGuestID() + " " + payment.getAmount() + " " + payment.getPayReason();
+    }
+
+    private static PaymentColumns paymentsOf(HotelImpl hotel) {
+        PaymentColumns columns = new PaymentColumns();
+        hotel.forEachPayment(columns::add);
+        return columns;
+    }
+
+    private static PaymentColumns threePayments() {
+        PaymentColumns columns = new PaymentColumns();
+        columns.add(HotelImpl.Payment.of(DAY, 10001, 80.0, "booking"));
+        columns.add(HotelImpl.Payment.of(DAY.plusDays(1), 10001, -80.0, "refund"));
+        columns.add(HotelImpl.Payment.of(DAY.plusDays(2), 10002, 50.0, "VIPmembership"));
+        return columns;
+    }
+}
@@ -0,0 +1,41 @@
+package hotel;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import hotel.HotelAnalytics.BookingRow;
+import hotel.HotelAnalytics.PaymentRow;
+
+class HotelAnalyticsTest {
+    private static final LocalDate CHECKIN = LocalDate.now().plusDays(10);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void queriesCoverCurrentAndArchivedRecords() {
+        HotelImpl hotel = new HotelImpl(directory.resolve("snapshot").toString(), directory.resolve("journal").toString(), 0);
+        hotel.addRoom(101, RoomType.DOUBLE, 80, 2, "tv");
+        hotel.addRoom(201, RoomType.FAMILY, 120, 4, "tv");
+        hotel.addGuest("Jane", "Doe", LocalDate.of(2019, 1, 1));
+        int guest = hotel.searchGuest("Jane", "Doe")[0];
+        hotel.bookOneRoom(guest, RoomType.DOUBLE, CHECKIN, CHECKIN.plusDays(3));
+        hotel.bookOneRoom(guest, RoomType.FAMILY, CHECKIN, CHECKIN.plusDays(2));
+        int stay = hotel.bookings().filter(booking -> booking.getRoomNumber() == 101).findFirst().get().getId();
+        assertTrue(hotel.openArchive(directory.resolve("archive").toString()));
+        assertTrue(hotel.checkOut(stay, CHECKIN.plusDays(3)));
+        assertTrue(hotel.archivePaymentsBefore(LocalDate.now().plusDays(1)));
+
+        assertEquals(1, hotel.getArchive().bookingCount());
+        assertEquals(0, hotel.payments().count());
+        assertEquals(Map.of(RoomType.DOUBLE, 3.0, RoomType.FAMILY, 2.0),
+            HotelAnalytics.bookings(hotel).groupBy(BookingRow::getRoomType).average(BookingRow::getNights));
+        assertEquals(3 * 80.0 + 2 * 120.0, HotelAnalytics.payments(hotel).sum(PaymentRow::getAmount), 0.001);
+        hotel.closeArchive();
+        hotel.closeJournal();
+    }
+}
@@ -0,0 +1,66 @@
+package hotel;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+class HotelChainTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    @Timeout(value = 10, unit = TimeUnit.SECONDS)
+    void hotelBeingMadeIsNotSeenUntilItIsBuilt() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try (HotelChain chain = new HotelChain(2)) {
+            CompletableFuture<Boolean> added = CompletableFuture.supplyAsync(() -> chain.addHotel("h0", "Leeds", () -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return open("h0");
+            }));
+            started.await();
+
+            assertEquals(Map.of(), chain.queryCity("Leeds", hotel -> hotel.rooms().count()));
+            assertEquals(List.of(), chain.getHotelNames("Leeds"));
+            assertThrows(IllegalArgumentException.class, () -> chain.submit("h0", hotel -> hotel.rooms().count()));
+            assertFalse(chain.addHotel("h0", "York", () -> open("other")));
+
+            release.countDown();
+            assertTrue(added.get());
+            assertEquals(Map.of("h0", 0L), chain.queryCity("Leeds", hotel -> hotel.rooms().count()));
+        }
+    }
+
+    @Test
+    void failedHotelLeavesItsNameFree() {
+        try (HotelChain chain = new HotelChain(2)) {
+            assertFalse(chain.addHotel("h0", "Leeds", () -> {
+                throw new IllegalArgumentException("Cannot read h0");
+            }));
+            assertThrows(IllegalArgumentException.class, () -> chain.call("h0", hotel -> hotel.rooms().count()));
+            assertEquals(Map.of(), chain.queryCity("Leeds", hotel -> hotel.rooms().count()));
+
+            assertTrue(chain.addHotel("h0", "Leeds", () -> open("h0")));
+            assertEquals(Long.valueOf(0), chain.call("h0", hotel -> hotel.rooms().count()));
+        }
+    }
+
+    private HotelImpl open(String name) {
+        return new HotelImpl(directory.resolve(name + ".snapshot").toString(), directory.resolve(name + ".journal").toString(), 0);
+    }
+}
@@ -0,0 +1,105 @@
+package hotel;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class HotelImplTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void parallelLoadFailsOnABadRecordLikeTheSequentialLoad() throws IOException {
+        write("rooms.txt", "101,double,80.00,2,tv\n");
+        write("guests.txt", "10001,Jane,Doe,2019-01-01\nten,John,Smith,2019-01-01\n");
+        write("bookings.txt", "");
+        write("payments.txt", "");
+
+        RuntimeException sequential = assertThrows(RuntimeException.class, () -> load(null));
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            RuntimeException parallel = assertThrows(RuntimeException.class, () -> load(pool));
+            assertEquals(sequential.getClass(), parallel.getClass());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void parallelLoadLeavesOutAMissingFileLikeTheSequentialLoad() throws IOException {
+        write("rooms.txt", "101,double,80.00,2,tv\n102,single,50.00,1,none\n");
+        write("guests.txt", "10001,Jane,Doe,2019-01-01\n");
+        write("payments.txt", "");
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            for (HotelImpl hotel : new HotelImpl[] {load(null), load(pool)}) {
+                assertEquals(2, hotel.rooms().count());
+                assertEquals(1, hotel.guests().count());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void interruptedParallelLoadFailsAndKeepsTheInterrupt() throws IOException {
+        write("rooms.txt", "101,double,80.00,2,tv\n");
+        write("guests.txt", "10001,Jane,Doe,2019-01-01\n");
+        write("bookings.txt", "");
+        write("payments.txt", "");
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            Thread.currentThread().interrupt();
+            assertThrows(IllegalStateException.class, () -> load(pool));
+            assertTrue(Thread.interrupted());
+        } finally {
+            Thread.interrupted();
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void moreThan256PayReasonsSurviveASnapshot() throws IOException {
+        write("rooms.txt", "101,double,80.00,2,tv\n");
+        write("guests.txt", "10001,Jane,Doe,2019-01-01\n");
+        write("bookings.txt", "");
+        StringBuilder payments = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            payments.append("2020-01-01,10001,").append(i).append(".0,reason").append(i).append('\n');
+        }
+        write("payments.txt", payments.toString());
+        HotelImpl hotel = load(null);
+        String snapshot = directory.resolve("hotel.snapshot").toString();
+        assertTrue(hotel.saveSnapshot(snapshot));
+
+        HotelImpl loaded = load(null);
+        assertTrue(loaded.importSnapshot(snapshot));
+        List<String> reasons = new ArrayList<>();
+        loaded.forEachPayment(payment -> reasons.add(payment.getPayReason() + "=" + payment.getAmount()));
+        assertEquals(300, reasons.size());
+        assertEquals("reason299=299.0", reasons.get(299));
+    }
+
+    private HotelImpl load(ForkJoinPool pool) {
+        String rooms = directory.resolve("rooms.txt").toString();
+        String guests = directory.resolve("guests.txt").toString();
+        String bookings = directory.resolve("bookings.txt").toString();
+        String payments = directory.resolve("payments.txt").toString();
+        return pool == null ? new HotelImpl(rooms, guests, bookings, payments)
+            : new HotelImpl(rooms, guests, bookings, payments, pool);
+    }
+
+    private void write(String fileName, String text) throws IOException {
+        Files.write(directory.resolve(fileName), text.getBytes());
+    }
+}
@@ -0,0 +1,96 @@
+package hotel;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.function.Consumer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class HotelServerTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void addedGuestIsAnsweredWithItsID() throws Exception {
+        HotelImpl hotel = new HotelImpl(directory.resolve("snapshot").toString(), directory.resolve("journal").toString(), 0);
+        HotelServer server = start(hotel);
+        try {
+            HttpURLConnection connection = call(server, "POST", "/guests", "first=Jane&last=Doe&joined=2019-01-01");
+            assertEquals(201, connection.getResponseCode());
+            int guestID = hotel.searchGuest("Jane", "Doe")[0];
+            assertEquals("{\"added\":true,\"guestID\":" + guestID + "}", body(connection.getInputStream()));
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    void unexpectedFailureIsAnsweredWith500() throws Exception {
+        HotelImpl hotel = new HotelImpl(directory.resolve("snapshot").toString(), directory.resolve("journal").toString(), 0) {
+            @Override
+            public void forEachRoom(Consumer<? super Room> action) {
+                throw new IllegalStateException("Rooms unavailable");
+            }
+        };
+        HotelServer server = start(hotel);
+        try {
+            HttpURLConnection connection = call(server, "GET", "/rooms", null);
+            assertEquals(500, connection.getResponseCode());
+            assertEquals("{\"error\":\"Rooms unavailable\"}", body(connection.getErrorStream()));
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    void listFailingHalfwayIsNotAnsweredAsComplete() throws Exception {
+        ConcurrentHotel hotel = new ConcurrentHotel() {
+            @Override
+            public void forEachGuest(Consumer<? super HotelImpl.Guest> action) {
+                super.forEachGuest(action);
+                throw new IllegalStateException("Guests unavailable");
+            }
+        };
+        hotel.addGuest("Jane", "Doe", LocalDate.of(2019, 1, 1));
+        HotelServer server = start(hotel);
+        try {
+            HttpURLConnection connection = call(server, "GET", "/guests", null);
+            assertEquals(200, connection.getResponseCode());
+            assertThrows(IOException.class, () -> body(connection.getInputStream()));
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static HotelServer start(Hotel hotel) throws IOException {
+        HotelServer server = new HotelServer(hotel, 0);
+        server.start();
+        return server;
+    }
+
+    private static HttpURLConnection call(HotelServer server, String method, String path, String form) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection)new URL("http://localhost:" + server.getPort() + path).openConnection();
+        connection.setRequestMethod(method);
+        if (form != null) {
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(form.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return connection;
+    }
+
+    private static String body(InputStream in) throws IOException {
+        try (in) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package hotel;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class HotelStatsTest {
+    private static final LocalDate CHECKIN = LocalDate.now().plusDays(10);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void checkedOutStaysStayCountedAfterCheckpointAndReopen() {
+        HotelImpl hotel = open();
+        int[] stays = bookThreeStays(hotel);
+        assertTrue(hotel.checkOut(stays[0], CHECKIN.plusDays(3)));
+        assertTrue(hotel.checkOut(stays[1], CHECKIN.plusDays(2)));
+        Totals before = new Totals(hotel.getStats());
+        assertTrue(hotel.checkpoint());
+        hotel.closeJournal();
+
+        assertEquals(before, new Totals(open().getStats()));
+        assertEquals(7, before.nightsSold);
+    }
+
+    @Test
+    void checkedOutStaysStayCountedWhenTheJournalIsReplayed() {
+        HotelImpl hotel = open();
+        int[] stays = bookThreeStays(hotel);
+        assertTrue(hotel.checkpoint());
+        assertTrue(hotel.checkOut(stays[0], CHECKIN.plusDays(3)));
+        Totals before = new Totals(hotel.getStats());
+        hotel.closeJournal();
+
+        assertEquals(before, new Totals(open().getStats()));
+    }
+
+    @Test
+    void archivedPaymentsStayCountedAfterReopen() {
+        HotelImpl hotel = open();
+        bookThreeStays(hotel);
+        assertTrue(hotel.openArchive(directory.resolve("archive").toString()));
+        Totals before = new Totals(hotel.getStats());
+        assertTrue(hotel.archivePaymentsBefore(LocalDate.now().plusDays(1)));
+        assertEquals(0, hotel.payments().count());
+        hotel.closeArchive();
+        hotel.closeJournal();
+
+        Totals after = new Totals(open().getStats());
+        assertEquals(before, after);
+        assertEquals(3 * 80.0 + 2 * 80.0 + 2 * 120.0, after.revenue, 0.001);
+    }
+
+    @Test
+    void earlyCheckOutFreesTheNightsLeft() {
+        HotelImpl hotel = open();
+        hotel.addRoom(101, RoomType.SINGLE, 80, 1, "tv");
+        hotel.addGuest("Jane", "Doe", LocalDate.of(2019, 1, 1));
+        int guest = hotel.searchGuest("Jane", "Doe")[0];
+        assertEquals(101, hotel.bookOneRoom(guest, RoomType.SINGLE, CHECKIN, CHECKIN.plusDays(10)));
+        int stay = hotel.bookings().mapToInt(HotelImpl.Booking::getId).findFirst().getAsInt();
+        assertTrue(hotel.checkOut(stay, CHECKIN.plusDays(2)));
+        assertEquals(101, hotel.bookOneRoom(guest, RoomType.SINGLE, CHECKIN.plusDays(2), CHECKIN.plusDays(10)));
+
+        LocalDate last = CHECKIN.plusDays(9);
+        for (HotelStats stats : new HotelStats[] {hotel.getStats(), reopen(hotel).getStats()}) {
+            assertEquals(10, stats.getRoomNightsSold(RoomType.SINGLE, CHECKIN, last));
+            assertEquals(1.0, stats.getOccupancy(RoomType.SINGLE, CHECKIN, last), 1e-9);
+            assertEquals(80.0, stats.getRevPAR(RoomType.SINGLE, CHECKIN, last), 1e-9);
+        }
+    }
+
+    private HotelImpl reopen(HotelImpl hotel) {
+        hotel.closeJournal();
+        return open();
+    }
+
+    private HotelImpl open() {
+        return new HotelImpl(directory.resolve("snapshot").toString(), directory.resolve("journal").toString(), 0);
+    }
+
+    private static int[] bookThreeStays(HotelImpl hotel) {
+        hotel.addRoom(101, RoomType.DOUBLE, 80, 2, "tv");
+        hotel.addRoom(102, RoomType.DOUBLE, 80, 2, "tv");
+        hotel.addRoom(201, RoomType.FAMILY, 120, 4, "tv");
+        hotel.addGuest("Jane", "Doe", LocalDate.of(2019, 1, 1));
+        int guest = hotel.searchGuest("Jane", "Doe")[0];
+        hotel.bookOneRoom(guest, RoomType.DOUBLE, CHECKIN, CHECKIN.plusDays(3));
+        hotel.bookOneRoom(guest, RoomType.DOUBLE, CHECKIN, CHECKIN.plusDays(2));
+        hotel.bookOneRoom(guest, RoomType.FAMILY, CHECKIN, CHECKIN.plusDays(2));
+        return hotel.bookings().mapToInt(HotelImpl.Booking::getId).sorted().toArray();
+    }
+
+    /**
+     * The totals a report over the stays would show
+     */
+    private static class Totals {
+        final double revenue;
+        final long nightsSold;
+        final double occupancy;
+        final double revPAR;
+
+        Totals(HotelStats stats) {
+            LocalDate from = CHECKIN.minusDays(30);
+            LocalDate to = CHECKIN.plusDays(30);
+            revenue = stats.getRevenue(LocalDate.now().minusDays(1), LocalDate.now().plusDays(1));
+            nightsSold = stats.getRoomNightsSold(RoomType.DOUBLE, from, to) + stats.getRoomNightsSold(RoomType.FAMILY, from, to);
+            occupancy = stats.getOccupancy(RoomType.DOUBLE, from, to);
+            revPAR = stats.getRevPAR(RoomType.FAMILY, from, to);
+        }
+
+        public boolean equals(Object other) {
+            if (!(other instanceof Totals)) {
+                return false;
+            }
+            Totals totals = (Totals)other;
+            return Math.abs(revenue - totals.revenue) < 0.001 && nightsSold == totals.nightsSold
+                && Math.abs(occupancy - totals.occupancy) < 1e-9 && Math.abs(revPAR - totals.revPAR) < 1e-9;
+        }
+
+        public int hashCode() {
+            return Long.hashCode(nightsSold);
+        }
+
+        public String toString() {
+            return "revenue " + revenue + ", nights " + nightsSold + ", occupancy " + occupancy + ", RevPAR " + revPAR;
+        }
+    }
+}
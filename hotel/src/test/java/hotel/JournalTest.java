@@ -0,0 +1,193 @@
+package hotel;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class JournalTest {
+    private static final LocalDate DAY = LocalDate.of(2019, 3, 1);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replayAppliesEveryRecordInOrder() throws IOException {
+        Path file = directory.resolve("journal");
+        try (Journal journal = new Journal(file.toString(), 0)) {
+            journal.replay(0, new Recorder());
+            logFour(journal);
+        }
+        Recorder recorder = new Recorder();
+        try (Journal journal = new Journal(file.toString(), 0)) {
+            assertEquals(4, journal.replay(0, recorder));
+            assertEquals(4, journal.getSequence());
+        }
+        assertEquals(List.of("addRoom 101 double 80.0", "addGuest 10001 Jane Doe vip", "book 1 10001 101 2019-03-01 2019-03-04",
+            "cancel 1 2019-03-02"), recorder.applied);
+    }
+
+    @Test
+    void replaySkipsRecordsAlreadyInTheSnapshot() throws IOException {
+        Path file = directory.resolve("journal");
+        try (Journal journal = new Journal(file.toString(), 0)) {
+            journal.replay(0, new Recorder());
+            logFour(journal);
+        }
+        Recorder recorder = new Recorder();
+        try (Journal journal = new Journal(file.toString(), 0)) {
+            assertEquals(2, journal.replay(2, recorder));
+            assertEquals(4, journal.getSequence());
+        }
+        assertEquals(List.of("book 1 10001 101 2019-03-01 2019-03-04", "cancel 1 2019-03-02"), recorder.applied);
+    }
+
+    @Test
+    void tornRecordAtTheEndIsCutOff() throws IOException {
+        Path file = directory.resolve("journal");
+        long intact;
+        try (Journal journal = new Journal(file.toString(), 0)) {
+            journal.replay(0, new Recorder());
+            logFour(journal);
+            intact = journal.size();
+            journal.logCheckOut(2, DAY.plusDays(1));
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+
+        Recorder recorder = new Recorder();
+        try (Journal journal = new Journal(file.toString(), 0)) {
+            assertEquals(4, journal.replay(0, recorder));
+            assertEquals(intact, Files.size(file));
+            // New records follow the last intact one
+            journal.logRemoveRoom(101);
+        }
+        recorder = new Recorder();
+        try (Journal journal = new Journal(file.toString(), 0)) {
+            assertEquals(5, journal.replay(0, recorder));
+            assertEquals(5, journal.getSequence());
+        }
+        assertEquals("removeRoom 101", recorder.applied.get(4));
+    }
+
+    @Test
+    void corruptRecordEndsReplay() throws IOException {
+        Path file = directory.resolve("journal");
+        long firstRecord;
+        try (Journal journal = new Journal(file.toString(), 0)) {
+            journal.replay(0, new Recorder());
+            journal.logRemoveGuest(10001);
+            firstRecord = journal.size();
+            journal.logRemoveGuest(10002);
+            journal.logRemoveGuest(10003);
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            // Flip a bit of the second record's guest ID; its CRC no longer matches
+            long position = firstRecord + 4 + 8 + 1;
+            raf.seek(position);
+            int b = raf.read();
+            raf.seek(position);
+            raf.write(b ^ 1);
+        }
+
+        Recorder recorder = new Recorder();
+        try (Journal journal = new Journal(file.toString(), 0)) {
+            assertEquals(1, journal.replay(0, recorder));
+            assertEquals(1, journal.getSequence());
+        }
+        assertEquals(List.of("removeGuest 10001"), recorder.applied);
+        assertEquals(firstRecord, Files.size(file));
+    }
+
+    @Test
+    void groupBookingReplaysWholeOrNotAtAll() throws IOException {
+        Path file = directory.resolve("journal");
+        HotelImpl.Booking[] group = new HotelImpl.Booking[20];
+        for (int i = 0; i < group.length; i++) {
+            group[i] = new HotelImpl.Booking(i + 1, 10001, 101 + i, DAY, DAY, DAY.plusDays(3), 240.0);
+        }
+        try (Journal journal = new Journal(file.toString(), 0)) {
+            journal.replay(0, new Recorder());
+            journal.logBookings(group);
+        }
+        Recorder recorder = new Recorder();
+        try (Journal journal = new Journal(file.toString(), 0)) {
+            assertEquals(1, journal.replay(0, recorder));
+        }
+        assertEquals(20, recorder.applied.size());
+        assertEquals("book 20 10001 120 2019-03-01 2019-03-04", recorder.applied.get(19));
+
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(raf.length() / 2);
+        }
+        recorder = new Recorder();
+        try (Journal journal = new Journal(file.toString(), 0)) {
+            assertEquals(0, journal.replay(0, recorder));
+        }
+        assertEquals(List.of(), recorder.applied);
+    }
+
+    @Test
+    void changeThatCannotBeForcedIsNotLogged() throws IOException {
+        Path file = directory.resolve("journal");
+        Journal journal = new Journal(file.toString(), 0);
+        journal.replay(0, new Recorder());
+        journal.logRemoveGuest(10001);
+        journal.close();
+
+        assertThrows(IOException.class, () -> journal.logRemoveGuest(10002));
+        assertEquals(1, journal.getSequence());
+    }
+
+    private static void logFour(Journal journal) throws IOException {
+        journal.logAddRoom(new HotelImpl.Room(101, "double", 80.0, "2", "tv"));
+        journal.logAddGuest(new HotelImpl.VIPGuest(10001, "Jane", "Doe", DAY, DAY, DAY.plusYears(1)));
+        journal.logBooking(new HotelImpl.Booking(1, 10001, 101, DAY, DAY, DAY.plusDays(3), 240.0));
+        journal.logCancel(1, DAY.plusDays(1));
+    }
+
+    /**
+     * Writes down every record replayed
+     */
+    private static class Recorder implements Journal.Replayer {
+        final List<String> applied = new ArrayList<>();
+
+        public void addRoom(HotelImpl.Room room) {
+            applied.add("addRoom " + room.getRoomNumber() + " " + room.getRoomType() + " " + room.getPrice());
+        }
+
+        public void removeRoom(int roomNumber) {
+            applied.add("removeRoom " + roomNumber);
+        }
+
+        public void addGuest(HotelImpl.Guest guest) {
+            applied.add("addGuest " + guest.getGuestID() + " " + guest.getFName() + " " + guest.getLName()
+                + (guest instanceof HotelImpl.VIPGuest ? " vip" : ""));
+        }
+
+        public void removeGuest(int guestID) {
+            applied.add("removeGuest " + guestID);
+        }
+
+        public void book(HotelImpl.Booking booking) {
+            applied.add("book " + booking.getId() + " " + booking.getGuestID() + " " + booking.getRoomNumber() + " "
+                + booking.getCheckinDate() + " " + booking.getCheckouDate());
+        }
+
+        public void checkOut(int bookingID, LocalDate actualCheckoutDate) {
+            applied.add("checkOut " + bookingID + " " + actualCheckoutDate);
+        }
+
+        public void cancel(int bookingID, LocalDate refundDate) {
+            applied.add("cancel " + bookingID + " " + refundDate);
+        }
+    }
+}
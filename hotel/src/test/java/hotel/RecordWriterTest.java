@@ -0,0 +1,58 @@
+package hotel;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDate;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class RecordWriterTest {
+    private static final String EOL = System.lineSeparator();
+
+    @Test
+    void amountsAreWrittenAsStringFormatWritesThem() throws Exception {
+        double[] amounts = {
+            0, 1, 80, 99.99, 1.005, 0.125, -0.005, 0.005, 2.675, 1.115, -1.005, 0.045,
+            -0.0, 0.001, -0.001, 123456789.125, 9999999.995, 1e7 - 0.005, 1e7 + 0.125, 1e15 - 0.25, 1e15 - 1, 1e15, 1e15 + 2, -1e15 + 0.5,
+            Double.MIN_VALUE, Double.NaN, Double.POSITIVE_INFINITY
+        };
+        for (double amount : amounts) {
+            StringBuilder out = new StringBuilder();
+            RecordWriter writer = new RecordWriter(out);
+            writer.write(new HotelImpl.Room(101, "double", amount, "2", "tv"));
+            writer.flush();
+            assertEquals("101,double," + String.format("%.2f", amount) + ",2,tv" + EOL, out.toString(), "amount " + amount);
+        }
+    }
+
+    @Test
+    void amountsWithThreeDecimalsAreWrittenAsStringFormatWritesThem() throws Exception {
+        Random random = new Random(42);
+        StringBuilder expected = new StringBuilder();
+        StringBuilder out = new StringBuilder();
+        RecordWriter writer = new RecordWriter(out);
+        for (int i = 0; i < 100000; i++) {
+            // Every third decimal of 5 is a tie the binary value may fall either side of
+            double amount = (random.nextInt(2000000000) - 1000000000) / 1000.0 * (i % 2 == 0 ? 1 : 10);
+            expected.append("101,double,").append(String.format("%.2f", amount)).append(",2,tv").append(EOL);
+            writer.write(new HotelImpl.Room(101, "double", amount, "2", "tv"));
+        }
+        writer.flush();
+        assertEquals(expected.toString(), out.toString());
+    }
+
+    @Test
+    void datesAreWrittenAsLocalDateWritesThem() throws Exception {
+        LocalDate[] dates = {
+            LocalDate.of(2024, 2, 29), LocalDate.of(1970, 1, 1), LocalDate.of(2000, 3, 1), LocalDate.of(1900, 2, 28),
+            LocalDate.of(0, 1, 1), LocalDate.of(9999, 12, 31), LocalDate.of(-1, 12, 31), LocalDate.of(10000, 1, 1),
+            LocalDate.of(-400, 2, 29), LocalDate.MIN, LocalDate.MAX
+        };
+        for (LocalDate date : dates) {
+            StringBuilder out = new StringBuilder();
+            RecordWriter writer = new RecordWriter(out);
+            writer.write(new HotelImpl.Guest(10001, "Jane", "Doe", date));
+            writer.flush();
+            assertEquals("10001,Jane,Doe," + date + EOL, out.toString(), "date " + date);
+        }
+    }
+}